@@ -22,7 +22,9 @@
 package com.kingsrook.qbits.customizabletableviews;
 
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.Executor;
 import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.producers.MetaDataCustomizerInterface;
 import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitConfig;
@@ -37,6 +39,64 @@ public class CustomizableTableViewsQBitConfig implements QBitConfig
 {
    private MetaDataCustomizerInterface<QTableMetaData> tableMetaDataCustomizer;
 
+   //////////////////////////////////////////////////////////////////////////////////////////
+   // if set, memoized effective table views that are within this window of expiring are   //
+   // refreshed in the background (on the refreshAheadExecutor, else a default, small pool //
+   // with a bounded queue), so that requests keep getting the current view, rather than   //
+   // waiting for it to be reloaded.                                                       //
+   //////////////////////////////////////////////////////////////////////////////////////////
+   private Duration refreshAheadWindow;
+   private Executor refreshAheadExecutor;
+
+   //////////////////////////////////////////////////////////////////////////////////////////
+   // if set, invalidations of the cached views (from edits to the table views tables) are //
+   // collected over this window, and applied once at its end - so that bulk edits don't   //
+   // keep clearing the caches.  if not set, invalidations are applied immediately.        //
+   //////////////////////////////////////////////////////////////////////////////////////////
+   private Duration invalidationCoalesceWindow;
+
+   //////////////////////////////////////////////////////////////////////////////////////////
+   // if set, invalidations are recorded in the TableViewsChangeLog table, which each node //
+   // polls (at most this often) to apply invalidations from edits made on other nodes.    //
+   //////////////////////////////////////////////////////////////////////////////////////////
+   private Duration changeLogPollInterval;
+
+   //////////////////////////////////////////////////////////////////////////////////////////
+   // if set, edits bump the generation of the tables they affect (by inserting rows into  //
+   // the CustomizableTableGeneration table - which must then exist in the backend), which //
+   // each node checks (at most this often, for all tables in one query) - so that cached  //
+   // views can be kept for hours, yet still reflect edits within this interval.           //
+   //////////////////////////////////////////////////////////////////////////////////////////
+   private Duration generationCheckInterval;
+
+   /////////////////////////////////////////////////////////////////////////////////////
+   // if true, all of the qbit's configuration is loaded into an in-memory snapshot,  //
+   // which is re-built incrementally on edits - so that personalizing tables doesn't //
+   // query the backend.  best for when the configuration fits comfortably in memory. //
+   /////////////////////////////////////////////////////////////////////////////////////
+   private Boolean useConfigurationSnapshot = false;
+
+   //////////////////////////////////////////////////////////////////////////////////////
+   // how old the configuration snapshot can get before it's fully re-loaded (rather   //
+   // than only incrementally re-built) - so that a change whose invalidation was lost //
+   // is still picked up.  null means never fully re-load it.                          //
+   //////////////////////////////////////////////////////////////////////////////////////
+   private Duration configurationSnapshotMaxAge = Duration.ofMinutes(5);
+
+   ////////////////////////////////////////////////////////////////////////////////////////
+   // if true, the first personalization for a role set loads the effective views of all //
+   // customizable tables for it, in a few bulk queries - rather than each table loading //
+   // its own (e.g., when a client loads the meta data for many tables at once).         //
+   ////////////////////////////////////////////////////////////////////////////////////////
+   private Boolean prefetchEffectiveTableViews = false;
+
+   //////////////////////////////////////////////////////////////////////////////////////////
+   // max number of effective views (one per customizable table, per role set) to keep     //
+   // memoized - beyond which the least-recently-used ones are evicted.  if not set, it's  //
+   // sized for every table in the instance, for 50 role sets at once (and at least 1000). //
+   //////////////////////////////////////////////////////////////////////////////////////////
+   private Integer effectiveTableViewCacheSize;
+
 
    /***************************************************************************
     **
@@ -45,6 +105,35 @@ public class CustomizableTableViewsQBitConfig implements QBitConfig
    public void validate(QInstance qInstance, List<String> errors)
    {
       // assertCondition(someTableConfig != null, "someTableConfig must be provided", errors);
+      if(refreshAheadWindow != null)
+      {
+         assertCondition(!refreshAheadWindow.isNegative() && !refreshAheadWindow.isZero(), "refreshAheadWindow must be a positive duration", errors);
+      }
+
+      if(invalidationCoalesceWindow != null)
+      {
+         assertCondition(!invalidationCoalesceWindow.isNegative(), "invalidationCoalesceWindow must not be a negative duration", errors);
+      }
+
+      if(changeLogPollInterval != null)
+      {
+         assertCondition(!changeLogPollInterval.isNegative(), "changeLogPollInterval must not be a negative duration", errors);
+      }
+
+      if(generationCheckInterval != null)
+      {
+         assertCondition(!generationCheckInterval.isNegative(), "generationCheckInterval must not be a negative duration", errors);
+      }
+
+      if(configurationSnapshotMaxAge != null)
+      {
+         assertCondition(!configurationSnapshotMaxAge.isNegative(), "configurationSnapshotMaxAge must not be a negative duration", errors);
+      }
+
+      if(effectiveTableViewCacheSize != null)
+      {
+         assertCondition(effectiveTableViewCacheSize > 0, "effectiveTableViewCacheSize must be positive", errors);
+      }
    }
 
 
@@ -78,4 +167,284 @@ public class CustomizableTableViewsQBitConfig implements QBitConfig
       return (this);
    }
 
+
+
+
+   /*******************************************************************************
+    ** Getter for refreshAheadWindow
+    *******************************************************************************/
+   public Duration getRefreshAheadWindow()
+   {
+      return (this.refreshAheadWindow);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for refreshAheadWindow
+    *******************************************************************************/
+   public void setRefreshAheadWindow(Duration refreshAheadWindow)
+   {
+      this.refreshAheadWindow = refreshAheadWindow;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for refreshAheadWindow
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withRefreshAheadWindow(Duration refreshAheadWindow)
+   {
+      this.refreshAheadWindow = refreshAheadWindow;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for refreshAheadExecutor
+    *******************************************************************************/
+   public Executor getRefreshAheadExecutor()
+   {
+      return (this.refreshAheadExecutor);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for refreshAheadExecutor
+    *******************************************************************************/
+   public void setRefreshAheadExecutor(Executor refreshAheadExecutor)
+   {
+      this.refreshAheadExecutor = refreshAheadExecutor;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for refreshAheadExecutor
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withRefreshAheadExecutor(Executor refreshAheadExecutor)
+   {
+      this.refreshAheadExecutor = refreshAheadExecutor;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for invalidationCoalesceWindow
+    *******************************************************************************/
+   public Duration getInvalidationCoalesceWindow()
+   {
+      return (this.invalidationCoalesceWindow);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for invalidationCoalesceWindow
+    *******************************************************************************/
+   public void setInvalidationCoalesceWindow(Duration invalidationCoalesceWindow)
+   {
+      this.invalidationCoalesceWindow = invalidationCoalesceWindow;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for invalidationCoalesceWindow
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withInvalidationCoalesceWindow(Duration invalidationCoalesceWindow)
+   {
+      this.invalidationCoalesceWindow = invalidationCoalesceWindow;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for changeLogPollInterval
+    *******************************************************************************/
+   public Duration getChangeLogPollInterval()
+   {
+      return (this.changeLogPollInterval);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for changeLogPollInterval
+    *******************************************************************************/
+   public void setChangeLogPollInterval(Duration changeLogPollInterval)
+   {
+      this.changeLogPollInterval = changeLogPollInterval;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for changeLogPollInterval
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withChangeLogPollInterval(Duration changeLogPollInterval)
+   {
+      this.changeLogPollInterval = changeLogPollInterval;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for generationCheckInterval
+    *******************************************************************************/
+   public Duration getGenerationCheckInterval()
+   {
+      return (this.generationCheckInterval);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for generationCheckInterval
+    *******************************************************************************/
+   public void setGenerationCheckInterval(Duration generationCheckInterval)
+   {
+      this.generationCheckInterval = generationCheckInterval;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for generationCheckInterval
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withGenerationCheckInterval(Duration generationCheckInterval)
+   {
+      this.generationCheckInterval = generationCheckInterval;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for useConfigurationSnapshot
+    *******************************************************************************/
+   public Boolean getUseConfigurationSnapshot()
+   {
+      return (this.useConfigurationSnapshot);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for useConfigurationSnapshot
+    *******************************************************************************/
+   public void setUseConfigurationSnapshot(Boolean useConfigurationSnapshot)
+   {
+      this.useConfigurationSnapshot = useConfigurationSnapshot;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for useConfigurationSnapshot
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withUseConfigurationSnapshot(Boolean useConfigurationSnapshot)
+   {
+      this.useConfigurationSnapshot = useConfigurationSnapshot;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for configurationSnapshotMaxAge
+    *******************************************************************************/
+   public Duration getConfigurationSnapshotMaxAge()
+   {
+      return (this.configurationSnapshotMaxAge);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for configurationSnapshotMaxAge
+    *******************************************************************************/
+   public void setConfigurationSnapshotMaxAge(Duration configurationSnapshotMaxAge)
+   {
+      this.configurationSnapshotMaxAge = configurationSnapshotMaxAge;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for configurationSnapshotMaxAge
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withConfigurationSnapshotMaxAge(Duration configurationSnapshotMaxAge)
+   {
+      this.configurationSnapshotMaxAge = configurationSnapshotMaxAge;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for prefetchEffectiveTableViews
+    *******************************************************************************/
+   public Boolean getPrefetchEffectiveTableViews()
+   {
+      return (this.prefetchEffectiveTableViews);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for prefetchEffectiveTableViews
+    *******************************************************************************/
+   public void setPrefetchEffectiveTableViews(Boolean prefetchEffectiveTableViews)
+   {
+      this.prefetchEffectiveTableViews = prefetchEffectiveTableViews;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for prefetchEffectiveTableViews
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withPrefetchEffectiveTableViews(Boolean prefetchEffectiveTableViews)
+   {
+      this.prefetchEffectiveTableViews = prefetchEffectiveTableViews;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for effectiveTableViewCacheSize
+    *******************************************************************************/
+   public Integer getEffectiveTableViewCacheSize()
+   {
+      return (this.effectiveTableViewCacheSize);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for effectiveTableViewCacheSize
+    *******************************************************************************/
+   public void setEffectiveTableViewCacheSize(Integer effectiveTableViewCacheSize)
+   {
+      this.effectiveTableViewCacheSize = effectiveTableViewCacheSize;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for effectiveTableViewCacheSize
+    *******************************************************************************/
+   public CustomizableTableViewsQBitConfig withEffectiveTableViewCacheSize(Integer effectiveTableViewCacheSize)
+   {
+      this.effectiveTableViewCacheSize = effectiveTableViewCacheSize;
+      return (this);
+   }
+
 }
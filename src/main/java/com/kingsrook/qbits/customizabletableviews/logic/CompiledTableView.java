@@ -0,0 +1,436 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewWidget;
+import com.kingsrook.qqq.backend.core.exceptions.QRuntimeException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QVirtualFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QFieldSection;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
+import com.kingsrook.qqq.backend.core.utils.StringUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** A TableView, compiled against the {@link FieldNameDictionary} of a specific
+ ** table - so that applying the view to the table is a matter of bit lookups
+ ** by field index, rather than parsing "table.field" names and access level
+ ** ids for every field on every request.
+ **
+ ** Compiling also detects if the view grants the whole table - every field and
+ ** widget, with access levels that don't change any field - in which case the
+ ** table can be used as-is, rather than cloned and pruned - and computes a
+ ** fingerprint of what the view grants, so that views granting the same fields
+ ** & widgets (e.g., from different role sets) can be recognized as equal.
+ *******************************************************************************/
+public class CompiledTableView
+{
+   private static final QLogger LOG = QLogger.getLogger(CompiledTableView.class);
+
+   /////////////////////////////////////////////////////////////////////////
+   // identifies this JVM, in versions of tables that can't be serialized //
+   /////////////////////////////////////////////////////////////////////////
+   private static final String JVM_INSTANCE_ID = UUID.randomUUID().toString();
+
+   private final TableView           tableView;
+   private final FieldNameDictionary dictionary;
+   private final FieldAccessMatrix   fieldAccessMatrix;
+   private final Set<String>         widgetNames;
+   private final boolean             grantsWholeTable;
+   private final String              fingerprint;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    *******************************************************************************/
+   private CompiledTableView(TableView tableView, FieldNameDictionary dictionary, FieldAccessMatrix fieldAccessMatrix, Set<String> widgetNames)
+   {
+      this.tableView = tableView;
+      this.dictionary = dictionary;
+      this.fieldAccessMatrix = fieldAccessMatrix;
+      this.widgetNames = widgetNames;
+      this.grantsWholeTable = computeGrantsWholeTable(dictionary, fieldAccessMatrix, widgetNames);
+      this.fingerprint = computeFingerprint(dictionary, fieldAccessMatrix, widgetNames);
+   }
+
+
+
+   /***************************************************************************
+    * compile a view against the (shared) dictionary for a table.
+    ***************************************************************************/
+   public static CompiledTableView compile(TableView tableView, QTableMetaData table)
+   {
+      return (compile(tableView, FieldNameDictionary.forTable(table)));
+   }
+
+
+
+   /***************************************************************************
+    * compile a view against a dictionary.  Fields in the view that aren't in
+    * the dictionary are ignored.
+    ***************************************************************************/
+   public static CompiledTableView compile(TableView tableView, FieldNameDictionary dictionary)
+   {
+      FieldAccessMatrix fieldAccessMatrix = new FieldAccessMatrix();
+      for(TableViewField tableViewField : CollectionUtils.nonNullList(tableView.getFields()))
+      {
+         ////////////////////////////////////////////////////////////
+         // view field names are in the form "tableName.fieldName" //
+         ////////////////////////////////////////////////////////////
+         String qualifiedFieldName = tableViewField.getFieldName();
+         int    dotIndex           = qualifiedFieldName == null ? -1 : qualifiedFieldName.indexOf('.');
+         if(dotIndex < 0)
+         {
+            LOG.warn("Error processing tableViewField - fieldName is not of the form tableName.fieldName", logPair("fieldName", qualifiedFieldName));
+            continue;
+         }
+
+         int index = dictionary.indexOf(qualifiedFieldName.substring(dotIndex + 1));
+         if(index >= 0)
+         {
+            fieldAccessMatrix.set(index, FieldAccessLevel.getById(tableViewField.getAccessLevel()));
+         }
+      }
+
+      Set<String> widgetNames = new HashSet<>();
+      for(TableViewWidget tableViewWidget : CollectionUtils.nonNullList(tableView.getWidgets()))
+      {
+         widgetNames.add(tableViewWidget.getWidgetName());
+      }
+
+      return (new CompiledTableView(tableView, dictionary, fieldAccessMatrix, Collections.unmodifiableSet(widgetNames)));
+   }
+
+
+
+   /***************************************************************************
+    * check if applying a view to the dictionary's source table would leave it
+    * unchanged:  every field and virtual field is in the view, at a level that
+    * doesn't change it; every widget section is in the view; and every section
+    * only has known fields from the table itself (as fields from join tables
+    * depend on those tables' views), and isn't empty.
+    ***************************************************************************/
+   private static boolean computeGrantsWholeTable(FieldNameDictionary dictionary, FieldAccessMatrix fieldAccessMatrix, Set<String> widgetNames)
+   {
+      QTableMetaData table = dictionary.getSourceTable();
+      if(table == null)
+      {
+         return (false);
+      }
+
+      for(int i = 0; i < dictionary.size(); i++)
+      {
+         if(!fieldAccessMatrix.isInView(i))
+         {
+            return (false);
+         }
+
+         FieldAccessLevel fieldAccessLevel = fieldAccessMatrix.getAccessLevel(i);
+         if(fieldAccessLevel != null)
+         {
+            String         fieldName     = dictionary.getName(i);
+            QFieldMetaData fieldMetaData = CollectionUtils.nonNullMap(table.getFields()).get(fieldName);
+            if(fieldMetaData == null)
+            {
+               fieldMetaData = CollectionUtils.nonNullMap(table.getVirtualFields()).get(fieldName);
+            }
+
+            if(fieldMetaData != null && fieldAccessLevel.wouldChange(fieldMetaData))
+            {
+               return (false);
+            }
+         }
+      }
+
+      TableSectionLayout  sectionLayout = TableSectionLayout.forTable(table);
+      List<QFieldSection> sections      = CollectionUtils.nonNullList(table.getSections());
+      for(int i = 0; i < sections.size(); i++)
+      {
+         QFieldSection section = sections.get(i);
+         if(section.getWidgetName() != null && !widgetNames.contains(section.getWidgetName()))
+         {
+            return (false);
+         }
+
+         List<TableSectionLayout.SectionField> sectionFields = sectionLayout.getSectionFields(i);
+         if(section.getFieldNames() == null || sectionFields == null)
+         {
+            continue;
+         }
+
+         if(sectionFields.size() != section.getFieldNames().size() || sectionFields.stream().anyMatch(TableSectionLayout.SectionField::isFromJoinTable))
+         {
+            return (false);
+         }
+
+         if(section.getFieldNames().isEmpty() && !StringUtils.hasContent(section.getWidgetName()))
+         {
+            return (false);
+         }
+      }
+
+      return (true);
+   }
+
+
+
+   /***************************************************************************
+    * compute the fingerprint of what a view grants:  a SHA-256 hash of a
+    * canonical form of the view - its fields (that are in the dictionary),
+    * sorted by name, with their access levels; then its widgets, sorted by
+    * name.  So it doesn't depend on the order of the view's records (nor on
+    * the order that role views were merged in), nor on hash iteration order,
+    * nor on anything else about the JVM that computed it.
+    ***************************************************************************/
+   private static String computeFingerprint(FieldNameDictionary dictionary, FieldAccessMatrix fieldAccessMatrix, Set<String> widgetNames)
+   {
+      Map<String, String> fieldLevels = new TreeMap<>();
+      for(int i = 0; i < dictionary.size(); i++)
+      {
+         if(fieldAccessMatrix.isInView(i))
+         {
+            FieldAccessLevel fieldAccessLevel = fieldAccessMatrix.getAccessLevel(i);
+            fieldLevels.put(dictionary.getName(i), fieldAccessLevel == null ? "-" : fieldAccessLevel.getId());
+         }
+      }
+
+      StringBuilder canonical = new StringBuilder();
+      fieldLevels.forEach((fieldName, level) -> canonical.append("field:").append(fieldName).append('=').append(level).append('\n'));
+
+      Set<String> sortedWidgetNames = new TreeSet<>();
+      widgetNames.stream().filter(widgetName -> widgetName != null).forEach(sortedWidgetNames::add);
+      sortedWidgetNames.forEach(widgetName -> canonical.append("widget:").append(widgetName).append('\n'));
+
+      return (sha256Hex(canonical.toString()));
+   }
+
+
+
+   /***************************************************************************
+    * compute a version of a table's meta data:  a SHA-256 hash of all of it,
+    * as serialized to JSON - so every attribute that's passed through to
+    * clients (display formats, adornments, help content, icons, capabilities,
+    * exposed joins, associations, behaviors, etc.) is covered, including any
+    * that QQQ adds later.  So, like view fingerprints, it only depends on the
+    * content of the meta data - i.e., it's (normally) the same after a JVM
+    * restart, for the same meta data.
+    *
+    * <p>If the table can't be serialized (e.g., it holds some object that
+    * JSON can't represent), its version is instead a hash of the parts of it
+    * that personalization reads (see {@link #computeStructureVersion}), plus
+    * the identity of the table object in this JVM - so it still changes
+    * whenever the table is replaced, at the cost of not being the same across
+    * restarts.</p>
+    ***************************************************************************/
+   public static String computeTableVersion(QTableMetaData table)
+   {
+      try
+      {
+         return (sha256Hex("json:" + JsonUtils.toJson(table)));
+      }
+      catch(RuntimeException e)
+      {
+         LOG.warn("Could not serialize table meta data to compute its version - using the table object's identity instead", e, logPair("tableName", table.getName()));
+      }
+
+      return (sha256Hex("jvm:" + JVM_INSTANCE_ID + '|' + System.identityHashCode(table) + '\n' + computeStructureVersion(table)));
+   }
+
+
+
+   /***************************************************************************
+    * compute a version of the parts of a table's meta data that personalization
+    * reads:  a SHA-256 hash of the table's name, label & primary key; its
+    * fields & virtual fields (in order), with their types, labels, and the
+    * attributes that access levels change; and its sections (in order), with
+    * their fields.
+    ***************************************************************************/
+   static String computeStructureVersion(QTableMetaData table)
+   {
+      StringBuilder canonical = new StringBuilder();
+      canonical.append("table:").append(table.getName()).append('|').append(table.getLabel()).append('|').append(table.getPrimaryKeyField()).append('\n');
+
+      for(QFieldMetaData field : CollectionUtils.nonNullMap(table.getFields()).values())
+      {
+         canonical.append("field:").append(field.getName()).append('|').append(field.getType()).append('|').append(field.getLabel())
+            .append('|').append(field.getIsRequired()).append('|').append(field.getIsEditable()).append('|').append(field.getIsHidden())
+            .append('|').append(field.getPossibleValueSourceName()).append('\n');
+      }
+
+      for(QVirtualFieldMetaData virtualField : CollectionUtils.nonNullMap(table.getVirtualFields()).values())
+      {
+         canonical.append("virtualField:").append(virtualField.getName()).append('|').append(virtualField.getType()).append('|').append(virtualField.getLabel()).append('\n');
+      }
+
+      for(QFieldSection section : CollectionUtils.nonNullList(table.getSections()))
+      {
+         canonical.append("section:").append(section.getName()).append('|').append(section.getLabel()).append('|').append(section.getTier())
+            .append('|').append(section.getWidgetName()).append('|').append(section.getIsHidden()).append('|').append(section.getFieldNames()).append('\n');
+      }
+
+      return (sha256Hex(canonical.toString()));
+   }
+
+
+
+   /***************************************************************************
+    * hex-encoded SHA-256 hash of a (canonical) string.
+    ***************************************************************************/
+   static String sha256Hex(String canonical)
+   {
+      try
+      {
+         MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+         return (HexFormat.of().formatHex(messageDigest.digest(canonical.getBytes(StandardCharsets.UTF_8))));
+      }
+      catch(NoSuchAlgorithmException e)
+      {
+         throw (new QRuntimeException("Error computing fingerprint", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * check if this view was compiled against a given table (e.g., versus some
+    * other version of a table with the same name) - that is, against the
+    * table's (shared) dictionary, which other objects for the same version of
+    * the table (e.g., clones) also get.
+    ***************************************************************************/
+   public boolean isCompiledFor(QTableMetaData table)
+   {
+      return (table != null && (dictionary.getSourceTable() == table || dictionary == FieldNameDictionary.forTable(table)));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public boolean isFieldInView(String fieldName)
+   {
+      return (fieldAccessMatrix.isInView(dictionary.indexOf(fieldName)));
+   }
+
+
+
+   /***************************************************************************
+    * get the access level for a field in the view - null if it's not in the
+    * view, or if its access level was null/unrecognized.
+    ***************************************************************************/
+   public FieldAccessLevel getFieldAccessLevel(String fieldName)
+   {
+      return (fieldAccessMatrix.getAccessLevel(dictionary.indexOf(fieldName)));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public boolean isWidgetInView(String widgetName)
+   {
+      return (widgetNames.contains(widgetName));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for tableView
+    *******************************************************************************/
+   public TableView getTableView()
+   {
+      return (this.tableView);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for dictionary
+    *******************************************************************************/
+   public FieldNameDictionary getDictionary()
+   {
+      return (this.dictionary);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for fieldAccessMatrix
+    *******************************************************************************/
+   public FieldAccessMatrix getFieldAccessMatrix()
+   {
+      return (this.fieldAccessMatrix);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for widgetNames
+    *******************************************************************************/
+   public Set<String> getWidgetNames()
+   {
+      return (this.widgetNames);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for fingerprint
+    *******************************************************************************/
+   public String getFingerprint()
+   {
+      return (this.fingerprint);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for grantsWholeTable
+    *******************************************************************************/
+   public boolean getGrantsWholeTable()
+   {
+      return (this.grantsWholeTable);
+   }
+
+}
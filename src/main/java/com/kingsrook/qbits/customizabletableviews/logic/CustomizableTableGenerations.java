@@ -0,0 +1,431 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTableGeneration;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qqq.backend.core.actions.tables.AggregateAction;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.aggregate.Aggregate;
+import com.kingsrook.qqq.backend.core.model.actions.tables.aggregate.AggregateInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.aggregate.AggregateOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.aggregate.AggregateResult;
+import com.kingsrook.qqq.backend.core.model.actions.tables.aggregate.GroupBy;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+
+
+/*******************************************************************************
+ ** Tracks the generation of each {@link CustomizableTable} - a number that is
+ ** bumped whenever the table's views (or their fields, widgets, or roles) are
+ ** changed - so that cached views can be checked for staleness by comparing
+ ** one number per table, read for all tables in a single query.
+ **
+ ** Generations are kept in the append-only {@link CustomizableTableGeneration}
+ ** table (not on the CustomizableTable records themselves), where a table's
+ ** generation is the greatest id of its rows:
+ ** <ul>
+ ** <li>{@link #bump(TableViewsCacheInvalidation)} inserts a row for each of the
+ ** tables that an invalidation affects (or one for all tables, if it's
+ ** everything) - a single insert, so concurrent bumps can't lose each other,
+ ** and with no read of existing generations.</li>
+ ** <li>{@link #checkIfDue()} (at most once per check interval) reads the
+ ** generations of all tables (one aggregate query), and applies an
+ ** invalidation for any table whose generation differs from the last one
+ ** seen - including the node's own bumps, which are applied once more.</li>
+ ** </ul>
+ **
+ ** With no check interval set (the default), nothing is bumped or checked -
+ ** and the CustomizableTableGeneration table isn't used.
+ *******************************************************************************/
+public class CustomizableTableGenerations
+{
+   private static final QLogger LOG = QLogger.getLogger(CustomizableTableGenerations.class);
+
+   static final int PRUNE_EVERY_N_BUMPS = 100;
+
+   private final Consumer<TableViewsCacheInvalidation> applier;
+   private final ReentrantLock                         checkLock = new ReentrantLock();
+
+   private volatile Duration             checkInterval;
+   private volatile Instant              lastCheckedAt;
+   private volatile Map<String, Integer> generationsByTableName;
+
+   private final AtomicLong checkCount      = new AtomicLong();
+   private final AtomicLong bumpCount       = new AtomicLong();
+   private final AtomicLong staleTableCount = new AtomicLong();
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    ** @param applier what to do with invalidations for tables whose generation
+    ** was found to have changed.
+    *******************************************************************************/
+   public CustomizableTableGenerations(Consumer<TableViewsCacheInvalidation> applier)
+   {
+      this.applier = applier;
+   }
+
+
+
+   /***************************************************************************
+    * bump the generations of the tables affected by an invalidation (all of
+    * them, if it's everything).  Errors are logged, not thrown, as the edit
+    * that caused the invalidation has already been made.
+    ***************************************************************************/
+   public void bump(TableViewsCacheInvalidation invalidation)
+   {
+      if(checkInterval == null || invalidation == null || invalidation.isEmpty())
+      {
+         return;
+      }
+
+      try
+      {
+         Set<String> tableNames = new HashSet<>();
+         if(invalidation.getEverything())
+         {
+            tableNames.add(CustomizableTableGeneration.ALL_TABLES);
+         }
+         else
+         {
+            tableNames.addAll(invalidation.getTableNames());
+            tableNames.addAll(getTableNamesForTableViewIds(invalidation.getTableViewIds()));
+         }
+
+         if(tableNames.isEmpty())
+         {
+            return;
+         }
+
+         Instant                           now     = Instant.now();
+         List<CustomizableTableGeneration> inserts = new ArrayList<>();
+         for(String tableName : tableNames)
+         {
+            inserts.add(new CustomizableTableGeneration().withTableName(tableName).withCreateDate(now));
+         }
+
+         new InsertAction().execute(new InsertInput(CustomizableTableGeneration.TABLE_NAME).withRecordEntities(inserts));
+
+         //////////////////////////////////////////////////////////////
+         // prune each time the count passes a multiple of the limit //
+         //////////////////////////////////////////////////////////////
+         long newBumpCount = bumpCount.addAndGet(inserts.size());
+         if(newBumpCount / PRUNE_EVERY_N_BUMPS != (newBumpCount - inserts.size()) / PRUNE_EVERY_N_BUMPS)
+         {
+            prune();
+         }
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error bumping customizable table generations", e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * look up the names of the (customizable) tables that table views are for.
+    * A view that can't be resolved to its table - e.g., as it was deleted
+    * (along with its fields, widgets, and role-ints) before this lookup - could
+    * have been for any table, so then the generation for all tables is bumped.
+    ***************************************************************************/
+   private Set<String> getTableNamesForTableViewIds(Set<Integer> tableViewIds) throws QException
+   {
+      Set<String> tableNames = new HashSet<>();
+      if(tableViewIds.isEmpty())
+      {
+         return (tableNames);
+      }
+
+      Set<Integer> foundTableViewIds    = new HashSet<>();
+      Set<Integer> customizableTableIds = new HashSet<>();
+      for(QRecord tableViewRecord : query(TableView.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, new ArrayList<>(tableViewIds)))))
+      {
+         foundTableViewIds.add(tableViewRecord.getValueInteger("id"));
+         customizableTableIds.add(tableViewRecord.getValueInteger("customizableTableId"));
+      }
+
+      customizableTableIds.remove(null);
+      if(!foundTableViewIds.containsAll(tableViewIds))
+      {
+         return (Set.of(CustomizableTableGeneration.ALL_TABLES));
+      }
+
+      Set<Integer> foundCustomizableTableIds = new HashSet<>();
+      if(!customizableTableIds.isEmpty())
+      {
+         for(QRecord customizableTableRecord : query(CustomizableTable.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, new ArrayList<>(customizableTableIds)))))
+         {
+            foundCustomizableTableIds.add(customizableTableRecord.getValueInteger("id"));
+            tableNames.add(customizableTableRecord.getValueString("tableName"));
+         }
+      }
+
+      tableNames.remove(null);
+      if(!foundCustomizableTableIds.containsAll(customizableTableIds))
+      {
+         return (Set.of(CustomizableTableGeneration.ALL_TABLES));
+      }
+
+      return (tableNames);
+   }
+
+
+
+   /***************************************************************************
+    * check generations - if checks are on, and it has been at least the check
+    * interval since the last one.  If another thread is already checking, this
+    * one doesn't wait for it.
+    ***************************************************************************/
+   public void checkIfDue()
+   {
+      if(checkInterval == null || !isCheckDue())
+      {
+         return;
+      }
+
+      if(checkLock.tryLock())
+      {
+         try
+         {
+            if(isCheckDue())
+            {
+               check();
+            }
+         }
+         finally
+         {
+            checkLock.unlock();
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private boolean isCheckDue()
+   {
+      Instant lastCheckedAt = this.lastCheckedAt;
+      return (lastCheckedAt == null || !lastCheckedAt.plus(checkInterval).isAfter(Instant.now()));
+   }
+
+
+
+   /***************************************************************************
+    * read the generations of all tables, and apply an invalidation for the
+    * ones that changed (including being added or removed) since the last
+    * check - or of everything, if the generation for all tables changed.  The
+    * first check just notes the generations.
+    ***************************************************************************/
+   void check()
+   {
+      try
+      {
+         Instant              now                    = Instant.now();
+         Map<String, Integer> currentGenerations     = readGenerations();
+         Map<String, Integer> generationsByTableName = this.generationsByTableName;
+
+         if(generationsByTableName != null)
+         {
+            Set<String> tableNames = new HashSet<>(generationsByTableName.keySet());
+            tableNames.addAll(currentGenerations.keySet());
+
+            TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation();
+            for(String tableName : tableNames)
+            {
+               if(!Objects.equals(generationsByTableName.get(tableName), currentGenerations.get(tableName)))
+               {
+                  if(CustomizableTableGeneration.ALL_TABLES.equals(tableName))
+                  {
+                     invalidation.mergeIn(TableViewsCacheInvalidation.ofEverything());
+                  }
+                  else
+                  {
+                     invalidation.addTableName(tableName);
+                  }
+                  staleTableCount.incrementAndGet();
+               }
+            }
+
+            if(!invalidation.isEmpty())
+            {
+               applier.accept(invalidation);
+            }
+         }
+
+         this.generationsByTableName = currentGenerations;
+         this.lastCheckedAt = now;
+         checkCount.incrementAndGet();
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error checking customizable table generations", e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * read the current generation (greatest id) of each table that has any.
+    ***************************************************************************/
+   private Map<String, Integer> readGenerations() throws QException
+   {
+      GroupBy   groupBy   = new GroupBy(QFieldType.STRING, "tableName");
+      Aggregate aggregate = new Aggregate("id", AggregateOperator.MAX);
+
+      Map<String, Integer> generations = new HashMap<>();
+      for(AggregateResult result : new AggregateAction().execute(new AggregateInput(CustomizableTableGeneration.TABLE_NAME)
+         .withGroupBy(groupBy)
+         .withAggregate(aggregate)).getResults())
+      {
+         String tableName = ValueUtils.getValueAsString(result.getGroupByValue(groupBy));
+         if(tableName != null)
+         {
+            generations.put(tableName, ValueUtils.getValueAsInteger(result.getAggregateValue(aggregate)));
+         }
+      }
+      return (generations);
+   }
+
+
+
+   /***************************************************************************
+    * delete the rows for each table below its current generation - which
+    * don't affect what its generation is.
+    ***************************************************************************/
+   private void prune() throws QException
+   {
+      for(Map.Entry<String, Integer> entry : readGenerations().entrySet())
+      {
+         new DeleteAction().execute(new DeleteInput(CustomizableTableGeneration.TABLE_NAME)
+            .withQueryFilter(new QQueryFilter()
+               .withCriteria(new QFilterCriteria("tableName", QCriteriaOperator.EQUALS, entry.getKey()))
+               .withCriteria(new QFilterCriteria("id", QCriteriaOperator.LESS_THAN, entry.getValue()))));
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private List<QRecord> query(String tableName, QQueryFilter filter) throws QException
+   {
+      return (new QueryAction().execute(new QueryInput(tableName).withFilter(filter)).getRecords());
+   }
+
+
+
+   /***************************************************************************
+    * forget the generations seen (e.g., when all caches are cleared), so that
+    * the next check starts over.
+    ***************************************************************************/
+   public void reset()
+   {
+      generationsByTableName = null;
+      lastCheckedAt = null;
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for checkInterval - where null (the default) turns off bumping and
+    ** checking generations.
+    *******************************************************************************/
+   public void setCheckInterval(Duration checkInterval)
+   {
+      this.checkInterval = checkInterval;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for checkInterval
+    *******************************************************************************/
+   public Duration getCheckInterval()
+   {
+      return (this.checkInterval);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for checkCount - the number of checks run.
+    *******************************************************************************/
+   public long getCheckCount()
+   {
+      return (this.checkCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bumpCount - the number of table generations bumped (i.e.,
+    ** CustomizableTableGeneration rows inserted).
+    *******************************************************************************/
+   public long getBumpCount()
+   {
+      return (this.bumpCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for staleTableCount - the number of times a check found a table's
+    ** generation to have changed.
+    *******************************************************************************/
+   public long getStaleTableCount()
+   {
+      return (this.staleTableCount.get());
+   }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.QueryOrGetInputInterface;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryOutput;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.Association;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** Companion to {@link CustomizableTableViewsTablePersonalizer}, for the data
+ ** path:  customizes a QueryInput on a customizable table, per the current
+ ** session's effective view of it - so that the query doesn't read (or
+ ** transfer) what the personalized meta data doesn't show.
+ **
+ ** Specifically, it sets the query's fieldNamesToInclude to the fields and
+ ** virtual fields that are in the view (plus those the personalizer's "always
+ ** keep" rules keep), and the visible fields of any selected join tables - so
+ ** backends that project columns (e.g., RDBMS) only select those columns, and
+ ** post-query customizers that compute virtual fields can skip the hidden
+ ** ones (see {@link #getVirtualFieldNamesToCompute}).  For queries that
+ ** translate possible values, it limits the translation to those same fields
+ ** - and as hidden fields' values aren't fetched, display values aren't
+ ** formatted for them either.  And, for queries that include associations,
+ ** it leaves out the ones that the session can't see (the same ones that
+ ** personalization removes from the meta data).
+ **
+ ** Like the personalizer (which only personalizes meta data for USER input),
+ ** this is meant for queries made on behalf of a user, and not for system
+ ** queries, which should see whole tables.  QQQ has no pre-query customizer
+ ** hook for it to be registered as, so it isn't applied automatically:  an
+ ** application runs its user queries through {@link #execute} (or calls
+ ** {@link #customizeQueryInput} before its own QueryAction), e.g., in its
+ ** API/middleware layer - see the README.
+ *******************************************************************************/
+public class CustomizableTableViewsQueryCustomizer
+{
+   private final CustomizableTableViewsTablePersonalizer personalizer;
+
+
+
+   /*******************************************************************************
+    ** Constructor - using the qbit's own personalizer (and its rules).
+    *******************************************************************************/
+   public CustomizableTableViewsQueryCustomizer()
+   {
+      this(new CustomizableTableViewsTablePersonalizer());
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor - using a given personalizer (e.g., an application's subclass,
+    ** with its own "always keep" rules).
+    *******************************************************************************/
+   public CustomizableTableViewsQueryCustomizer(CustomizableTableViewsTablePersonalizer personalizer)
+   {
+      this.personalizer = personalizer;
+   }
+
+
+
+   /***************************************************************************
+    * customize a query input (in place) for the current session.  Fields of
+    * tables that aren't customizable, or whose effective view grants the
+    * whole table, aren't projected - but associations to tables the session
+    * can't see are still left out (as they may be customizable themselves).
+    *
+    * @return the same query input.
+    ***************************************************************************/
+   public QueryInput customizeQueryInput(QueryInput queryInput) throws QException
+   {
+      QTableMetaData table = queryInput == null ? null : queryInput.getTable();
+      if(table == null || table.getName() == null)
+      {
+         return (queryInput);
+      }
+
+      CompiledTableView compiledTableView = personalizer.isTableCustomizable(table.getName()) ? personalizer.getEffectiveCompiledTableViewForCurrentSession(table.getName()) : null;
+
+      if(queryInput.getIncludeAssociations())
+      {
+         excludeHiddenAssociations(queryInput, table);
+      }
+
+      if(compiledTableView != null && !compiledTableView.getGrantsWholeTable())
+      {
+         applyFieldProjection(queryInput, table, compiledTableView);
+         limitPossibleValueTranslations(queryInput);
+      }
+
+      return (queryInput);
+   }
+
+
+
+   /***************************************************************************
+    * run a query on behalf of the current session's user:  customize its
+    * input (see {@link #customizeQueryInput}), then execute it with a
+    * QueryAction.
+    ***************************************************************************/
+   public QueryOutput execute(QueryInput queryInput) throws QException
+   {
+      return (new QueryAction().execute(customizeQueryInput(queryInput)));
+   }
+
+
+
+   /***************************************************************************
+    * set the associations that the query includes to the table's associations
+    * less the ones that the session can't see (see
+    * {@link CustomizableTableViewsTablePersonalizer#getHiddenAssociationNames}).
+    * If the query already had a set of associations to include, it's only
+    * narrowed.
+    ***************************************************************************/
+   private void excludeHiddenAssociations(QueryInput queryInput, QTableMetaData table)
+   {
+      Set<String> hiddenAssociationNames = personalizer.getHiddenAssociationNames(table);
+      if(hiddenAssociationNames.isEmpty())
+      {
+         return;
+      }
+
+      Set<String> associationNamesToInclude = new LinkedHashSet<>();
+      for(Association association : table.getAssociations())
+      {
+         if(!hiddenAssociationNames.contains(association.getName()))
+         {
+            associationNamesToInclude.add(association.getName());
+         }
+      }
+
+      if(queryInput.getAssociationNamesToInclude() != null)
+      {
+         associationNamesToInclude.retainAll(queryInput.getAssociationNamesToInclude());
+      }
+
+      queryInput.setAssociationNamesToInclude(associationNamesToInclude);
+   }
+
+
+
+   /***************************************************************************
+    * get the names of the virtual fields that a post-query customizer should
+    * compute values for, for a query (or get):  the table's virtual fields,
+    * less any that the query's fieldNamesToInclude leaves out - e.g., because
+    * {@link #customizeQueryInput} projected the query to the session's view.
+    * Customizers whose virtual fields are costly (e.g., a backend call per
+    * record) can opt in to skipping the ones the user wouldn't see anyway, by
+    * calling this (see the README).
+    *
+    * Only QueryInputs are projected:  a GetInput has no fields to include, so
+    * for one (or for a query that wasn't run through this customizer, such as
+    * a system query) every virtual field of the table is returned.  The
+    * table is the instance's own, not a personalized one, as personalization
+    * never adds virtual fields - the ones it removes are already left out of
+    * a projected query's fieldNamesToInclude.
+    ***************************************************************************/
+   public static Set<String> getVirtualFieldNamesToCompute(QueryOrGetInputInterface input)
+   {
+      QTableMetaData table = input == null ? null : QContext.getQInstance().getTable(input.getTableName());
+      if(table == null || CollectionUtils.nullSafeIsEmpty(table.getVirtualFields()))
+      {
+         return (Collections.emptySet());
+      }
+
+      Set<String> virtualFieldNames = new LinkedHashSet<>(table.getVirtualFields().keySet());
+      if(input instanceof QueryInput queryInput && queryInput.getFieldNamesToInclude() != null)
+      {
+         virtualFieldNames.retainAll(queryInput.getFieldNamesToInclude());
+      }
+
+      return (virtualFieldNames);
+   }
+
+
+
+   /***************************************************************************
+    * set the fields that the query includes, to the ones the view keeps (of
+    * the table's own fields & virtual fields - the latter aren't selected
+    * from backends, but tell post-query customizers which ones to compute),
+    * plus the visible fields of its selected join tables.  If the query
+    * already had a set of fields to include, it's only narrowed.
+    ***************************************************************************/
+   private void applyFieldProjection(QueryInput queryInput, QTableMetaData table, CompiledTableView compiledTableView) throws QException
+   {
+      if(!compiledTableView.isCompiledFor(table))
+      {
+         compiledTableView = CompiledTableView.compile(compiledTableView.getTableView(), table);
+      }
+
+      FieldNameDictionary dictionary = compiledTableView.getDictionary();
+      BitSet              fieldsMask = compiledTableView.getFieldAccessMatrix().getInView();
+      fieldsMask.or(personalizer.getAlwaysKeepFieldMask(dictionary, CustomizableTableViewsTablePersonalizer.ActionKind.of(queryInput)));
+
+      Set<String> fieldNamesToInclude = new LinkedHashSet<>();
+      for(Set<String> fieldNames : List.of(CollectionUtils.nonNullMap(table.getFields()).keySet(), CollectionUtils.nonNullMap(table.getVirtualFields()).keySet()))
+      {
+         for(String fieldName : fieldNames)
+         {
+            int index = dictionary.indexOf(fieldName);
+            if(index >= 0 && fieldsMask.get(index))
+            {
+               fieldNamesToInclude.add(fieldName);
+            }
+         }
+      }
+
+      Map<String, Set<String>> getFieldsToKeepFromJoinTableCache = new HashMap<>();
+      for(QueryJoin queryJoin : CollectionUtils.nonNullList(queryInput.getQueryJoins()))
+      {
+         if(queryJoin.getSelect() && QContext.getQInstance().getTable(queryJoin.getJoinTable()) != null)
+         {
+            for(String fieldName : personalizer.getFieldsToKeepFromJoinTable(queryJoin.getJoinTable(), queryInput, getFieldsToKeepFromJoinTableCache))
+            {
+               fieldNamesToInclude.add(queryJoin.getJoinTableOrItsAlias() + "." + fieldName);
+            }
+         }
+      }
+
+      if(queryInput.getFieldNamesToInclude() != null)
+      {
+         fieldNamesToInclude.retainAll(queryInput.getFieldNamesToInclude());
+      }
+
+      queryInput.setFieldNamesToInclude(fieldNamesToInclude);
+   }
+
+
+
+   /***************************************************************************
+    * for a query that translates possible values, set the fields that it
+    * translates to the ones it includes (as set by the projection) - so that
+    * possible value sources aren't looked up for fields the session can't
+    * see.  If the query already had a set of fields to translate, it's only
+    * narrowed.
+    ***************************************************************************/
+   private void limitPossibleValueTranslations(QueryInput queryInput)
+   {
+      if(!queryInput.getShouldTranslatePossibleValues() || queryInput.getFieldNamesToInclude() == null)
+      {
+         return;
+      }
+
+      Set<String> fieldsToTranslatePossibleValues = new LinkedHashSet<>(queryInput.getFieldNamesToInclude());
+      if(queryInput.getFieldsToTranslatePossibleValues() != null)
+      {
+         fieldsToTranslatePossibleValues.retainAll(queryInput.getFieldsToTranslatePossibleValues());
+      }
+
+      queryInput.setFieldsToTranslatePossibleValues(fieldsToTranslatePossibleValues);
+   }
+
+}
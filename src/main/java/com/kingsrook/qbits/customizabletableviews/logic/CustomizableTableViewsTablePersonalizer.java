@@ -22,20 +22,36 @@
 package com.kingsrook.qbits.customizabletableviews.logic;
 
 
+import java.lang.ref.WeakReference;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import com.kingsrook.qbits.customizabletableviews.CustomizableTableViewsQBitConfig;
 import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
 import com.kingsrook.qbits.customizabletableviews.model.CustomizableTableViewsFieldMetaData;
 import com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel;
@@ -49,6 +65,7 @@ import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
 import com.kingsrook.qqq.backend.core.actions.metadata.personalization.TableMetaDataPersonalizerInterface;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
@@ -67,14 +84,17 @@ import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
 import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.DynamicDefaultValueBehavior;
-import com.kingsrook.qqq.backend.core.model.metadata.fields.FieldAndJoinTable;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QSupplementalFieldMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QVirtualFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.security.MultiRecordSecurityLock;
 import com.kingsrook.qqq.backend.core.model.metadata.security.RecordSecurityLock;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.Association;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.ExposedJoin;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QFieldSection;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.model.session.QUser;
@@ -94,22 +114,464 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
 {
    private static final QLogger LOG = QLogger.getLogger(CustomizableTableViewsTablePersonalizer.class);
 
-   private static Memoization<String, Boolean> isTableCustomizableMemoization = new Memoization<>(Duration.ofMinutes(5));
+   private static final Duration DEFAULT_TIMEOUT            = Duration.ofMinutes(5);
+   private static final Duration GENERATION_CHECKED_TIMEOUT = Duration.ofHours(4);
+
+   //////////////////////////////////////////////////////////////////////////////////////
+   // size of the default refresh-ahead executor:  a few threads, with a bounded queue //
+   // (refreshes that don't fit are dropped - the current results just time out).      //
+   //////////////////////////////////////////////////////////////////////////////////////
+   private static final int DEFAULT_REFRESH_AHEAD_THREADS    = 2;
+   private static final int DEFAULT_REFRESH_AHEAD_QUEUE_SIZE = 100;
+
+   ////////////////////////////////////////////////////////////////////////////////////
+   // default sizing of the effective view memoization, when the qbit config doesn't //
+   // set it:  room for every table, for this many role sets - with a minimum size.  //
+   ////////////////////////////////////////////////////////////////////////////////////
+   private static final int DEFAULT_EXPECTED_ROLE_SETS          = 50;
+   private static final int MIN_EFFECTIVE_TABLE_VIEW_CACHE_SIZE = 1000;
+
+   /////////////////////////////////////////////////////////////////////////////////////////////
+   // these two memoizations are loaded from the database - so they're single-flight, to keep //
+   // concurrent requests (e.g., right after they're cleared) from all loading the same key.  //
+   // the customizable table rows (by table name) serve both whether a table is customizable, //
+   // and its default view id, for falling back to when no role views apply.                  //
+   /////////////////////////////////////////////////////////////////////////////////////////////
+   private static SingleFlightMemoization<String, CustomizableTableRow> customizableTableRowMemoization = new SingleFlightMemoization<>(DEFAULT_TIMEOUT);
+
+   //////////////////////////////////////////////////////////////////////////////////////////////
+   // effective views only depend on the session's roles - so they are memoized by a canonical //
+   // (sorted) role-id set + table name.  users with the same roles share an entry, and a user //
+   // whose roles change immediately maps to a different key (rather than to a stale entry).   //
+   //////////////////////////////////////////////////////////////////////////////////////////////
+   private static SingleFlightMemoization<Pair<String, String>, CompiledTableView> getEffectiveTableViewByRoleSetMemoization = new SingleFlightMemoization<>(DEFAULT_TIMEOUT);
+
+   /////////////////////////////////////////////////////////////////////////////////////////
+   // role sets that the effective views of all customizable tables have been prefetched  //
+   // for (if the qbit config turns prefetching on) - so it's done once per role set, not //
+   // per table, nor per session.                                                         //
+   /////////////////////////////////////////////////////////////////////////////////////////
+   private static SingleFlightMemoization<String, Boolean> prefetchedRoleSetsMemoization = new SingleFlightMemoization<>(DEFAULT_TIMEOUT);
+   private static volatile boolean                         prefetchEffectiveTableViews;
+
+   ///////////////////////////////////////////////////////////////////////////////////////////
+   // keys of memoized effective views, by the table views they were built from - so that   //
+   // edits to views, role-ints, or customizable tables can evict just the keys they affect //
+   ///////////////////////////////////////////////////////////////////////////////////////////
+   private static final EffectiveTableViewKeyIndex effectiveTableViewKeyIndex = new EffectiveTableViewKeyIndex();
+
+   ///////////////////////////////////////////////////////////////////////////////////////////
+   // effective views, interned by table name & fingerprint - so that role sets whose views //
+   // grant the same fields & widgets share one compiled view (and so, one personalized     //
+   // table).  each table's pool is for one dictionary, and is replaced along with it (like //
+   // FieldNameDictionary.forTable).  views are held weakly - so one is dropped from its    //
+   // pool once no memoized effective view (or personalized table) is using it any more.    //
+   // with counts of requests to the pools, and of views added to them.                     //
+   ///////////////////////////////////////////////////////////////////////////////////////////
+   private static final Map<String, Pair<FieldNameDictionary, Map<String, WeakReference<CompiledTableView>>>> internedTableViews     = new ConcurrentHashMap<>();
+   private static final AtomicLong                                                                           internRequestCount     = new AtomicLong();
+   private static final AtomicLong                                                                           internedTableViewCount = new AtomicLong();
+
+   ////////////////////////////////////////////////////////////////////////////////////////
+   // edits to this qbit's tables submit their invalidations through here - so that bulk //
+   // edits can be coalesced (per the qbit config, or in a batch) and applied just once. //
+   ////////////////////////////////////////////////////////////////////////////////////////
+   private static final TableViewsCacheInvalidationCoalescer invalidationCoalescer = new TableViewsCacheInvalidationCoalescer(CustomizableTableViewsTablePersonalizer::applyInvalidation);
+
+   ///////////////////////////////////////////////////////////////////////////////////////
+   // invalidations applied here are appended to the change log table, and ones applied //
+   // on other nodes are read from it - if the qbit config turns on change log polling. //
+   ///////////////////////////////////////////////////////////////////////////////////////
+   private static final TableViewsChangeLogSynchronizer changeLogSynchronizer = new TableViewsChangeLogSynchronizer(CustomizableTableViewsTablePersonalizer::invalidate);
+
+   ///////////////////////////////////////////////////////////////////////////////////////
+   // invalidations applied here bump the generations of the tables they affect, and    //
+   // changed generations (e.g., from other nodes) are checked for - if the qbit config //
+   // turns on generation checks (in which case the caches above are kept for longer).  //
+   ///////////////////////////////////////////////////////////////////////////////////////
+   private static final CustomizableTableGenerations customizableTableGenerations = new CustomizableTableGenerations(CustomizableTableViewsTablePersonalizer::invalidate);
+
+   ///////////////////////////////////////////////////////////////////////////////////////
+   // if the qbit config turns it on, all of the configuration is held in memory, in an //
+   // immutable snapshot (which invalidations replace, with an incrementally re-built   //
+   // one) - so that loading effective views doesn't go to the backend.  loaded lazily, //
+   // and fully re-loaded once it's older than the max age.                             //
+   ///////////////////////////////////////////////////////////////////////////////////////
+   private static final AtomicReference<TableViewsConfigurationSnapshot> configurationSnapshot       = new AtomicReference<>();
+   private static final Object                                           snapshotLock                = new Object();
+   private static volatile boolean                                       useConfigurationSnapshot;
+   private static volatile Duration                                      configurationSnapshotMaxAge = DEFAULT_TIMEOUT;
+
+   ////////////////////////////////////////////////////////////////////////////////////////////////////
+   // fully personalized tables - keyed by the source table & effective view (both by identity), and //
+   // by the kind of action (since the "always keep" rules differ for insert/update vs. others)      //
+   ////////////////////////////////////////////////////////////////////////////////////////////////////
+   private static Memoization<PersonalizedTableKey, QTableMetaData> personalizedTableMemoization = new Memoization<>(DEFAULT_TIMEOUT);
+
+   ////////////////////////////////////////////////////////////////////////////////
+   // number of times a view granted the whole table, so it was used as-is - vs. //
+   // being cloned & pruned (or gotten from the memoization above).              //
+   ////////////////////////////////////////////////////////////////////////////////
+   private static final AtomicLong wholeTableFastPathCount = new AtomicLong();
+
+   //////////////////////////////////////////////////////////////////////////////
+   // number of times a view was applied to a table - i.e., personalizations   //
+   // that weren't the whole-table fast path, nor found in the memoization.    //
+   //////////////////////////////////////////////////////////////////////////////
+   private static final AtomicLong personalizationCount = new AtomicLong();
+
+   ///////////////////////////////////////////////////////////////////////////////////////////
+   // names of the fields in join tables that are visible to a role set - used when pruning //
+   // exposed-join fields from the sections of (any) other table.                           //
+   ///////////////////////////////////////////////////////////////////////////////////////////
+   private static Memoization<JoinTableFieldsKey, Set<String>> joinTableFieldsToKeepMemoization = new Memoization<>(DEFAULT_TIMEOUT);
+
+   ///////////////////////////////////////////////////////////////////////////////////////
+   // copies of tables without their fields or sections, plus copies of those fields &  //
+   // sections - by table object (held weakly, as everything else about the table, not  //
+   // just its structure, is copied from them) - that copy-on-write versions of the     //
+   // tables are made from.                                                             //
+   ///////////////////////////////////////////////////////////////////////////////////////
+   private static final Map<QTableMetaData, TableShell> tableShells = Collections.synchronizedMap(new WeakHashMap<>());
+
+   ////////////////////////////////////////////////////////////////////////////////////////
+   // versions (content hashes) of tables' meta data, for personalized table ETags - by  //
+   // table object (held weakly, like above - not by dictionary, as tables that share a  //
+   // dictionary can differ in other meta data), so each table's is only computed once.  //
+   ////////////////////////////////////////////////////////////////////////////////////////
+   private static final Map<QTableMetaData, String> tableVersions = Collections.synchronizedMap(new WeakHashMap<>());
+
+   /////////////////////////////////////////////////////////////////////////////////////////////////
+   // masks of the fields that the "always keep" rules say to keep - per personalizer class (as   //
+   // subclasses can add rules), then per table dictionary (held weakly, so that the masks for an //
+   // old version of a table, e.g., from a previous QInstance, go away along with it).            //
+   /////////////////////////////////////////////////////////////////////////////////////////////////
+   private static final Map<Class<?>, Map<FieldNameDictionary, Map<ActionKind, BitSet>>> alwaysKeepFieldMasks = new ConcurrentHashMap<>();
+
+   ////////////////////////////////////////////////////////////////////////////////////
+   // the instance that the settings from the qbit config were last configured for,  //
+   // and the (bounded) executor to refresh on, if the qbit config doesn't give one. //
+   ////////////////////////////////////////////////////////////////////////////////////
+   private static volatile QInstance configuredForInstance;
+   private static ExecutorService    defaultRefreshAheadExecutor;
 
-   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-   // todo ideally we would clear this memoization if user-role-int is edited - but that would require topics or similar, which we don't have at this time. //
-   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-   private static Memoization<Pair<String, String>, TableView> getEffectiveTableViewByUserMemoization = new Memoization<>(Duration.ofMinutes(5));
+
+
+   /***************************************************************************
+    * clear all caches and synchronization state - and forget the instance
+    * that settings were configured for, so they're re-read from the qbit
+    * config when next needed.
+    ***************************************************************************/
+   public static void clearMemoizations()
+   {
+      clearAllCaches();
+      changeLogSynchronizer.reset();
+      customizableTableGenerations.reset();
+      configurationSnapshot.set(null);
+      configuredForInstance = null;
+   }
 
 
 
    /***************************************************************************
     *
     ***************************************************************************/
-   public static void clearMemoizations()
+   private static void clearAllCaches()
+   {
+      customizableTableRowMemoization.clear();
+      getEffectiveTableViewByRoleSetMemoization.clear();
+      prefetchedRoleSetsMemoization.clear();
+      effectiveTableViewKeyIndex.clear();
+      internedTableViews.clear();
+      personalizedTableMemoization.clear();
+      joinTableFieldsToKeepMemoization.clear();
+      alwaysKeepFieldMasks.clear();
+      tableShells.clear();
+      tableVersions.clear();
+      TableSectionLayout.clearCache();
+      FieldNameDictionary.clearCache();
+   }
+
+
+
+   /***************************************************************************
+    * invalidate only the memoized data affected by a change to this qbit's
+    * tables:  whether the invalidation's tables are customizable, and the
+    * effective views that depend on its views, roles, or tables (found via
+    * the {@link EffectiveTableViewKeyIndex}).  The cheaper, derived caches
+    * (personalized tables and join-table fields, which can depend on other
+    * tables' views) are cleared entirely.
+    ***************************************************************************/
+   public static void invalidate(TableViewsCacheInvalidation invalidation)
+   {
+      if(invalidation == null || invalidation.isEmpty())
+      {
+         return;
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // update the snapshot (if there is one) first - so that effective views //
+      // re-loaded after the caches are cleared below come from the new one.   //
+      ///////////////////////////////////////////////////////////////////////////
+      updateConfigurationSnapshot(invalidation);
+
+      if(invalidation.getEverything())
+      {
+         clearAllCaches();
+         return;
+      }
+
+      invalidation.getTableNames().forEach(customizableTableRowMemoization::clearKey);
+
+      //////////////////////////////////////////////////////////////////////////////
+      // a load that's in-flight may have read the rows from before this change - //
+      // but it only registers its key (and the views it read) once it's done, so //
+      // the index can't say if it's affected.  so, cancel all in-flight loads    //
+      // (before finding the affected keys - any load that completes in between   //
+      // has registered its key by then, so it's found, and cleared, below).      //
+      //////////////////////////////////////////////////////////////////////////////
+      getEffectiveTableViewByRoleSetMemoization.cancelInFlightLoads();
+
+      for(Pair<String, String> key : effectiveTableViewKeyIndex.getAffectedKeys(invalidation))
+      {
+         getEffectiveTableViewByRoleSetMemoization.clearKey(key);
+         effectiveTableViewKeyIndex.remove(key);
+      }
+
+      personalizedTableMemoization.clear();
+      joinTableFieldsToKeepMemoization.clear();
+   }
+
+
+
+   /***************************************************************************
+    * get the number of database-backed loads (of whether tables are
+    * customizable, and of effective views) that were coalesced into another
+    * thread's concurrent load of the same key, rather than running their own.
+    ***************************************************************************/
+   public static long getCoalescedLoadCount()
+   {
+      return (customizableTableRowMemoization.getCoalescedLoadCount() + getEffectiveTableViewByRoleSetMemoization.getCoalescedLoadCount());
+   }
+
+
+
+   /***************************************************************************
+    * get the ratio of effective views loaded (across all role sets & tables)
+    * to the distinct views they were interned as - e.g., 10 means that on
+    * average, each compiled view is shared by 10 role set & table keys.
+    ***************************************************************************/
+   public static double getEffectiveTableViewDedupRatio()
+   {
+      return ((double) internRequestCount.get() / Math.max(1, internedTableViewCount.get()));
+   }
+
+
+
+   /***************************************************************************
+    * get the number of distinct effective views currently interned (i.e.,
+    * still in use by a memoized effective view or personalized table).
+    ***************************************************************************/
+   public static int getInternedTableViewCount()
+   {
+      int count = 0;
+      for(Pair<FieldNameDictionary, Map<String, WeakReference<CompiledTableView>>> pool : internedTableViews.values())
+      {
+         for(WeakReference<CompiledTableView> reference : pool.getB().values())
+         {
+            if(reference.get() != null)
+            {
+               count++;
+            }
+         }
+      }
+      return (count);
+   }
+
+
+
+   /***************************************************************************
+    * get the number of personalizations where the effective view granted the
+    * whole table - so the table was returned as-is, with no clone or pruning.
+    ***************************************************************************/
+   public static long getWholeTableFastPathCount()
+   {
+      return (wholeTableFastPathCount.get());
+   }
+
+
+
+   /***************************************************************************
+    * get the number of times a view was applied to a table (vs. a memoized
+    * personalized version of the table being cloned, or the table being used
+    * as-is).
+    ***************************************************************************/
+   public static long getPersonalizationCount()
+   {
+      return (personalizationCount.get());
+   }
+
+
+
+   /***************************************************************************
+    * get the number of invalidations (from edits to this qbit's tables) that
+    * were merged into another pending invalidation, rather than each being
+    * applied on its own.
+    ***************************************************************************/
+   public static long getCoalescedInvalidationCount()
+   {
+      return (invalidationCoalescer.getCoalescedCount());
+   }
+
+
+
+   /***************************************************************************
+    * open a batch, on the current thread, of invalidations from edits to this
+    * qbit's tables - e.g., around a bulk import of table views - so that
+    * they're applied once, when the batch is closed.
+    *
+    * <p>Batches aren't tied to transactions (see
+    * {@link TableViewsCacheInvalidationCoalescer}) - so, for edits in a
+    * transaction, close the batch after the commit, and discard it on rollback:
+    * </p>
+    *
+    * <pre>
+    * try(var batch = CustomizableTableViewsTablePersonalizer.openInvalidationBatch())
+    * {
+    *    try
+    *    {
+    *       // insert/update/delete TableViewFields, etc., in the transaction
+    *       transaction.commit();
+    *    }
+    *    catch(Exception e)
+    *    {
+    *       transaction.rollback();
+    *       batch.discard();
+    *       throw (e);
+    *    }
+    * }
+    * </pre>
+    ***************************************************************************/
+   public static TableViewsCacheInvalidationCoalescer.Batch openInvalidationBatch()
+   {
+      return (invalidationCoalescer.openBatch());
+   }
+
+
+
+   /***************************************************************************
+    * submit an invalidation from an edit to this qbit's tables - to be applied
+    * now, or coalesced with others (see {@link TableViewsCacheInvalidationCoalescer}).
+    ***************************************************************************/
+   static void submitInvalidation(TableViewsCacheInvalidation invalidation)
+   {
+      configureForInstance();
+      invalidationCoalescer.submit(invalidation);
+   }
+
+
+
+   /***************************************************************************
+    * apply an invalidation from an edit made on this node - and record it in
+    * the change log, for other nodes to apply too.
+    ***************************************************************************/
+   private static void applyInvalidation(TableViewsCacheInvalidation invalidation)
+   {
+      invalidate(invalidation);
+      changeLogSynchronizer.append(invalidation);
+      customizableTableGenerations.bump(invalidation);
+   }
+
+
+
+   /***************************************************************************
+    * get the snapshot of all of the configuration - loading it, if it hasn't
+    * been yet (or if it's older than the max age) - or null, if the qbit config
+    * doesn't turn snapshots on.
+    ***************************************************************************/
+   static TableViewsConfigurationSnapshot getConfigurationSnapshot() throws QException
+   {
+      configureForInstance();
+      if(!useConfigurationSnapshot)
+      {
+         return (null);
+      }
+
+      Duration                        maxAge   = configurationSnapshotMaxAge;
+      TableViewsConfigurationSnapshot snapshot = configurationSnapshot.get();
+      if(snapshot == null || snapshot.isOlderThan(maxAge))
+      {
+         synchronized(snapshotLock)
+         {
+            snapshot = configurationSnapshot.get();
+            if(snapshot == null || snapshot.isOlderThan(maxAge))
+            {
+               snapshot = TableViewsConfigurationSnapshot.load();
+               configurationSnapshot.set(snapshot);
+            }
+         }
+      }
+
+      return (snapshot);
+   }
+
+
+
+   /***************************************************************************
+    * replace the snapshot (if one has been loaded) with one that has the
+    * records in an invalidation's scope re-loaded.  If that fails, the
+    * snapshot is dropped, to be fully re-loaded when it's next needed.
+    ***************************************************************************/
+   private static void updateConfigurationSnapshot(TableViewsCacheInvalidation invalidation)
+   {
+      synchronized(snapshotLock)
+      {
+         TableViewsConfigurationSnapshot snapshot = configurationSnapshot.get();
+         if(snapshot != null)
+         {
+            try
+            {
+               configurationSnapshot.set(snapshot.withChanges(invalidation));
+            }
+            catch(Exception e)
+            {
+               LOG.warn("Error updating table views configuration snapshot", e);
+               configurationSnapshot.set(null);
+            }
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * pick up changes made on other nodes - via the change log and/or table
+    * generations, if they're turned on (and due to be checked).
+    ***************************************************************************/
+   private static void synchronizeCaches()
+   {
+      changeLogSynchronizer.pollIfDue();
+      customizableTableGenerations.checkIfDue();
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for customizableTableGenerations
+    *******************************************************************************/
+   static CustomizableTableGenerations getCustomizableTableGenerations()
+   {
+      return (customizableTableGenerations);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for changeLogSynchronizer
+    *******************************************************************************/
+   static TableViewsChangeLogSynchronizer getChangeLogSynchronizer()
    {
-      isTableCustomizableMemoization.clear();
-      getEffectiveTableViewByUserMemoization.clear();
+      return (changeLogSynchronizer);
    }
 
 
@@ -136,6 +598,10 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
          return (tableMetaData);
       }
 
+      configureForInstance();
+      synchronizeCaches();
+      prefetchEffectiveTableViewsForCurrentSession();
+
       if(isTableCustomizable(tableMetaData.getName()))
       {
          return customizeTable(input);
@@ -159,11 +625,42 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
          return (table);
 
       }
-      TableView tableView = getEffectiveTableViewForCurrentSession(table.getName());
+      CompiledTableView compiledTableView = getEffectiveCompiledTableViewForCurrentSession(table.getName());
 
-      if(tableView != null)
+      if(compiledTableView != null)
       {
-         return applyViewToTable(tableView, tableActionInput.getTable().clone(), tableActionInput);
+         /////////////////////////////////////////////////////////////////////////////////
+         // views are compiled against the instance's version of the table - in case we //
+         // were given some other version of the table, re-compile the view against it. //
+         /////////////////////////////////////////////////////////////////////////////////
+         CompiledTableView viewForTable = compiledTableView.isCompiledFor(table) ? compiledTableView : CompiledTableView.compile(compiledTableView.getTableView(), table);
+
+         ///////////////////////////////////////////////////////////////////////////////
+         // if the view grants the whole table (e.g., for admin-like role sets), then //
+         // applying it wouldn't change anything - so just use the table as-is.  but  //
+         // that's only if the session can also see all of the table's associations,  //
+         // and the join tables of all of its exposed joins.                          //
+         ///////////////////////////////////////////////////////////////////////////////
+         if(viewForTable.getGrantsWholeTable() && getHiddenAssociationNames(table).isEmpty() && getHiddenExposedJoinTableNames(table, tableActionInput, new HashMap<>()).isEmpty())
+         {
+            wholeTableFastPathCount.incrementAndGet();
+            return (table);
+         }
+
+         //////////////////////////////////////////////////////////////////////////////////////
+         // re-use a previously personalized version of this table for this view, if we have //
+         // one - else apply the view to a copy-on-write version of the table (which shares  //
+         // its field & section instances with the table's shell, except where the view      //
+         // changes them), and memoize that result.  the memoized table is only ever a       //
+         // master - each caller gets its own clone of it, which it is free to change.       //
+         //////////////////////////////////////////////////////////////////////////////////////
+         PersonalizedTableKey     key    = new PersonalizedTableKey(getClass(), table, compiledTableView, ActionKind.of(tableActionInput), getJoinVisibilityKey(table));
+         Optional<QTableMetaData> master = personalizedTableMemoization.getResult(key, k ->
+         {
+            personalizationCount.incrementAndGet();
+            return (applyCompiledViewToTable(viewForTable, makeCopyOnWriteTable(table), tableActionInput));
+         });
+         return (master.map(QTableMetaData::clone).orElse(table));
       }
 
       return tableActionInput.getTable();
@@ -171,64 +668,127 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
 
 
 
+   /***************************************************************************
+    * get the part of the personalized table key for what the table shows of
+    * its join (and associated) tables:  as effective views are shared by role
+    * sets that get the same grants on the table itself, but fields from join
+    * tables, exposed joins, and associations depend on those tables' views,
+    * this is the session's role set key for tables with join fields in their
+    * sections, or with exposed joins or associations - else null (so those
+    * tables' personalized versions are shared across role sets).
+    ***************************************************************************/
+   private static String getJoinVisibilityKey(QTableMetaData table)
+   {
+      QUser   user                 = QContext.getQSession().getUser();
+      boolean dependsOnOtherTables = TableSectionLayout.forTable(table).getHasJoinTableFields() || CollectionUtils.nullSafeHasContents(table.getExposedJoins()) || CollectionUtils.nullSafeHasContents(table.getAssociations());
+      if(user == null || !dependsOnOtherTables)
+      {
+         return (null);
+      }
+
+      return (getRoleSetKey(getRoleIdsForCurrentSession()));
+   }
+
+
+
+   /***************************************************************************
+    * make a copy of a table to apply a view to, without deep-copying its fields
+    * and sections:  the copy gets new maps & lists, holding copies of the
+    * table's fields & sections (made once per table, and shared by all of its
+    * memoized, personalized versions - which are never handed out themselves,
+    * only clones of them), which applying a view replaces with clones where it
+    * changes them (see {@link #getFieldsToKeepForTable}).  Everything else is cloned
+    * from a (shared) shell of the table with no fields or sections - so copying
+    * costs the same for a wide table as a narrow one.
+    ***************************************************************************/
+   static QTableMetaData makeCopyOnWriteTable(QTableMetaData table)
+   {
+      TableShell shell = tableShells.computeIfAbsent(table, TableShell::of);
+
+      QTableMetaData copy = shell.emptyTable().clone();
+      copy.setFields(shell.fields() == null ? null : new LinkedHashMap<>(shell.fields()));
+      copy.setVirtualFields(table.getVirtualFields() == null ? null : new LinkedHashMap<>(table.getVirtualFields()));
+      copy.setSections(shell.sections() == null ? null : new ArrayList<>(shell.sections()));
+      return (copy);
+   }
+
+
+
    /***************************************************************************
     *
     ***************************************************************************/
    QTableMetaData applyViewToTable(TableView tableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
    {
-      Map<String, QFieldMetaData> fieldsToKeep = getFieldsToKeepForTable(tableView, cloneTable, tableActionInput);
+      return (applyCompiledViewToTable(CompiledTableView.compile(tableView, new FieldNameDictionary(cloneTable)), cloneTable, tableActionInput));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   QTableMetaData applyCompiledViewToTable(CompiledTableView compiledTableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
+   {
+      Map<String, Set<String>> getFieldsToKeepFromJoinTableCache = new HashMap<>();
+      TableSectionLayout       sectionLayout                     = getSectionLayout(compiledTableView, cloneTable);
+      Set<String>              hiddenAssociationNames            = getHiddenAssociationNames(cloneTable);
+      Set<String>              hiddenExposedJoinTableNames       = getHiddenExposedJoinTableNames(cloneTable, tableActionInput, getFieldsToKeepFromJoinTableCache);
+
+      Map<String, QFieldMetaData> fieldsToKeep = getFieldsToKeepForTable(compiledTableView, cloneTable, tableActionInput);
       cloneTable.setFields(fieldsToKeep);
 
-      Map<String, QVirtualFieldMetaData> virtualFieldsToKeep = getVirtualFieldsToKeepForTable(tableView, cloneTable, tableActionInput);
+      Map<String, QVirtualFieldMetaData> virtualFieldsToKeep = getVirtualFieldsToKeepForTable(compiledTableView, cloneTable, tableActionInput);
       cloneTable.setVirtualFields(virtualFieldsToKeep);
 
       ///////////////////////////////////////////////////////////
       // remove field names which aren't present from sections //
       ///////////////////////////////////////////////////////////
-      for(QFieldSection section : CollectionUtils.nonNullList(cloneTable.getSections()))
+      List<QFieldSection> sections = CollectionUtils.nonNullList(cloneTable.getSections());
+      for(int i = 0; i < sections.size(); i++)
       {
-         Map<String, Set<String>> getFieldsToKeepFromJoinTableCache = null;
+         QFieldSection                         section       = sections.get(i);
+         List<TableSectionLayout.SectionField> sectionFields = sectionLayout.getSectionFields(i);
+         if(section.getFieldNames() == null || sectionFields == null)
+         {
+            continue;
+         }
 
-         Iterator<String> fieldListIterator = CollectionUtils.nonNullList(section.getFieldNames()).iterator();
-         while(fieldListIterator.hasNext())
+         ///////////////////////////////////////////////////////////////////////////////////////
+         // note, unknown fields were already left out of the layout, so they're just removed //
+         ///////////////////////////////////////////////////////////////////////////////////////
+         List<String> fieldNamesToKeep = new ArrayList<>();
+         for(TableSectionLayout.SectionField sectionField : sectionFields)
          {
-            try
+            if(!sectionField.isFromJoinTable())
             {
-               String            fieldName         = fieldListIterator.next();
-               FieldAndJoinTable fieldAndJoinTable = FieldAndJoinTable.get(cloneTable, fieldName);
-
-               if(fieldAndJoinTable.joinTable().getName().equals(cloneTable.getName()))
+               ////////////////////////////////////////////////////////////////////////////////////////////
+               // if the field is from this table, then remove it unless it's in the set of ones to keep //
+               ////////////////////////////////////////////////////////////////////////////////////////////
+               if(fieldsToKeep.containsKey(sectionField.sectionFieldName()))
                {
-                  ////////////////////////////////////////////////////////////////////////////////////////////
-                  // if the field is from this table, then remove it unless it's in the set of ones to keep //
-                  ////////////////////////////////////////////////////////////////////////////////////////////
-                  if(!fieldsToKeep.containsKey(fieldName))
-                  {
-                     fieldListIterator.remove();
-                  }
-               }
-               else
-               {
-                  getFieldsToKeepFromJoinTableCache = Objects.requireNonNullElseGet(getFieldsToKeepFromJoinTableCache, HashMap::new);
-
-                  ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-                  // else the field is from a join table - get that join table's allowed fields for the user, and keep or remove based on that //
-                  ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-                  Set<String> fieldsToKeepFromJoinTable = getFieldsToKeepFromJoinTable(fieldAndJoinTable.joinTable().getName(), tableActionInput, getFieldsToKeepFromJoinTableCache);
-                  if(!fieldsToKeepFromJoinTable.contains(fieldAndJoinTable.field().getName()))
-                  {
-                     fieldListIterator.remove();
-                  }
+                  fieldNamesToKeep.add(sectionField.sectionFieldName());
                }
             }
-            catch(Exception e)
+            else
             {
-               /////////////////////////////////////////////////////////
-               // an unknown field, let's assume it should be removed //
-               /////////////////////////////////////////////////////////
-               fieldListIterator.remove();
+               ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+               // else the field is from a join table - get that join table's allowed fields for the user, and keep or remove based on that //
+               ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+               Set<String> fieldsToKeepFromJoinTable = getFieldsToKeepFromJoinTable(sectionField.joinTableName(), tableActionInput, getFieldsToKeepFromJoinTableCache);
+               if(fieldsToKeepFromJoinTable.contains(sectionField.fieldName()))
+               {
+                  fieldNamesToKeep.add(sectionField.sectionFieldName());
+               }
             }
          }
+
+         ///////////////////////////////////////////////////////////////////////////
+         // sections may be shared with the source table - so, copy-on-write them //
+         ///////////////////////////////////////////////////////////////////////////
+         if(!fieldNamesToKeep.equals(section.getFieldNames()))
+         {
+            sections.set(i, section.clone().withFieldNames(fieldNamesToKeep));
+         }
       }
 
       //////////////////////////////////////////////////////////
@@ -237,29 +797,29 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
       CollectionUtils.nonNullList(cloneTable.getSections()).removeIf(section ->
          section.getFieldNames() != null && section.getFieldNames().isEmpty() && !StringUtils.hasContent(section.getWidgetName()));
 
-      //////////////////////////////////////
-      // figure out which widgets we keep //
-      //////////////////////////////////////
-      Set<String> widgetsToKeep = new HashSet<>();
-      for(TableViewWidget tableViewWidget : CollectionUtils.nonNullList(tableView.getWidgets()))
-      {
-         try
-         {
-            String widgetName = tableViewWidget.getWidgetName();
-            widgetsToKeep.add(widgetName);
-         }
-         catch(Exception e)
-         {
-            LOG.warn("Error processing tableViewWidget", e, logPair("widgetName", tableViewWidget.getWidgetName()));
-         }
-      }
-
       //////////////////////////////////////////////////////
       // remove sections w/widgets that we aren't keeping //
       //////////////////////////////////////////////////////
       if(cloneTable.getSections() != null)
       {
-         cloneTable.getSections().removeIf(section -> section.getWidgetName() != null && !widgetsToKeep.contains(section.getWidgetName()));
+         cloneTable.getSections().removeIf(section -> section.getWidgetName() != null && !compiledTableView.isWidgetInView(section.getWidgetName()));
+      }
+
+      ///////////////////////////////////////////////////////////////////////////////
+      // remove associations the session can't see - into a new list, as the clone //
+      // may share its list of associations with the source table                  //
+      ///////////////////////////////////////////////////////////////////////////////
+      if(!hiddenAssociationNames.isEmpty())
+      {
+         cloneTable.setAssociations(new ArrayList<>(cloneTable.getAssociations().stream().filter(association -> !hiddenAssociationNames.contains(association.getName())).toList()));
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // likewise, remove exposed joins to tables the session can't see into //
+      /////////////////////////////////////////////////////////////////////////
+      if(!hiddenExposedJoinTableNames.isEmpty())
+      {
+         cloneTable.setExposedJoins(new ArrayList<>(cloneTable.getExposedJoins().stream().filter(exposedJoin -> !hiddenExposedJoinTableNames.contains(exposedJoin.getJoinTable())).toList()));
       }
 
       return (cloneTable);
@@ -268,95 +828,288 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
 
 
    /***************************************************************************
-    *
+    * get the names of the join tables of a table's exposed joins that the
+    * current session can't see any fields of, other than their primary keys -
+    * so that the exposed joins to them are removed from personalized meta data
+    * (and frontends don't offer them).  Only customizable join tables can be
+    * hidden.  The visible fields come from {@link #getFieldsToKeepFromJoinTable}
+    * - i.e., the same (memoized, per role set) sets as are used for the fields
+    * from join tables in sections - so they're shared by all tables that
+    * expose joins to the same table.
     ***************************************************************************/
-   protected Set<String> getFieldsToKeepFromJoinTable(String joinTableName, AbstractTableActionInput tableActionInput, Map<String, Set<String>> getFieldsToKeepFromJoinTableCache)
+   Set<String> getHiddenExposedJoinTableNames(QTableMetaData table, AbstractTableActionInput tableActionInput, Map<String, Set<String>> getFieldsToKeepFromJoinTableCache)
    {
-      return (getFieldsToKeepFromJoinTableCache.computeIfAbsent(joinTableName, k ->
+      if(table == null || CollectionUtils.nullSafeIsEmpty(table.getExposedJoins()))
       {
-         try
+         return (Collections.emptySet());
+      }
+
+      Set<String> hiddenJoinTableNames = new HashSet<>();
+      for(ExposedJoin exposedJoin : table.getExposedJoins())
+      {
+         String         joinTableName = exposedJoin.getJoinTable();
+         QTableMetaData joinTable     = joinTableName == null ? null : QContext.getQInstance().getTable(joinTableName);
+         if(joinTable == null || hiddenJoinTableNames.contains(joinTableName) || !isTableCustomizableForHiding(joinTableName))
          {
-            if(isTableCustomizable(joinTableName))
-            {
-               ////////////////////////////////////////////////////////////////
-               // if the table is customizable, return set of fields to keep //
-               ////////////////////////////////////////////////////////////////
-               QTableMetaData joinTableClone = QContext.getQInstance().getTable(joinTableName).clone();
-               TableView      joinTableView  = getEffectiveTableViewForCurrentSession(joinTableName);
-               Map<String, QFieldMetaData> joinTableFieldsToKeep = getFieldsToKeepForTable(joinTableView, joinTableClone, tableActionInput);
-               return joinTableFieldsToKeep.keySet();
-            }
-            else
-            {
-               ///////////////////////////////////////////////
-               // else, not customizable, return all fields //
-               ///////////////////////////////////////////////
-               return (QContext.getQInstance().getTable(joinTableName).getFields().keySet());
-            }
+            continue;
          }
-         catch(QException e)
+
+         Set<String> visibleFieldNames = new HashSet<>(getFieldsToKeepFromJoinTable(joinTableName, tableActionInput, getFieldsToKeepFromJoinTableCache));
+         visibleFieldNames.remove(joinTable.getPrimaryKeyField());
+         if(visibleFieldNames.isEmpty())
          {
-            return Collections.emptySet();
+            hiddenJoinTableNames.add(joinTableName);
          }
-      }));
+      }
+
+      return (hiddenJoinTableNames);
    }
 
 
 
    /***************************************************************************
+    * get the names of a table's associations that the current session can't
+    * see - so that they're removed from personalized meta data, and that
+    * queries don't load them.  That's the associations to a customizable child
+    * table (resolved from the association's associated table name), whose
+    * effective view has no fields in it (i.e., hides every field of the child
+    * table).
     *
+    * <p>Widgets aren't considered:  a widget's name is its own identifier, not
+    * the association's join name (even if the two are sometimes the same) - so
+    * hiding a widget hides its section, but not any association.</p>
     ***************************************************************************/
-   protected Map<String, QFieldMetaData> getFieldsToKeepForTable(TableView tableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
+   Set<String> getHiddenAssociationNames(QTableMetaData table)
    {
-      Map<String, QFieldMetaData> cloneFields = cloneTable.getFields();
-      if(cloneFields == null)
+      if(table == null || CollectionUtils.nullSafeIsEmpty(table.getAssociations()))
       {
-         cloneFields = new LinkedHashMap<>();
-         cloneTable.setFields(cloneFields);
+         return (Collections.emptySet());
       }
 
-      Map<String, QFieldMetaData> fieldsToKeep = new LinkedHashMap<>();
-
-      /////////////////////////////////////////////
-      // figure out which fields the user gets   //
-      // start with ones in the user's TableView //
-      /////////////////////////////////////////////
-      for(TableViewField tableViewField : CollectionUtils.nonNullList(tableView.getFields()))
+      Set<String> hiddenAssociationNames = new HashSet<>();
+      for(Association association : table.getAssociations())
       {
-         try
+         if(isTableHiddenForCurrentSession(association.getAssociatedTableName()))
          {
-            String         fieldName     = tableViewField.getFieldName().split("\\.")[1];
-            QFieldMetaData fieldMetaData = cloneFields.get(fieldName);
-            if(fieldMetaData != null)
-            {
-               FieldAccessLevel fieldAccessLevel = FieldAccessLevel.getById(tableViewField.getAccessLevel());
-               if(fieldAccessLevel != null)
-               {
-                  fieldAccessLevel.apply(fieldMetaData);
-               }
-
-               fieldsToKeep.put(fieldName, fieldMetaData);
-            }
+            hiddenAssociationNames.add(association.getName());
          }
-         catch(Exception e)
+      }
+
+      return (hiddenAssociationNames);
+   }
+
+
+
+   /***************************************************************************
+    * check if a table is customizable, with an effective view for the current
+    * session that has no fields in it.  Errors are logged, and treated as the
+    * table being hidden (like errors getting the visible fields of join tables).
+    ***************************************************************************/
+   private boolean isTableHiddenForCurrentSession(String tableName)
+   {
+      if(tableName == null || QContext.getQInstance().getTable(tableName) == null)
+      {
+         return (false);
+      }
+
+      if(!isTableCustomizableForHiding(tableName))
+      {
+         return (false);
+      }
+
+      try
+      {
+         CompiledTableView compiledTableView = getEffectiveCompiledTableViewForCurrentSession(tableName);
+         return (compiledTableView == null || compiledTableView.getFieldAccessMatrix().getInView().isEmpty());
+      }
+      catch(QException e)
+      {
+         LOG.warn("Error checking if table is hidden for current session", e, logPair("tableName", tableName));
+         return (true);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * check if a table is customizable - for deciding if it can be hidden from
+    * the current session.  Errors are logged, and treated as the table being
+    * customizable (so it's then hidden, unless its view can be loaded).
+    ***************************************************************************/
+   private boolean isTableCustomizableForHiding(String tableName)
+   {
+      try
+      {
+         return (isTableCustomizable(tableName));
+      }
+      catch(QException e)
+      {
+         LOG.warn("Error checking if table is customizable", e, logPair("tableName", tableName));
+         return (true);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the pre-resolved section layout to use when applying a view to a
+    * clone of a table - the shared one for the table the view was compiled
+    * for, if that's what we were given a clone of - else one for the clone.
+    * Note: must be called before any fields are removed from the clone.
+    ***************************************************************************/
+   private TableSectionLayout getSectionLayout(CompiledTableView compiledTableView, QTableMetaData cloneTable)
+   {
+      QTableMetaData sourceTable = compiledTableView.getDictionary().getSourceTable();
+      if(sourceTable != null && sourceTable != cloneTable)
+      {
+         TableSectionLayout sectionLayout = TableSectionLayout.forTable(sourceTable);
+         if(sectionLayout.matchesSectionsOf(cloneTable))
          {
-            LOG.warn("Error processing tableViewField", e, logPair("fieldName", tableViewField.getFieldName()));
+            return (sectionLayout);
          }
       }
 
-      /////////////////////////////////////////////
-      // next look for ones that always get kept //
-      /////////////////////////////////////////////
-      for(QFieldMetaData field : cloneTable.getFields().values())
+      return (new TableSectionLayout(cloneTable));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   protected Set<String> getFieldsToKeepFromJoinTable(String joinTableName, AbstractTableActionInput tableActionInput, Map<String, Set<String>> getFieldsToKeepFromJoinTableCache)
+   {
+      return (getFieldsToKeepFromJoinTableCache.computeIfAbsent(joinTableName, k ->
       {
-         String fieldName = field.getName();
-         if(!fieldsToKeep.containsKey(fieldName))
+         try
          {
-            if(shouldKeepFieldDueToRules(cloneTable, field, tableActionInput))
+            if(isTableCustomizable(joinTableName))
             {
-               fieldsToKeep.put(fieldName, cloneFields.get(fieldName));
+               ////////////////////////////////////////////////////////////////
+               // if the table is customizable, return set of fields to keep //
+               ////////////////////////////////////////////////////////////////
+               return (getJoinTableFieldsToKeepForCurrentSession(QContext.getQInstance().getTable(joinTableName), ActionKind.of(tableActionInput)));
+            }
+            else
+            {
+               ///////////////////////////////////////////////
+               // else, not customizable, return all fields //
+               ///////////////////////////////////////////////
+               return (QContext.getQInstance().getTable(joinTableName).getFields().keySet());
+            }
+         }
+         catch(QException e)
+         {
+            return Collections.emptySet();
+         }
+      }));
+   }
+
+
+
+   /***************************************************************************
+    * get the names of the fields from a (customizable) join table that the
+    * current session can see.  These are memoized across requests, by role
+    * set, join table, and kind of action - and computed without cloning the
+    * join table (since only the field names are needed, not the fields with
+    * access levels applied).
+    ***************************************************************************/
+   Set<String> getJoinTableFieldsToKeepForCurrentSession(QTableMetaData joinTable, ActionKind actionKind) throws QException
+   {
+      QUser              user       = QContext.getQSession().getUser();
+      String             roleSetKey = user == null ? null : getRoleSetKey(getRoleIdsForCurrentSession());
+      JoinTableFieldsKey key        = new JoinTableFieldsKey(getClass(), roleSetKey, joinTable, actionKind);
+
+      return (joinTableFieldsToKeepMemoization.getResultThrowing(key, (k) ->
+      {
+         CompiledTableView compiledTableView = getEffectiveCompiledTableViewForCurrentSession(joinTable.getName());
+         if(!compiledTableView.isCompiledFor(joinTable))
+         {
+            compiledTableView = CompiledTableView.compile(compiledTableView.getTableView(), joinTable);
+         }
+
+         FieldNameDictionary dictionary          = compiledTableView.getDictionary();
+         FieldAccessMatrix   fieldAccessMatrix   = compiledTableView.getFieldAccessMatrix();
+         BitSet              alwaysKeepFieldMask = getAlwaysKeepFieldMask(dictionary, actionKind);
+
+         Set<String> fieldNames = new HashSet<>();
+         for(String fieldName : CollectionUtils.nonNullMap(joinTable.getFields()).keySet())
+         {
+            int index = dictionary.indexOf(fieldName);
+            if(fieldAccessMatrix.isInView(index) || (index >= 0 && alwaysKeepFieldMask.get(index)))
+            {
+               fieldNames.add(fieldName);
             }
          }
+
+         return (Collections.unmodifiableSet(fieldNames));
+      }).orElse(Collections.emptySet()));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   protected Map<String, QFieldMetaData> getFieldsToKeepForTable(TableView tableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
+   {
+      return (getFieldsToKeepForTable(CompiledTableView.compile(tableView, new FieldNameDictionary(cloneTable)), cloneTable, tableActionInput));
+   }
+
+
+
+   /***************************************************************************
+    * in one pass over the table's fields, keep the ones that are in the view
+    * (applying their access levels to them), or that a rule says to keep.
+    * Fields that an access level would change are copied first, rather than
+    * changed in place.
+    ***************************************************************************/
+   protected Map<String, QFieldMetaData> getFieldsToKeepForTable(CompiledTableView compiledTableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
+   {
+      Map<String, QFieldMetaData> cloneFields = cloneTable.getFields();
+      if(cloneFields == null)
+      {
+         cloneFields = new LinkedHashMap<>();
+         cloneTable.setFields(cloneFields);
+      }
+
+      FieldNameDictionary dictionary          = compiledTableView.getDictionary();
+      FieldAccessMatrix   fieldAccessMatrix   = compiledTableView.getFieldAccessMatrix();
+      BitSet              alwaysKeepFieldMask = getAlwaysKeepFieldMask(dictionary, ActionKind.of(tableActionInput));
+
+      Map<String, QFieldMetaData> fieldsToKeep = new LinkedHashMap<>();
+      for(Map.Entry<String, QFieldMetaData> entry : cloneFields.entrySet())
+      {
+         String         fieldName     = entry.getKey();
+         QFieldMetaData fieldMetaData = entry.getValue();
+         int            index         = dictionary.indexOf(fieldName);
+
+         if(fieldAccessMatrix.isInView(index))
+         {
+            ///////////////////////////////////////////////////////////////////
+            // fields in the user's view are kept, with their access applied //
+            ///////////////////////////////////////////////////////////////////
+            ////////////////////////////////////////////////////////////////////////////
+            // fields may be shared with other personalized versions of the table     //
+            // (see makeCopyOnWriteTable) - so only the ones the access level changes //
+            // are copied, then changed.                                              //
+            ////////////////////////////////////////////////////////////////////////////
+            FieldAccessLevel fieldAccessLevel = fieldAccessMatrix.getAccessLevel(index);
+            if(fieldAccessLevel != null && fieldAccessLevel.wouldChange(fieldMetaData))
+            {
+               fieldMetaData = fieldMetaData.clone();
+               fieldAccessLevel.apply(fieldMetaData);
+            }
+
+            fieldsToKeep.put(fieldName, fieldMetaData);
+         }
+         else if(index >= 0 ? alwaysKeepFieldMask.get(index) : shouldKeepFieldDueToRules(cloneTable, fieldMetaData, tableActionInput))
+         {
+            /////////////////////////////////////////
+            // else keep ones that always get kept //
+            /////////////////////////////////////////
+            fieldsToKeep.put(fieldName, fieldMetaData);
+         }
       }
 
       return fieldsToKeep;
@@ -368,6 +1121,16 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
     *
     ***************************************************************************/
    protected Map<String, QVirtualFieldMetaData> getVirtualFieldsToKeepForTable(TableView tableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
+   {
+      return (getVirtualFieldsToKeepForTable(CompiledTableView.compile(tableView, new FieldNameDictionary(cloneTable)), cloneTable, tableActionInput));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   protected Map<String, QVirtualFieldMetaData> getVirtualFieldsToKeepForTable(CompiledTableView compiledTableView, QTableMetaData cloneTable, AbstractTableActionInput tableActionInput)
    {
       Map<String, QVirtualFieldMetaData> cloneFields = cloneTable.getVirtualFields();
       if(cloneFields == null)
@@ -376,31 +1139,21 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
       }
 
       Map<String, QVirtualFieldMetaData> fieldsToKeep = new LinkedHashMap<>();
-
-      /////////////////////////////////////////////
-      // figure out which fields the user gets   //
-      // start with ones in the user's TableView //
-      /////////////////////////////////////////////
-      for(TableViewField tableViewField : CollectionUtils.nonNullList(tableView.getFields()))
+      for(Map.Entry<String, QVirtualFieldMetaData> entry : cloneFields.entrySet())
       {
-         try
+         String                fieldName     = entry.getKey();
+         QVirtualFieldMetaData fieldMetaData = entry.getValue();
+
+         if(compiledTableView.isFieldInView(fieldName))
          {
-            String                fieldName     = tableViewField.getFieldName().split("\\.")[1];
-            QVirtualFieldMetaData fieldMetaData = cloneFields.get(fieldName);
-            if(fieldMetaData != null)
+            FieldAccessLevel fieldAccessLevel = compiledTableView.getFieldAccessLevel(fieldName);
+            if(fieldAccessLevel != null && fieldAccessLevel.wouldChange(fieldMetaData))
             {
-               FieldAccessLevel fieldAccessLevel = FieldAccessLevel.getById(tableViewField.getAccessLevel());
-               if(fieldAccessLevel != null)
-               {
-                  fieldAccessLevel.apply(fieldMetaData);
-               }
-
-               fieldsToKeep.put(fieldName, fieldMetaData);
+               fieldMetaData = (QVirtualFieldMetaData) fieldMetaData.clone();
+               fieldAccessLevel.apply(fieldMetaData);
             }
-         }
-         catch(Exception e)
-         {
-            LOG.warn("Error processing tableViewField", e, logPair("fieldName", tableViewField.getFieldName()));
+
+            fieldsToKeep.put(fieldName, fieldMetaData);
          }
       }
 
@@ -428,6 +1181,11 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
     *
     * also - an application could override this method in a subclass to add
     * additional rules.
+    *
+    * <p>note that the results of this method are computed once per version of
+    * a table and kind of action (see {@link #getAlwaysKeepFieldMask}) - so any
+    * rules added by a subclass should only depend on the table &amp; field meta
+    * data, and on whether or not the input is an insert or update.</p>
     ***************************************************************************/
    protected boolean shouldKeepFieldDueToRules(QTableMetaData cloneTable, QFieldMetaData field, AbstractTableActionInput tableActionInput)
    {
@@ -439,153 +1197,737 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
          return (true);
       }
 
-      if(doRecordSecurityLocksContainField(cloneTable.getRecordSecurityLocks(), field))
+      if(doRecordSecurityLocksContainField(cloneTable.getRecordSecurityLocks(), field))
+      {
+         /////////////////////////////////////////////////////////////
+         // keep fields that are part of the table's security locks //
+         /////////////////////////////////////////////////////////////
+         return (true);
+      }
+
+      if(doesSupplementalMetaDataSayToKeepField(field))
+      {
+         //////////////////////////////////////////////////////////
+         // keep a field if it's marked as being always-included //
+         //////////////////////////////////////////////////////////
+         return (true);
+      }
+
+      boolean isInsertOrUpdate = ActionKind.of(tableActionInput) == ActionKind.INSERT_OR_UPDATE;
+      if(isInsertOrUpdate && field.getBehaviorOnlyIfSet(DynamicDefaultValueBehavior.class) != null)
+      {
+         //////////////////////////////////////////////////////////////////////////////////////////////////////
+         // if this is for an insert or update, then keep any fields that have a DynamicDefaultValueBehavior //
+         // e.g., createDates, modifyDates, things that capture userId                                       //
+         //////////////////////////////////////////////////////////////////////////////////////////////////////
+         return (true);
+      }
+
+      ////////////////////////////////////////////
+      // by default, no rule matched, so say no //
+      ////////////////////////////////////////////
+      return (false);
+   }
+
+
+
+   /***************************************************************************
+    * get the mask of fields (by index in a dictionary) which the rules in
+    * {@link #shouldKeepFieldDueToRules} say to always keep, for a kind of
+    * action.  Those rules only depend on the instance's meta data - so they're
+    * evaluated once per field, against the dictionary's source table, rather
+    * than for every field on every request.
+    ***************************************************************************/
+   BitSet getAlwaysKeepFieldMask(FieldNameDictionary dictionary, ActionKind actionKind)
+   {
+      Map<FieldNameDictionary, Map<ActionKind, BitSet>> masksByDictionary = alwaysKeepFieldMasks.computeIfAbsent(getClass(), c -> Collections.synchronizedMap(new WeakHashMap<>()));
+      return (masksByDictionary.computeIfAbsent(dictionary, this::computeAlwaysKeepFieldMasks).get(actionKind));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private Map<ActionKind, BitSet> computeAlwaysKeepFieldMasks(FieldNameDictionary dictionary)
+   {
+      QTableMetaData              table  = dictionary.getSourceTable();
+      Map<String, QFieldMetaData> fields = table == null ? Collections.emptyMap() : CollectionUtils.nonNullMap(table.getFields());
+
+      Map<ActionKind, BitSet> masks = new EnumMap<>(ActionKind.class);
+      for(ActionKind actionKind : ActionKind.values())
+      {
+         BitSet                   mask                = new BitSet();
+         AbstractTableActionInput representativeInput = actionKind.makeRepresentativeInput(table == null ? null : table.getName());
+         for(int i = 0; i < dictionary.size(); i++)
+         {
+            /////////////////////////////////////////////////////////////////
+            // virtual fields aren't in the fields map (and have no rules) //
+            /////////////////////////////////////////////////////////////////
+            QFieldMetaData field = fields.get(dictionary.getName(i));
+            if(field != null && shouldKeepFieldDueToRules(table, field, representativeInput))
+            {
+               mask.set(i);
+            }
+         }
+         masks.put(actionKind, mask);
+      }
+
+      return (masks);
+   }
+
+
+
+   /***************************************************************************
+    * Check if the supplemental meta data from this qbit for a field says
+    * that the field should always be kept.
+    ***************************************************************************/
+   protected boolean doesSupplementalMetaDataSayToKeepField(QFieldMetaData field)
+   {
+      QSupplementalFieldMetaData supplementalMetaData = field.getSupplementalMetaData(CustomizableTableViewsFieldMetaData.TYPE);
+      if(supplementalMetaData instanceof CustomizableTableViewsFieldMetaData customizableTableViewsFieldMetaData)
+      {
+         if(CustomizableTableViewsFieldMetaData.Rule.ALWAYS_KEEP_FIELD.equals(customizableTableViewsFieldMetaData.getRule()))
+         {
+            return (true);
+         }
+      }
+
+      return (false);
+   }
+
+
+
+   /***************************************************************************
+    * Check if a list of record security locks include a field, recursively 
+    * processing {@link MultiRecordSecurityLock}s
+    ***************************************************************************/
+   protected boolean doRecordSecurityLocksContainField(List<RecordSecurityLock> locks, QFieldMetaData field)
+   {
+      for(RecordSecurityLock recordSecurityLock : CollectionUtils.nonNullList(locks))
+      {
+         if(recordSecurityLock instanceof MultiRecordSecurityLock multiRecordSecurityLock)
+         {
+            if(doRecordSecurityLocksContainField(multiRecordSecurityLock.getLocks(), field))
+            {
+               return (true);
+            }
+         }
+         else if(field.getName().equals(recordSecurityLock.getFieldName()))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+
+
+   /***************************************************************************
+    * the assumption is, that this method is called AFTER we've identified that
+    * a table is customizable (and customizaztion is active) - so - if we fail
+    * to find a view, we return a new/blank/empty view - so user gets "nothing"
+    * (other than minimum that's required), rather than returning null, which
+    * would give the user the full table.
+    ***************************************************************************/
+   TableView getEffectiveTableViewForCurrentSession(String tableName) throws QException
+   {
+      CompiledTableView compiledTableView = getEffectiveCompiledTableViewForCurrentSession(tableName);
+      return (compiledTableView == null ? null : compiledTableView.getTableView());
+   }
+
+
+
+   /***************************************************************************
+    * get the effective view for the current session (see
+    * {@link #getEffectiveTableViewForCurrentSession(String)}), compiled against
+    * the instance's version of the table.
+    ***************************************************************************/
+   CompiledTableView getEffectiveCompiledTableViewForCurrentSession(String tableName) throws QException
+   {
+      QUser user = QContext.getQSession().getUser();
+      if(user == null)
+      {
+         return (CompiledTableView.compile(new TableView(), QContext.getQInstance().getTable(tableName)));
+      }
+
+      configureForInstance();
+      synchronizeCaches();
+
+      SortedSet<Integer>   roleIds = getRoleIdsForCurrentSession();
+      Pair<String, String> key     = Pair.of(getRoleSetKey(roleIds), tableName);
+      return (getEffectiveTableViewByRoleSetMemoization.getResultThrowing(key, (k) ->
+      {
+         Set<Integer> tableViewIds = new HashSet<>();
+         TableView    tableView    = lookupEffectiveTableView(tableName, roleIds, tableViewIds);
+         effectiveTableViewKeyIndex.register(key, tableViewIds);
+         return (internCompiledTableView(CompiledTableView.compile(tableView, QContext.getQInstance().getTable(tableName))));
+      }).orElse(null));
+   }
+
+
+
+   /***************************************************************************
+    * get a fingerprint of the personalized meta data of a table for the current
+    * session - e.g., for use as an ETag, so clients can revalidate the meta
+    * data they have, rather than re-downloading (and re-personalizing) it.
+    *
+    * <p>It's a hash of the version of the table's meta data (see
+    * {@link CompiledTableView#computeTableVersion(QTableMetaData)}), the
+    * fingerprint of the session's effective view of the table (if it's
+    * customizable), and the fingerprints of the effective views of any
+    * customizable join tables with fields in its sections or exposed joins,
+    * and of any customizable associated tables.  As all of these
+    * are hashes of content (not of roles, ids, or object identities), the
+    * fingerprint is the same for role sets that get the same meta data, and
+    * across restarts - and it changes whenever the table or a view does.</p>
+    *
+    * @return the fingerprint - or null if the table isn't in the instance.
+    ***************************************************************************/
+   public String getPersonalizedTableFingerprint(String tableName) throws QException
+   {
+      QTableMetaData table = QContext.getQInstance().getTable(tableName);
+      if(table == null)
+      {
+         return (null);
+      }
+
+      configureForInstance();
+      synchronizeCaches();
+
+      StringBuilder canonical = new StringBuilder();
+      canonical.append("table:").append(tableVersions.computeIfAbsent(table, CompiledTableView::computeTableVersion)).append('\n');
+      if(isTableCustomizable(tableName))
+      {
+         canonical.append("view:").append(getEffectiveCompiledTableViewForCurrentSession(tableName).getFingerprint()).append('\n');
+      }
+
+      for(String joinTableName : TableSectionLayout.forTable(table).getJoinTableNames())
+      {
+         if(isTableCustomizable(joinTableName))
+         {
+            canonical.append("join:").append(joinTableName).append('=').append(getEffectiveCompiledTableViewForCurrentSession(joinTableName).getFingerprint()).append('\n');
+         }
+      }
+
+      for(ExposedJoin exposedJoin : CollectionUtils.nonNullList(table.getExposedJoins()))
+      {
+         String joinTableName = exposedJoin.getJoinTable();
+         if(joinTableName != null && QContext.getQInstance().getTable(joinTableName) != null && isTableCustomizable(joinTableName))
+         {
+            canonical.append("exposedJoin:").append(joinTableName).append('=').append(getEffectiveCompiledTableViewForCurrentSession(joinTableName).getFingerprint()).append('\n');
+         }
+      }
+
+      for(Association association : CollectionUtils.nonNullList(table.getAssociations()))
+      {
+         String associatedTableName = association.getAssociatedTableName();
+         if(associatedTableName != null && QContext.getQInstance().getTable(associatedTableName) != null && isTableCustomizable(associatedTableName))
+         {
+            canonical.append("association:").append(associatedTableName).append('=').append(getEffectiveCompiledTableViewForCurrentSession(associatedTableName).getFingerprint()).append('\n');
+         }
+      }
+
+      return (CompiledTableView.sha256Hex(canonical.toString()));
+   }
+
+
+
+   /***************************************************************************
+    * get the interned instance of a compiled view:  the first view compiled
+    * against the same dictionary with the same fingerprint (i.e., granting the
+    * same fields & widgets) that is still in use, else this view (which
+    * becomes the interned one).  Views compiled without a (named) source table
+    * aren't interned.
+    ***************************************************************************/
+   static CompiledTableView internCompiledTableView(CompiledTableView compiledTableView)
+   {
+      FieldNameDictionary dictionary  = compiledTableView.getDictionary();
+      QTableMetaData      sourceTable = dictionary.getSourceTable();
+      if(sourceTable == null || sourceTable.getName() == null)
+      {
+         return (compiledTableView);
+      }
+
+      internRequestCount.incrementAndGet();
+
+      Pair<FieldNameDictionary, Map<String, WeakReference<CompiledTableView>>> pool = internedTableViews.compute(sourceTable.getName(), (name, existing) ->
+         (existing != null && existing.getA() == dictionary) ? existing : Pair.of(dictionary, new ConcurrentHashMap<>()));
+
+      Map<String, WeakReference<CompiledTableView>> views    = pool.getB();
+      AtomicReference<CompiledTableView>            interned = new AtomicReference<>();
+      AtomicBoolean                                 added    = new AtomicBoolean(false);
+      views.compute(compiledTableView.getFingerprint(), (fingerprint, reference) ->
+      {
+         CompiledTableView existing = reference == null ? null : reference.get();
+         if(existing != null)
+         {
+            interned.set(existing);
+            return (reference);
+         }
+
+         interned.set(compiledTableView);
+         added.set(true);
+         return (new WeakReference<>(compiledTableView));
+      });
+
+      if(added.get())
+      {
+         //////////////////////////////////////////////////////////////////////////
+         // a view was added - so also drop any views that are no longer in use, //
+         // to keep the pool from growing with every view ever interned.         //
+         //////////////////////////////////////////////////////////////////////////
+         internedTableViewCount.incrementAndGet();
+         views.values().removeIf(reference -> reference.get() == null);
+      }
+
+      return (interned.get());
+   }
+
+
+
+   /***************************************************************************
+    * get the config for this qbit from the current instance (or null, if it
+    * isn't in the instance).
+    ***************************************************************************/
+   static CustomizableTableViewsQBitConfig getQBitConfig()
+   {
+      QInstance qInstance = QContext.getQInstance();
+      if(qInstance != null)
+      {
+         for(QBitMetaData qBitMetaData : CollectionUtils.nonNullMap(qInstance.getQBits()).values())
+         {
+            if(qBitMetaData.getConfig() instanceof CustomizableTableViewsQBitConfig customizableTableViewsQBitConfig)
+            {
+               return (customizableTableViewsQBitConfig);
+            }
+         }
+      }
+
+      return (null);
+   }
+
+
+
+   /***************************************************************************
+    * set up (or turn off) the refresh-ahead of effective views, the window for
+    * coalescing invalidations, change log polling, generation checks (with the
+    * longer cache timeout they allow), and the configuration snapshot, per the
+    * qbit config - once per instance.
+    ***************************************************************************/
+   private static void configureForInstance()
+   {
+      if(QContext.getQInstance() != configuredForInstance)
+      {
+         configureForNewInstance();
+      }
+   }
+
+
+
+   /***************************************************************************
+    * (synchronized) worker for {@link #configureForInstance()}.  The refresh
+    * executor is wrapped so that refreshes run with the context of the request
+    * that triggered them.
+    ***************************************************************************/
+   private static synchronized void configureForNewInstance()
+   {
+      QInstance qInstance = QContext.getQInstance();
+      if(qInstance == configuredForInstance)
+      {
+         return;
+      }
+
+      CustomizableTableViewsQBitConfig config             = getQBitConfig();
+      Duration                         refreshAheadWindow = config == null ? null : config.getRefreshAheadWindow();
+      invalidationCoalescer.setWindow(config == null ? null : config.getInvalidationCoalesceWindow());
+      changeLogSynchronizer.setPollInterval(config == null ? null : config.getChangeLogPollInterval());
+
+      Duration generationCheckInterval = config == null ? null : config.getGenerationCheckInterval();
+      Duration timeout                 = generationCheckInterval == null ? DEFAULT_TIMEOUT : GENERATION_CHECKED_TIMEOUT;
+      customizableTableGenerations.setCheckInterval(generationCheckInterval);
+
+      useConfigurationSnapshot = config != null && BooleanUtils.isTrue(config.getUseConfigurationSnapshot());
+      if(!useConfigurationSnapshot)
+      {
+         configurationSnapshot.set(null);
+      }
+      configurationSnapshotMaxAge = config == null ? DEFAULT_TIMEOUT : config.getConfigurationSnapshotMaxAge();
+      customizableTableRowMemoization.setTimeout(timeout);
+      getEffectiveTableViewByRoleSetMemoization.setTimeout(timeout);
+      getEffectiveTableViewByRoleSetMemoization.setMaxSize(getEffectiveTableViewCacheSize(config, qInstance));
+      prefetchedRoleSetsMemoization.setTimeout(timeout);
+
+      prefetchEffectiveTableViews = config != null && BooleanUtils.isTrue(config.getPrefetchEffectiveTableViews());
+
+      if(refreshAheadWindow == null)
+      {
+         getEffectiveTableViewByRoleSetMemoization.setRefreshAhead(null, null);
+      }
+      else
+      {
+         Executor executor = config.getRefreshAheadExecutor();
+         if(executor == null)
+         {
+            if(defaultRefreshAheadExecutor == null)
+            {
+               /////////////////////////////////////////////////////////////////////////////
+               // refreshes beyond the queue are rejected - the memoization catches that, //
+               // dropping the refresh (and un-marking it as in-flight, which a silently  //
+               // discarding policy wouldn't do, as the refresh would just never run).    //
+               /////////////////////////////////////////////////////////////////////////////
+               ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(DEFAULT_REFRESH_AHEAD_THREADS, DEFAULT_REFRESH_AHEAD_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(DEFAULT_REFRESH_AHEAD_QUEUE_SIZE), runnable ->
+               {
+                  Thread thread = new Thread(runnable, "customizable-table-views-refresh-ahead");
+                  thread.setDaemon(true);
+                  return (thread);
+               }, new ThreadPoolExecutor.AbortPolicy());
+               threadPoolExecutor.allowCoreThreadTimeOut(true);
+               defaultRefreshAheadExecutor = threadPoolExecutor;
+            }
+            executor = defaultRefreshAheadExecutor;
+         }
+
+         Executor delegate = executor;
+         getEffectiveTableViewByRoleSetMemoization.setRefreshAhead(refreshAheadWindow, runnable ->
+         {
+            CapturedContext capturedContext = QContext.capture();
+            delegate.execute(() ->
+            {
+               try
+               {
+                  QContext.init(capturedContext);
+                  runnable.run();
+               }
+               finally
+               {
+                  QContext.clear();
+               }
+            });
+         });
+      }
+
+      configuredForInstance = qInstance;
+   }
+
+
+
+   /***************************************************************************
+    * get the max number of effective views to memoize:  the qbit config's
+    * effectiveTableViewCacheSize, if it's set - else enough for every table in
+    * the instance (an upper bound on the customizable ones), for a number of
+    * role sets at once - as prefetching loads every customizable table's view
+    * for a role set together.
+    ***************************************************************************/
+   static int getEffectiveTableViewCacheSize(CustomizableTableViewsQBitConfig config, QInstance qInstance)
+   {
+      if(config != null && config.getEffectiveTableViewCacheSize() != null)
+      {
+         return (config.getEffectiveTableViewCacheSize());
+      }
+
+      int tableCount = qInstance == null ? 0 : CollectionUtils.nonNullMap(qInstance.getTables()).size();
+      return (Math.max(MIN_EFFECTIVE_TABLE_VIEW_CACHE_SIZE, tableCount * DEFAULT_EXPECTED_ROLE_SETS));
+   }
+
+
+
+   /***************************************************************************
+    * query for the views assigned to a set of roles for a table (or else, the
+    * table's default view), and merge them into the effective view.
+    *
+    * @param tableViewIds output param - receives the ids of the views that
+    * the effective view depends on (for scoped invalidation).
+    ***************************************************************************/
+   private TableView lookupEffectiveTableView(String tableName, SortedSet<Integer> roleIds, Set<Integer> tableViewIds) throws QException
+   {
+      TableViewsConfigurationSnapshot snapshot = getConfigurationSnapshot();
+      if(snapshot != null)
+      {
+         return (lookupEffectiveTableViewInSnapshot(snapshot, tableName, roleIds, tableViewIds));
+      }
+
+      CustomizableTableRow customizableTableRow = getCustomizableTableRow(tableName);
+      if(customizableTableRow.id() == null)
+      {
+         return (new TableView());
+      }
+
+      Integer       defaultTableViewId = customizableTableRow.defaultTableViewId();
+      List<QRecord> tableViews         = new ArrayList<>();
+      if(roleIds.isEmpty())
+      {
+         //////////////////////////////////////////////////////////////
+         // without role ids, only the default view (if any) applies //
+         //////////////////////////////////////////////////////////////
+         if(defaultTableViewId != null)
+         {
+            tableViewIds.add(defaultTableViewId);
+            CollectionUtils.addIfNotNull(tableViews, new GetAction().executeForRecord(new GetInput(TableView.TABLE_NAME).withPrimaryKey(defaultTableViewId).withIncludeAssociations(true)));
+         }
+      }
+      else
+      {
+         /////////////////////////////////////////////////////////////////////////////////
+         // look for the tableViews assigned to the roles - and, in the same query, the //
+         // table's default view (via a left join to the role ints), to fall back to if //
+         // there are no role views - rather than a separate fetch of the default view. //
+         /////////////////////////////////////////////////////////////////////////////////
+         QQueryFilter filter   = new QQueryFilter(new QFilterCriteria("customizableTableId", QCriteriaOperator.EQUALS, customizableTableRow.id()));
+         QueryJoin    roleJoin = new QueryJoin(TableViewRoleInt.TABLE_NAME).withSelect(true);
+         if(defaultTableViewId == null)
+         {
+            filter.withCriteria(new QFilterCriteria(TableViewRoleInt.TABLE_NAME + ".roleId", QCriteriaOperator.IN, roleIds));
+         }
+         else
+         {
+            roleJoin.withType(QueryJoin.Type.LEFT);
+            filter.withSubFilter(new QQueryFilter()
+               .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+               .withCriteria(new QFilterCriteria(TableViewRoleInt.TABLE_NAME + ".roleId", QCriteriaOperator.IN, roleIds))
+               .withCriteria(new QFilterCriteria("id", QCriteriaOperator.EQUALS, defaultTableViewId)));
+         }
+
+         List<QRecord> records = new QueryAction().execute(new QueryInput(TableView.TABLE_NAME)
+               .withFilter(filter)
+               .withQueryJoin(roleJoin)
+               .withIncludeAssociations(true))
+            .getRecords();
+
+         ///////////////////////////////////////////////////////////////////////////////////
+         // a view comes back once per matching role-int, so de-duplicate them - and only //
+         // count a view as a role view if it came back for one of the roles.             //
+         ///////////////////////////////////////////////////////////////////////////////////
+         Map<Integer, QRecord> roleTableViews   = new LinkedHashMap<>();
+         QRecord               defaultTableView = null;
+         for(QRecord record : records)
+         {
+            Integer tableViewId = record.getValueInteger("id");
+            Integer roleId      = record.getValueInteger(TableViewRoleInt.TABLE_NAME + ".roleId");
+            if(roleId != null && roleIds.contains(roleId))
+            {
+               roleTableViews.putIfAbsent(tableViewId, record);
+            }
+            else if(tableViewId.equals(defaultTableViewId))
+            {
+               defaultTableView = record;
+            }
+         }
+
+         if(!roleTableViews.isEmpty())
+         {
+            tableViews.addAll(roleTableViews.values());
+            tableViewIds.addAll(roleTableViews.keySet());
+         }
+         else if(defaultTableViewId != null)
+         {
+            tableViewIds.add(defaultTableViewId);
+            CollectionUtils.addIfNotNull(tableViews, defaultTableView);
+         }
+      }
+
+      //////////////////////////////////////////////////////////////////////////////////////////////////
+      // if no view was found, then return an empty one, so user sees nothing rather than everything. //
+      //////////////////////////////////////////////////////////////////////////////////////////////////
+      if(tableViews.isEmpty())
       {
-         /////////////////////////////////////////////////////////////
-         // keep fields that are part of the table's security locks //
-         /////////////////////////////////////////////////////////////
-         return (true);
+         return (new TableView());
       }
 
-      if(doesSupplementalMetaDataSayToKeepField(field))
+      ////////////////////////////////////
+      // return the merger of the views //
+      ////////////////////////////////////
+      return mergeTableViewRecords(tableViews);
+   }
+
+
+
+   /***************************************************************************
+    * same as {@link #lookupEffectiveTableView}, but from the in-memory snapshot
+    * of the configuration, rather than the backend.
+    ***************************************************************************/
+   private TableView lookupEffectiveTableViewInSnapshot(TableViewsConfigurationSnapshot snapshot, String tableName, SortedSet<Integer> roleIds, Set<Integer> tableViewIds)
+   {
+      List<TableView> tableViews = snapshot.getTableViewsForRoles(tableName, roleIds);
+      tableViews.forEach(tableView -> tableViewIds.add(tableView.getId()));
+
+      if(tableViews.isEmpty())
       {
-         //////////////////////////////////////////////////////////
-         // keep a field if it's marked as being always-included //
-         //////////////////////////////////////////////////////////
-         return (true);
+         CustomizableTable customizableTable = snapshot.getCustomizableTable(tableName);
+         if(customizableTable != null && customizableTable.getDefaultTableViewId() != null)
+         {
+            tableViewIds.add(customizableTable.getDefaultTableViewId());
+            TableView tableView = snapshot.getTableView(customizableTable.getDefaultTableViewId());
+            if(tableView != null)
+            {
+               tableViews = List.of(tableView);
+            }
+         }
       }
 
-      boolean isInsertOrUpdate = (tableActionInput instanceof InsertInput) || (tableActionInput instanceof UpdateInput);
-      if(isInsertOrUpdate && field.getBehaviorOnlyIfSet(DynamicDefaultValueBehavior.class) != null)
+      if(tableViews.isEmpty())
       {
-         //////////////////////////////////////////////////////////////////////////////////////////////////////
-         // if this is for an insert or update, then keep any fields that have a DynamicDefaultValueBehavior //
-         // e.g., createDates, modifyDates, things that capture userId                                       //
-         //////////////////////////////////////////////////////////////////////////////////////////////////////
-         return (true);
+         return (new TableView());
       }
 
-      ////////////////////////////////////////////
-      // by default, no rule matched, so say no //
-      ////////////////////////////////////////////
-      return (false);
+      return (mergeTableViewEntities(tableViews));
    }
 
 
 
    /***************************************************************************
-    * Check if the supplemental meta data from this qbit for a field says
-    * that the field should always be kept.
+    * if the qbit config turns prefetching on, make sure the effective views of
+    * all customizable tables have been loaded for the current session's role
+    * set.  Errors are logged, not thrown, as each table's view can still be
+    * loaded on its own.
     ***************************************************************************/
-   protected boolean doesSupplementalMetaDataSayToKeepField(QFieldMetaData field)
+   private void prefetchEffectiveTableViewsForCurrentSession()
    {
-      QSupplementalFieldMetaData supplementalMetaData = field.getSupplementalMetaData(CustomizableTableViewsFieldMetaData.TYPE);
-      if(supplementalMetaData instanceof CustomizableTableViewsFieldMetaData customizableTableViewsFieldMetaData)
+      if(!prefetchEffectiveTableViews || useConfigurationSnapshot || QContext.getQSession().getUser() == null)
       {
-         if(CustomizableTableViewsFieldMetaData.Rule.ALWAYS_KEEP_FIELD.equals(customizableTableViewsFieldMetaData.getRule()))
+         return;
+      }
+
+      try
+      {
+         SortedSet<Integer> roleIds = getRoleIdsForCurrentSession();
+         prefetchedRoleSetsMemoization.getResultThrowing(getRoleSetKey(roleIds), (roleSetKey) ->
          {
+            prefetchEffectiveTableViews(roleIds);
             return (true);
-         }
+         });
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error prefetching effective table views", e);
       }
-
-      return (false);
    }
 
 
 
    /***************************************************************************
-    * Check if a list of record security locks include a field, recursively 
-    * processing {@link MultiRecordSecurityLock}s
+    * load the effective views of all active customizable tables for a role
+    * set, and fill the caches with them (and with whether each table is
+    * customizable) - keeping any entries that are already cached.  This takes
+    * one query for the customizable tables, one (joined) query for the role
+    * set's views, and at most one for default views - rather than a pair of
+    * queries for each table, as personalizing them one at a time would.
     ***************************************************************************/
-   protected boolean doRecordSecurityLocksContainField(List<RecordSecurityLock> locks, QFieldMetaData field)
+   void prefetchEffectiveTableViews(SortedSet<Integer> roleIds) throws QException
    {
-      for(RecordSecurityLock recordSecurityLock : CollectionUtils.nonNullList(locks))
+      String roleSetKey = getRoleSetKey(roleIds);
+
+      List<CustomizableTable> activeCustomizableTables = new ArrayList<>();
+      for(QRecord record : new QueryAction().execute(new QueryInput(CustomizableTable.TABLE_NAME)).getRecords())
       {
-         if(recordSecurityLock instanceof MultiRecordSecurityLock multiRecordSecurityLock)
-         {
-            if(doRecordSecurityLocksContainField(multiRecordSecurityLock.getLocks(), field))
-            {
-               return (true);
-            }
-         }
-         else if(field.getName().equals(recordSecurityLock.getFieldName()))
+         CustomizableTable customizableTable = new CustomizableTable(record);
+         customizableTableRowMemoization.getResultThrowing(customizableTable.getTableName(), (name) -> CustomizableTableRow.of(record));
+
+         if(BooleanUtils.isTrue(customizableTable.getIsActive()) && QContext.getQInstance().getTable(customizableTable.getTableName()) != null)
          {
-            return true;
+            activeCustomizableTables.add(customizableTable);
          }
       }
 
-      return false;
-   }
+      ////////////////////////////////////////////////////////////////////////////////////
+      // views for the role set, by customizable table (de-duplicated, as a view can be //
+      // joined to more than one of the roles).                                         //
+      ////////////////////////////////////////////////////////////////////////////////////
+      Map<Integer, Map<Integer, QRecord>> roleTableViewsByCustomizableTableId = new HashMap<>();
+      if(!roleIds.isEmpty())
+      {
+         List<QRecord> tableViews = new QueryAction().execute(new QueryInput(TableView.TABLE_NAME)
+               .withFilter(new QQueryFilter(new QFilterCriteria(TableViewRoleInt.TABLE_NAME + ".roleId", QCriteriaOperator.IN, roleIds)))
+               .withQueryJoin(new QueryJoin(TableViewRoleInt.TABLE_NAME))
+               .withIncludeAssociations(true))
+            .getRecords();
 
+         for(QRecord tableView : tableViews)
+         {
+            roleTableViewsByCustomizableTableId.computeIfAbsent(tableView.getValueInteger("customizableTableId"), k -> new LinkedHashMap<>())
+               .putIfAbsent(tableView.getValueInteger("id"), tableView);
+         }
+      }
 
+      ////////////////////////////////////////////////////////////////
+      // default views, for the tables without any for the role set //
+      ////////////////////////////////////////////////////////////////
+      Set<Integer> defaultTableViewIds = new HashSet<>();
+      for(CustomizableTable customizableTable : activeCustomizableTables)
+      {
+         if(!roleTableViewsByCustomizableTableId.containsKey(customizableTable.getId()) && customizableTable.getDefaultTableViewId() != null)
+         {
+            defaultTableViewIds.add(customizableTable.getDefaultTableViewId());
+         }
+      }
 
-   /***************************************************************************
-    * the assumption is, that this method is called AFTER we've identified that
-    * a table is customizable (and customizaztion is active) - so - if we fail
-    * to find a view, we return a new/blank/empty view - so user gets "nothing"
-    * (other than minimum that's required), rather than returning null, which
-    * would give the user the full table.
-    ***************************************************************************/
-   TableView getEffectiveTableViewForCurrentSession(String tableName) throws QException
-   {
-      QUser user = QContext.getQSession().getUser();
-      if(user == null)
+      Map<Integer, QRecord> defaultTableViewsById = new HashMap<>();
+      if(!defaultTableViewIds.isEmpty())
       {
-         return (new TableView());
+         for(QRecord tableView : new QueryAction().execute(new QueryInput(TableView.TABLE_NAME)
+            .withFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, new ArrayList<>(defaultTableViewIds))))
+            .withIncludeAssociations(true)).getRecords())
+         {
+            defaultTableViewsById.put(tableView.getValueInteger("id"), tableView);
+         }
       }
 
-      Pair<String, String> key = Pair.of(user.getIdReference(), tableName);
-      return (getEffectiveTableViewByUserMemoization.getResultThrowing(key, (k) ->
+      for(CustomizableTable customizableTable : activeCustomizableTables)
       {
-         List<QRecord> tableViews = null;
+         Set<Integer>  tableViewIds = new HashSet<>();
+         List<QRecord> tableViews   = new ArrayList<>(roleTableViewsByCustomizableTableId.getOrDefault(customizableTable.getId(), Collections.emptyMap()).values());
+         tableViews.forEach(tableView -> tableViewIds.add(tableView.getValueInteger("id")));
 
-         ///////////////////////////////////////////////////////////////////////////////
-         // if we have role Ids, then look for any tableViews assigned to those roles //
-         ///////////////////////////////////////////////////////////////////////////////
-         String roleIdsString = QContext.getQSession().getValue("roleIds");
-         if(StringUtils.hasContent(roleIdsString))
+         if(tableViews.isEmpty() && customizableTable.getDefaultTableViewId() != null)
          {
-            Set<Integer> roleIds = Arrays.stream(roleIdsString.split(",")).map(Integer::parseInt).collect(Collectors.toSet());
-            tableViews = new QueryAction().execute(new QueryInput(TableView.TABLE_NAME)
-                  .withFilter(new QQueryFilter()
-                     .withCriteria(new QFilterCriteria(TableViewRoleInt.TABLE_NAME + ".roleId", QCriteriaOperator.IN, roleIds))
-                     .withCriteria(new QFilterCriteria(CustomizableTable.TABLE_NAME + ".tableName", QCriteriaOperator.EQUALS, tableName)))
-                  .withQueryJoin(new QueryJoin(TableViewRoleInt.TABLE_NAME))
-                  .withIncludeAssociations(true))
-               .getRecords();
+            tableViewIds.add(customizableTable.getDefaultTableViewId());
+            CollectionUtils.addIfNotNull(tableViews, defaultTableViewsById.get(customizableTable.getDefaultTableViewId()));
          }
 
-         //////////////////////////////////////////////////////////////////////////
-         // if there are no role views, then look for a default one on the table //
-         //////////////////////////////////////////////////////////////////////////
-         if(CollectionUtils.nullSafeIsEmpty(tableViews))
+         TableView            tableView = tableViews.isEmpty() ? new TableView() : mergeTableViewRecords(tableViews);
+         Pair<String, String> key       = Pair.of(roleSetKey, customizableTable.getTableName());
+         getEffectiveTableViewByRoleSetMemoization.getResultThrowing(key, (k) ->
+         {
+            effectiveTableViewKeyIndex.register(key, tableViewIds);
+            return (internCompiledTableView(CompiledTableView.compile(tableView, QContext.getQInstance().getTable(customizableTable.getTableName()))));
+         });
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the role ids from the current session's roleIds value (a comma-
+    * delimited string), as a sorted set (so that it can serve as a canonical
+    * cache key, regardless of the order or duplication of ids in the session).
+    ***************************************************************************/
+   static SortedSet<Integer> getRoleIdsForCurrentSession()
+   {
+      SortedSet<Integer> roleIds       = new TreeSet<>();
+      String             roleIdsString = QContext.getQSession().getValue("roleIds");
+      if(StringUtils.hasContent(roleIdsString))
+      {
+         for(String roleId : roleIdsString.split(","))
          {
-            tableViews = new ArrayList<>();
-            QRecord customizableTableRecord = GetAction.execute(CustomizableTable.TABLE_NAME, Map.of("tableName", tableName));
-            if(customizableTableRecord != null)
+            if(StringUtils.hasContent(roleId))
             {
-               Integer tableViewId = customizableTableRecord.getValueInteger("defaultTableViewId");
-               if(tableViewId != null)
-               {
-                  QRecord tableView = new GetAction().executeForRecord(new GetInput(TableView.TABLE_NAME).withPrimaryKey(tableViewId).withIncludeAssociations(true));
-                  CollectionUtils.addIfNotNull(tableViews, tableView);
-               }
+               roleIds.add(Integer.parseInt(roleId.trim()));
             }
          }
+      }
 
-         //////////////////////////////////////////////////////////////////////////////////////////////////
-         // if no view was found, then return an empty one, so user sees nothing rather than everything. //
-         //////////////////////////////////////////////////////////////////////////////////////////////////
-         if(tableViews.isEmpty())
-         {
-            return (new TableView());
-         }
+      return (roleIds);
+   }
 
-         ////////////////////////////////////
-         // return the merger of the views //
-         ////////////////////////////////////
-         return mergeTableViewRecords(tableViews);
-      }).orElse(null));
+
+
+   /***************************************************************************
+    * build the canonical string form of a set of role ids - e.g., "1,2,3".
+    ***************************************************************************/
+   static String getRoleSetKey(SortedSet<Integer> roleIds)
+   {
+      return (roleIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
    }
 
 
@@ -624,44 +1966,52 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
          return tableViewList.get(0);
       }
 
-      /////////////////////
-      // merge the views //
-      /////////////////////
-      TableView mergedTableView = new TableView();
-
       ////////////////////////////////////////////////////////////////////////////////////
-      // start with fields, using merge method in enum for the logic of which rule wins //
+      // merge the fields bitwise:  index all field names across the views, build an    //
+      // access matrix per view, then combine them, in order of restrictiveness (so the //
+      // least restrictive level for each field wins - same as FieldAccessLevel.merge). //
       ////////////////////////////////////////////////////////////////////////////////////
-      Map<String, FieldAccessLevel> fieldAccessLevels = new HashMap<>();
+      TableView               mergedTableView = new TableView();
+      FieldNameDictionary     dictionary      = new FieldNameDictionary();
+      List<FieldAccessMatrix> matrices        = new ArrayList<>();
       for(TableView tableView : tableViewList)
       {
+         FieldAccessMatrix matrix = new FieldAccessMatrix();
          for(TableViewField field : CollectionUtils.nonNullList(tableView.getFields()))
          {
-            String           fieldName        = field.getFieldName();
             FieldAccessLevel fieldAccessLevel = FieldAccessLevel.getById(field.getAccessLevel());
             if(fieldAccessLevel != null)
             {
-               fieldAccessLevels.put(fieldName, fieldAccessLevel.merge(fieldAccessLevels.get(fieldName)));
+               matrix.set(dictionary.add(field.getFieldName()), fieldAccessLevel);
             }
          }
+         matrices.add(matrix);
       }
 
-      ///////////////////////////////////////////////////////////////////////////
-      // build a new list of TableViewField's for our merged entity to contain //
-      ///////////////////////////////////////////////////////////////////////////
+      FieldAccessMatrix combined = FieldAccessMatrix.combine(matrices);
+
+      /////////////////////////////////////////////////////////////////////////////////
+      // build a new list of TableViewField's for our merged entity to contain - in  //
+      // order by name, so the merged view doesn't depend on the order of its inputs //
+      /////////////////////////////////////////////////////////////////////////////////
       List<TableViewField> mergedFieldsList = new ArrayList<>();
       mergedTableView.setFields(mergedFieldsList);
-      for(Map.Entry<String, FieldAccessLevel> entry : fieldAccessLevels.entrySet())
+      for(int i = 0; i < dictionary.size(); i++)
       {
-         mergedFieldsList.add(new TableViewField()
-            .withFieldName(entry.getKey())
-            .withAccessLevel(entry.getValue().getId()));
+         FieldAccessLevel fieldAccessLevel = combined.getAccessLevel(i);
+         if(fieldAccessLevel != null)
+         {
+            mergedFieldsList.add(new TableViewField()
+               .withFieldName(dictionary.getName(i))
+               .withAccessLevel(fieldAccessLevel.getId()));
+         }
       }
+      mergedFieldsList.sort(Comparator.comparing(TableViewField::getFieldName, Comparator.nullsFirst(Comparator.naturalOrder())));
 
-      //////////////////////////
-      // build set of widgets //
-      //////////////////////////
-      Map<String, WidgetAccessLevel> widgets = new HashMap<>();
+      //////////////////////////////////////////
+      // build set of widgets, sorted by name //
+      //////////////////////////////////////////
+      Map<String, WidgetAccessLevel> widgets = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
       for(TableView tableView : tableViewList)
       {
          for(TableViewWidget widget : CollectionUtils.nonNullList(tableView.getWidgets()))
@@ -692,16 +2042,216 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
     ***************************************************************************/
    boolean isTableCustomizable(String tableName) throws QException
    {
-      return (isTableCustomizableMemoization.getResultThrowing(tableName, (name) ->
+      TableViewsConfigurationSnapshot snapshot = getConfigurationSnapshot();
+      if(snapshot != null)
       {
-         QRecord customizableTableRecord = GetAction.execute(CustomizableTable.TABLE_NAME, Map.of("tableName", tableName));
-         if(customizableTableRecord != null)
+         return (snapshot.isTableCustomizable(tableName));
+      }
+
+      return (getCustomizableTableRow(tableName).isActive());
+   }
+
+
+
+   /***************************************************************************
+    * get the (memoized) row from the CustomizableTable table for a table name
+    * - or an empty row (with a null id), if there isn't one.
+    ***************************************************************************/
+   private static CustomizableTableRow getCustomizableTableRow(String tableName) throws QException
+   {
+      return (customizableTableRowMemoization.getResultThrowing(tableName, (name) ->
+         CustomizableTableRow.of(GetAction.execute(CustomizableTable.TABLE_NAME, Map.of("tableName", name)))
+      ).orElse(CustomizableTableRow.NOT_FOUND));
+   }
+
+
+
+   /***************************************************************************
+    * the kinds of action that can give different personalization results for
+    * the same table & view (e.g., due to the DynamicDefaultValueBehavior rule
+    * in {@link #shouldKeepFieldDueToRules}).
+    ***************************************************************************/
+   enum ActionKind
+   {
+      READ,
+      INSERT_OR_UPDATE;
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      static ActionKind of(AbstractTableActionInput tableActionInput)
+      {
+         boolean isInsertOrUpdate = (tableActionInput instanceof InsertInput) || (tableActionInput instanceof UpdateInput);
+         return (isInsertOrUpdate ? INSERT_OR_UPDATE : READ);
+      }
+
+
+
+      /***************************************************************************
+       * make an input of this kind, e.g., for evaluating rules that depend on
+       * the kind of action, outside of any specific request.
+       ***************************************************************************/
+      AbstractTableActionInput makeRepresentativeInput(String tableName)
+      {
+         return (this == INSERT_OR_UPDATE ? new InsertInput(tableName) : new QueryInput(tableName));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * a table's copy-on-write parts (see {@link #makeCopyOnWriteTable}):  a
+    * copy of the table without fields or sections, and copies of the table's
+    * fields & sections.
+    ***************************************************************************/
+   record TableShell(QTableMetaData emptyTable, Map<String, QFieldMetaData> fields, List<QFieldSection> sections)
+   {
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      static TableShell of(QTableMetaData table)
+      {
+         QTableMetaData emptyTable = table.clone();
+         emptyTable.setFields(new LinkedHashMap<>());
+         emptyTable.setVirtualFields(null);
+         emptyTable.setSections(null);
+
+         Map<String, QFieldMetaData> fields = null;
+         if(table.getFields() != null)
+         {
+            fields = new LinkedHashMap<>();
+            for(Map.Entry<String, QFieldMetaData> entry : table.getFields().entrySet())
+            {
+               fields.put(entry.getKey(), entry.getValue().clone());
+            }
+         }
+
+         List<QFieldSection> sections = null;
+         if(table.getSections() != null)
+         {
+            sections = new ArrayList<>();
+            for(QFieldSection section : table.getSections())
+            {
+               sections.add(section.clone());
+            }
+         }
+
+         return (new TableShell(emptyTable, fields, sections));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * the parts of a CustomizableTable record that personalization needs.  A
+    * null id means there is no record for the table.
+    ***************************************************************************/
+   record CustomizableTableRow(Integer id, boolean isActive, Integer defaultTableViewId)
+   {
+      static final CustomizableTableRow NOT_FOUND = new CustomizableTableRow(null, false, null);
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      static CustomizableTableRow of(QRecord record)
+      {
+         if(record == null)
+         {
+            return (NOT_FOUND);
+         }
+
+         return (new CustomizableTableRow(record.getValueInteger("id"), BooleanUtils.isTrue(record.getValueBoolean("isActive")), record.getValueInteger("defaultTableViewId")));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * key for the memoization of personalized tables.  Note that the source
+    * table and the view are compared by identity - a re-loaded view (or a new
+    * QInstance) gives a new key, rather than a deep comparison on every lookup
+    * (views being interned, role sets with the same grants share a key).  The
+    * joinVisibilityKey is null, unless the table's sections have join fields.
+    * The personalizer class is part of the key, as subclasses can have their
+    * own "always keep" rules.
+    ***************************************************************************/
+   record PersonalizedTableKey(Class<?> personalizerClass, QTableMetaData sourceTable, CompiledTableView compiledTableView, ActionKind actionKind, String joinVisibilityKey)
+   {
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public boolean equals(Object o)
+      {
+         if(this == o)
+         {
+            return (true);
+         }
+
+         if(!(o instanceof PersonalizedTableKey that))
+         {
+            return (false);
+         }
+
+         return (personalizerClass == that.personalizerClass && sourceTable == that.sourceTable && compiledTableView == that.compiledTableView && actionKind == that.actionKind && Objects.equals(joinVisibilityKey, that.joinVisibilityKey));
+      }
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public int hashCode()
+      {
+         return (Objects.hash(personalizerClass, System.identityHashCode(sourceTable), System.identityHashCode(compiledTableView), actionKind, joinVisibilityKey));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * key for the memoization of visible join-table fields.  A null roleSetKey
+    * means there's no user in the session.  The join table is compared by
+    * identity, so a new QInstance gives new keys.  As with personalized tables,
+    * the personalizer class is part of the key (for its "always keep" rules).
+    ***************************************************************************/
+   record JoinTableFieldsKey(Class<?> personalizerClass, String roleSetKey, QTableMetaData joinTable, ActionKind actionKind)
+   {
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public boolean equals(Object o)
+      {
+         if(this == o)
+         {
+            return (true);
+         }
+
+         if(!(o instanceof JoinTableFieldsKey that))
          {
-            return BooleanUtils.isTrue(customizableTableRecord.getValueBoolean("isActive"));
+            return (false);
          }
 
-         return false;
-      }).orElse(false));
+         return (personalizerClass == that.personalizerClass && Objects.equals(roleSetKey, that.roleSetKey) && joinTable == that.joinTable && actionKind == that.actionKind);
+      }
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public int hashCode()
+      {
+         return (Objects.hash(personalizerClass, roleSetKey, System.identityHashCode(joinTable), actionKind));
+      }
    }
 
 
@@ -730,7 +2280,8 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
       @Override
       public List<QRecord> postInsertOrUpdate(AbstractActionInput input, List<QRecord> records, Optional<List<QRecord>> oldRecordList) throws QException
       {
-         CustomizableTableViewsTablePersonalizer.clearMemoizations();
+         String tableName = (input instanceof AbstractTableActionInput tableActionInput) ? tableActionInput.getTableName() : null;
+         CustomizableTableViewsTablePersonalizer.submitInvalidation(TableViewsCacheInvalidation.forRecords(tableName, records, oldRecordList));
          return records;
       }
 
@@ -742,7 +2293,7 @@ public class CustomizableTableViewsTablePersonalizer implements TableMetaDataPer
       @Override
       public List<QRecord> postDelete(DeleteInput deleteInput, List<QRecord> records) throws QException
       {
-         CustomizableTableViewsTablePersonalizer.clearMemoizations();
+         CustomizableTableViewsTablePersonalizer.submitInvalidation(TableViewsCacheInvalidation.forRecords(deleteInput.getTableName(), records, Optional.empty()));
          return records;
       }
    }
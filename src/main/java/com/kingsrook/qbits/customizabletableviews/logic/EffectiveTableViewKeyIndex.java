@@ -0,0 +1,143 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qqq.backend.core.utils.Pair;
+
+
+/*******************************************************************************
+ ** Index of the keys (role set key, table name) under which effective table
+ ** views are memoized - including a reverse index, from the ids of the table
+ ** views that were merged into an effective view, to its keys - so that a
+ ** change to this qbit's tables can evict only the effective views that it
+ ** affects.
+ *******************************************************************************/
+public class EffectiveTableViewKeyIndex
+{
+   private final Map<Pair<String, String>, Set<Integer>> tableViewIdsByKey = new ConcurrentHashMap<>();
+   private final Map<Integer, Set<Pair<String, String>>> keysByTableViewId = new ConcurrentHashMap<>();
+
+
+
+   /***************************************************************************
+    * record that the effective view under a key was built from a set of
+    * table views (which may be empty, e.g., if no views were found).
+    ***************************************************************************/
+   public void register(Pair<String, String> key, Collection<Integer> tableViewIds)
+   {
+      Set<Integer> tableViewIdSet = tableViewIds == null ? Set.of() : Set.copyOf(tableViewIds);
+      tableViewIdsByKey.put(key, tableViewIdSet);
+      for(Integer tableViewId : tableViewIdSet)
+      {
+         keysByTableViewId.computeIfAbsent(tableViewId, id -> ConcurrentHashMap.newKeySet()).add(key);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * find the keys affected by an invalidation - that is, keys:
+    * <ul>
+    * <li>whose effective view was built from any of the invalidation's views,</li>
+    * <li>whose role set includes any of the invalidation's roles, or</li>
+    * <li>for any of the invalidation's table names.</li>
+    * </ul>
+    ***************************************************************************/
+   public Set<Pair<String, String>> getAffectedKeys(TableViewsCacheInvalidation invalidation)
+   {
+      Set<Pair<String, String>> affectedKeys = new HashSet<>();
+      for(Integer tableViewId : invalidation.getTableViewIds())
+      {
+         affectedKeys.addAll(keysByTableViewId.getOrDefault(tableViewId, Set.of()));
+      }
+
+      if(!invalidation.getRoleIds().isEmpty() || !invalidation.getTableNames().isEmpty())
+      {
+         for(Pair<String, String> key : tableViewIdsByKey.keySet())
+         {
+            if(invalidation.getTableNames().contains(key.getB()) || doesRoleSetKeyContainAnyRole(key.getA(), invalidation.getRoleIds()))
+            {
+               affectedKeys.add(key);
+            }
+         }
+      }
+
+      return (affectedKeys);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private boolean doesRoleSetKeyContainAnyRole(String roleSetKey, Set<Integer> roleIds)
+   {
+      if(roleIds.isEmpty() || roleSetKey == null || roleSetKey.isEmpty())
+      {
+         return (false);
+      }
+
+      return (Arrays.stream(roleSetKey.split(",")).anyMatch(roleId -> roleIds.contains(Integer.parseInt(roleId))));
+   }
+
+
+
+   /***************************************************************************
+    * remove a key from the index.
+    ***************************************************************************/
+   public void remove(Pair<String, String> key)
+   {
+      Set<Integer> tableViewIds = tableViewIdsByKey.remove(key);
+      if(tableViewIds == null)
+      {
+         return;
+      }
+
+      for(Integer tableViewId : tableViewIds)
+      {
+         Set<Pair<String, String>> keys = keysByTableViewId.get(tableViewId);
+         if(keys != null)
+         {
+            keys.remove(key);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public void clear()
+   {
+      tableViewIdsByKey.clear();
+      keysByTableViewId.clear();
+   }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** Bitset representation of which fields (by index in a
+ ** {@link FieldNameDictionary}) are in a view, and with what
+ ** {@link FieldAccessLevel}.
+ **
+ ** A field can be in the view without an access level (e.g., if a view record
+ ** has a null or unrecognized accessLevel) - in which case it's a member of
+ ** the inView set, but of none of the access level sets.
+ *******************************************************************************/
+public class FieldAccessMatrix
+{
+   private final BitSet                        inView       = new BitSet();
+   private final Map<FieldAccessLevel, BitSet> accessLevels = new EnumMap<>(FieldAccessLevel.class);
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    *******************************************************************************/
+   public FieldAccessMatrix()
+   {
+      for(FieldAccessLevel fieldAccessLevel : FieldAccessLevel.values())
+      {
+         accessLevels.put(fieldAccessLevel, new BitSet());
+      }
+   }
+
+
+
+   /***************************************************************************
+    * bitwise-combine a list of matrices (which must all be based on the same
+    * dictionary).  Working from the least to the most restrictive access level,
+    * each level gets the fields that any input has at that level, less any
+    * that were already taken by a less-restrictive level - i.e., the same
+    * result as {@link FieldAccessLevel#merge(FieldAccessLevel)}.
+    *
+    * <p>Note that fields which are in a view, but without an access level, are
+    * not carried into the combined matrix.</p>
+    ***************************************************************************/
+   public static FieldAccessMatrix combine(List<FieldAccessMatrix> matrices)
+   {
+      FieldAccessMatrix combined = new FieldAccessMatrix();
+      BitSet            taken    = new BitSet();
+
+      for(FieldAccessLevel fieldAccessLevel : FieldAccessLevel.valuesInRestrictivenessOrder())
+      {
+         BitSet members = combined.accessLevels.get(fieldAccessLevel);
+         for(FieldAccessMatrix matrix : CollectionUtils.nonNullList(matrices))
+         {
+            members.or(matrix.accessLevels.get(fieldAccessLevel));
+         }
+
+         members.andNot(taken);
+         taken.or(members);
+      }
+
+      combined.inView.or(taken);
+      return (combined);
+   }
+
+
+
+   /***************************************************************************
+    * put a field in the view, with an access level (which may be null).  If
+    * the field was already in the view with a level, the two are merged.
+    ***************************************************************************/
+   public void set(int index, FieldAccessLevel fieldAccessLevel)
+   {
+      inView.set(index);
+      if(fieldAccessLevel == null)
+      {
+         return;
+      }
+
+      FieldAccessLevel merged = fieldAccessLevel.merge(getAccessLevel(index));
+      for(Map.Entry<FieldAccessLevel, BitSet> entry : accessLevels.entrySet())
+      {
+         entry.getValue().set(index, entry.getKey() == merged);
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public boolean isInView(int index)
+   {
+      return (index >= 0 && inView.get(index));
+   }
+
+
+
+   /***************************************************************************
+    * get the access level for a field - or null if it isn't in the view (or
+    * is in the view without a level).
+    ***************************************************************************/
+   public FieldAccessLevel getAccessLevel(int index)
+   {
+      if(index < 0)
+      {
+         return (null);
+      }
+
+      for(Map.Entry<FieldAccessLevel, BitSet> entry : accessLevels.entrySet())
+      {
+         if(entry.getValue().get(index))
+         {
+            return (entry.getKey());
+         }
+      }
+
+      return (null);
+   }
+
+
+
+   /***************************************************************************
+    * get (a copy of) the set of fields in the view.
+    ***************************************************************************/
+   public BitSet getInView()
+   {
+      return ((BitSet) inView.clone());
+   }
+
+
+
+   /***************************************************************************
+    * get (a copy of) the set of fields in the view with a given access level.
+    ***************************************************************************/
+   public BitSet getMembers(FieldAccessLevel fieldAccessLevel)
+   {
+      return ((BitSet) accessLevels.get(fieldAccessLevel).clone());
+   }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTableViewsFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.security.MultiRecordSecurityLock;
+import com.kingsrook.qqq.backend.core.model.metadata.security.RecordSecurityLock;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** Assigns a stable, zero-based index to each of a set of field names - e.g.,
+ ** the fields & virtual fields of a table - so that membership of fields in a
+ ** view can be stored as bitsets (see {@link FieldAccessMatrix}).
+ *******************************************************************************/
+public class FieldNameDictionary
+{
+   ////////////////////////////////////////////////////////////////////////////////////////
+   // shared dictionaries - by table name, then by structural version of the table (just //
+   // the few most recently used versions of each table are kept).  and the structural   //
+   // versions of table objects (held weakly), so each object's is only computed once.   //
+   ////////////////////////////////////////////////////////////////////////////////////////
+   private static final int MAX_VERSIONS_PER_TABLE = 4;
+
+   private static final Map<String, Map<String, FieldNameDictionary>> tableDictionaries       = new ConcurrentHashMap<>();
+   private static final Map<QTableMetaData, String>                   tableStructuralVersions = Collections.synchronizedMap(new WeakHashMap<>());
+
+   private final QTableMetaData       sourceTable;
+   private final List<String>         names       = new ArrayList<>();
+   private final Map<String, Integer> indexByName = new HashMap<>();
+
+
+
+   /*******************************************************************************
+    ** Constructor for an (initially) empty dictionary, to be built up via add.
+    *******************************************************************************/
+   public FieldNameDictionary()
+   {
+      this.sourceTable = null;
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor that indexes the fields, then the virtual fields, of a table.
+    *******************************************************************************/
+   public FieldNameDictionary(QTableMetaData table)
+   {
+      this.sourceTable = table;
+
+      if(table != null)
+      {
+         CollectionUtils.nonNullMap(table.getFields()).keySet().forEach(this::add);
+         CollectionUtils.nonNullMap(table.getVirtualFields()).keySet().forEach(this::add);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the (shared) dictionary for a table.  Dictionaries are cached by table
+    * name and structural version (see {@link #computeStructuralVersion}) - so
+    * different objects for the same version of a table (e.g., clones of it)
+    * share a dictionary, while a changed version of a table gets a new one.
+    ***************************************************************************/
+   public static FieldNameDictionary forTable(QTableMetaData table)
+   {
+      if(table == null || table.getName() == null)
+      {
+         return (new FieldNameDictionary(table));
+      }
+
+      String                           structuralVersion = tableStructuralVersions.computeIfAbsent(table, FieldNameDictionary::computeStructuralVersion);
+      Map<String, FieldNameDictionary> versions          = tableDictionaries.computeIfAbsent(table.getName(), name -> Collections.synchronizedMap(new LinkedHashMap<>(MAX_VERSIONS_PER_TABLE + 1, 0.75f, true)
+      {
+         /***************************************************************************
+          *
+          ***************************************************************************/
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, FieldNameDictionary> eldest)
+         {
+            return (size() > MAX_VERSIONS_PER_TABLE);
+         }
+      }));
+
+      return (versions.computeIfAbsent(structuralVersion, version -> new FieldNameDictionary(table)));
+   }
+
+
+
+   /***************************************************************************
+    * compute the structural version of a table - a hash of the meta data that
+    * the caches built on its dictionary are derived from:  the version of its
+    * structure (see {@link CompiledTableView#computeStructureVersion}), plus
+    * what the "always keep" rules look at (record security locks, field behaviors, and this
+    * qbit's supplemental field meta data).
+    ***************************************************************************/
+   static String computeStructuralVersion(QTableMetaData table)
+   {
+      StringBuilder canonical = new StringBuilder();
+      canonical.append("table:").append(CompiledTableView.computeStructureVersion(table)).append('\n');
+
+      List<String> lockFieldNames = new ArrayList<>();
+      addRecordSecurityLockFieldNames(table.getRecordSecurityLocks(), lockFieldNames);
+      canonical.append("locks:").append(lockFieldNames).append('\n');
+
+      for(QFieldMetaData field : CollectionUtils.nonNullMap(table.getFields()).values())
+      {
+         canonical.append("field:").append(field.getName());
+         if(field.getBehaviors() != null)
+         {
+            for(Object behavior : field.getBehaviors())
+            {
+               canonical.append('|').append(behavior.getClass().getName());
+               if(behavior instanceof Enum<?> enumBehavior)
+               {
+                  canonical.append('.').append(enumBehavior.name());
+               }
+            }
+         }
+
+         if(field.getSupplementalMetaData(CustomizableTableViewsFieldMetaData.TYPE) instanceof CustomizableTableViewsFieldMetaData customizableTableViewsFieldMetaData)
+         {
+            canonical.append("|rule:").append(customizableTableViewsFieldMetaData.getRule());
+         }
+         canonical.append('\n');
+      }
+
+      return (CompiledTableView.sha256Hex(canonical.toString()));
+   }
+
+
+
+   /***************************************************************************
+    * add the field names of a list of record security locks to a list,
+    * recursively processing {@link MultiRecordSecurityLock}s.
+    ***************************************************************************/
+   private static void addRecordSecurityLockFieldNames(List<RecordSecurityLock> locks, List<String> fieldNames)
+   {
+      for(RecordSecurityLock recordSecurityLock : CollectionUtils.nonNullList(locks))
+      {
+         if(recordSecurityLock instanceof MultiRecordSecurityLock multiRecordSecurityLock)
+         {
+            addRecordSecurityLockFieldNames(multiRecordSecurityLock.getLocks(), fieldNames);
+         }
+         else
+         {
+            fieldNames.add(recordSecurityLock.getFieldName());
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * clear the cache of shared dictionaries (and of tables' structural
+    * versions) - e.g., if a table was changed in-place (vs. through a new
+    * version of the table).
+    ***************************************************************************/
+   public static void clearCache()
+   {
+      tableDictionaries.clear();
+      tableStructuralVersions.clear();
+   }
+
+
+
+   /***************************************************************************
+    * add a name to the dictionary (if it isn't already in it).
+    *
+    * @return the index of the name.
+    ***************************************************************************/
+   public int add(String name)
+   {
+      Integer index = indexByName.get(name);
+      if(index == null)
+      {
+         index = names.size();
+         names.add(name);
+         indexByName.put(name, index);
+      }
+      return (index);
+   }
+
+
+
+   /***************************************************************************
+    * look up the index of a name.
+    *
+    * @return the index, or -1 if the name isn't in the dictionary.
+    ***************************************************************************/
+   public int indexOf(String name)
+   {
+      Integer index = indexByName.get(name);
+      return (index == null ? -1 : index);
+   }
+
+
+
+   /***************************************************************************
+    * look up the name at an index.
+    ***************************************************************************/
+   public String getName(int index)
+   {
+      return (names.get(index));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public int size()
+   {
+      return (names.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for names
+    *******************************************************************************/
+   public List<String> getNames()
+   {
+      return (Collections.unmodifiableList(names));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for sourceTable
+    *******************************************************************************/
+   public QTableMetaData getSourceTable()
+   {
+      return (this.sourceTable);
+   }
+
+}
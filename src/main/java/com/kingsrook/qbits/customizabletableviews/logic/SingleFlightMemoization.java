@@ -0,0 +1,557 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.utils.lambdas.UnsafeFunction;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** A memoization (along the lines of QQQ's Memoization - a map of results with
+ ** a timeout and a max size, beyond which the least-recently-used results are
+ ** evicted), which only lets one thread at a time load the result for a key.
+ ** Any other threads that want the same key while it is being loaded wait
+ ** for, and share, that thread's result, rather than each running their own
+ ** (e.g., database-backed) load.
+ **
+ ** Optionally, results that are within a "refresh-ahead" window of timing out
+ ** can be re-loaded in the background (on a given executor) - with requests
+ ** continuing to get the current result until the new one replaces it.
+ **
+ ** Waiting for another thread's load is bounded (by the loadWaitTimeout), and
+ ** a loader that asks for its own key (on the loading thread) loads it again,
+ ** rather than waiting for itself.  Neither of those extra loads is stored.
+ **
+ ** The number of loads that were run, and of requests that were coalesced into
+ ** another thread's load, are counted.
+ *******************************************************************************/
+public class SingleFlightMemoization<K, V>
+{
+   private static final QLogger LOG = QLogger.getLogger(SingleFlightMemoization.class);
+
+   private final Map<K, InFlightLoad<V>> inFlight = new ConcurrentHashMap<>();
+
+   ////////////////////////////////////////////////////////////////////////////////
+   // results, in least-recently-used order - so that, once over the max size,   //
+   // the eldest entry is evicted as each new one is stored, without a scan.     //
+   // synchronized, as an access-ordered map is changed by gets, as well as puts //
+   ////////////////////////////////////////////////////////////////////////////////
+   private final Map<K, CachedResult<V>> results = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true)
+   {
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, CachedResult<V>> eldest)
+      {
+         Integer maxSize = SingleFlightMemoization.this.maxSize;
+         return (maxSize != null && size() > maxSize);
+      }
+   });
+
+   private final AtomicLong loadCount          = new AtomicLong();
+   private final AtomicLong coalescedLoadCount = new AtomicLong();
+   private final AtomicLong refreshAheadCount  = new AtomicLong();
+
+   private Duration timeout         = Duration.ofSeconds(600);
+   private Duration loadWaitTimeout = Duration.ofSeconds(30);
+
+   private volatile Integer maxSize = 1000;
+
+   private Duration refreshAheadWindow;
+   private Executor refreshAheadExecutor;
+
+
+
+   /***************************************************************************
+    * a memoized result, and when it was stored.
+    ***************************************************************************/
+   private record CachedResult<V>(V value, Instant storedAt)
+   {
+   }
+
+
+
+   /***************************************************************************
+    * a load that's in-flight for a key - which is also its token:  a load's
+    * result is only stored if it's still the key's in-flight load when it
+    * completes.  The thread is the one running the load (null for refreshes,
+    * which run on the refresh-ahead executor).
+    ***************************************************************************/
+   private record InFlightLoad<V>(CompletableFuture<Optional<V>> future, Thread thread)
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    *******************************************************************************/
+   public SingleFlightMemoization()
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    *******************************************************************************/
+   public SingleFlightMemoization(Duration timeout)
+   {
+      this.timeout = timeout;
+   }
+
+
+
+   /***************************************************************************
+    * get the memoized result for a key - or, if there isn't one (or it has
+    * timed out), load it - or, if another thread is already loading it, wait
+    * for that thread's result.
+    ***************************************************************************/
+   public <E extends Exception> Optional<V> getResultThrowing(K key, UnsafeFunction<K, V, E> loader) throws E
+   {
+      CachedResult<V> cachedResult = results.get(key);
+      if(cachedResult != null && !isExpired(cachedResult))
+      {
+         if(isDueForRefresh(cachedResult))
+         {
+            startRefresh(key, loader);
+         }
+
+         return (Optional.ofNullable(cachedResult.value()));
+      }
+
+      InFlightLoad<V> myLoad       = new InFlightLoad<>(new CompletableFuture<>(), Thread.currentThread());
+      InFlightLoad<V> existingLoad = inFlight.putIfAbsent(key, myLoad);
+      if(existingLoad != null)
+      {
+         return (awaitLoad(key, loader, existingLoad));
+      }
+
+      try
+      {
+         V value = load(key, loader, myLoad);
+         myLoad.future().complete(Optional.ofNullable(value));
+         return (Optional.ofNullable(value));
+      }
+      catch(Exception e)
+      {
+         myLoad.future().completeExceptionally(e);
+         throw e;
+      }
+      finally
+      {
+         inFlight.remove(key, myLoad);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the result of a load that's already in-flight for a key - waiting up
+    * to the loadWaitTimeout for it.  If the load is on this very thread (i.e.,
+    * its loader asked for its own key), or it fails, or the wait times out,
+    * then load the key here instead (without storing the result).
+    ***************************************************************************/
+   private <E extends Exception> Optional<V> awaitLoad(K key, UnsafeFunction<K, V, E> loader, InFlightLoad<V> existingLoad) throws E
+   {
+      if(existingLoad.thread() == Thread.currentThread())
+      {
+         return (Optional.ofNullable(load(key, loader, null)));
+      }
+
+      coalescedLoadCount.incrementAndGet();
+      try
+      {
+         return (existingLoad.future().get(loadWaitTimeout.toMillis(), TimeUnit.MILLISECONDS));
+      }
+      catch(TimeoutException e)
+      {
+         LOG.warn("Timed out waiting for another thread's load of a memoized result - loading it here", logPair("key", String.valueOf(key)), logPair("loadWaitTimeout", loadWaitTimeout));
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      catch(Exception e)
+      {
+         //////////////////////////////////////////////////////////////////
+         // that load failed - load here (so we throw our own exception) //
+         //////////////////////////////////////////////////////////////////
+      }
+
+      return (Optional.ofNullable(load(key, loader, null)));
+   }
+
+
+
+   /***************************************************************************
+    * get the memoized result for a key, loading it (single-flight) if needed,
+    * with a loader that doesn't throw checked exceptions.
+    ***************************************************************************/
+   public Optional<V> getResult(K key, UnsafeFunction<K, V, RuntimeException> loader)
+   {
+      return (getResultThrowing(key, loader));
+   }
+
+
+
+   /***************************************************************************
+    * run the loader for a key, and store its result - if this load (its token)
+    * is still the key's in-flight load.  That's checked atomically with the
+    * store, against clears (which remove in-flight loads):  if the key (or
+    * everything) was cleared while the load was running, the result may be
+    * stale, so it's returned to the caller, but not stored.  Loads without a
+    * token aren't stored either.
+    ***************************************************************************/
+   private <E extends Exception> V load(K key, UnsafeFunction<K, V, E> loader, InFlightLoad<V> token) throws E
+   {
+      loadCount.incrementAndGet();
+      V value = loader.apply(key);
+
+      if(token != null)
+      {
+         inFlight.computeIfPresent(key, (k, current) ->
+         {
+            if(current == token)
+            {
+               results.put(key, new CachedResult<>(value, Instant.now()));
+            }
+            return (current);
+         });
+      }
+
+      return (value);
+   }
+
+
+
+   /***************************************************************************
+    * start re-loading a key in the background (unless it's already being
+    * loaded).  Until the load completes, requests continue to get the current
+    * result (and if the load fails, the current result is kept until it
+    * times out).
+    ***************************************************************************/
+   private <E extends Exception> void startRefresh(K key, UnsafeFunction<K, V, E> loader)
+   {
+      Executor executor = this.refreshAheadExecutor;
+      if(executor == null)
+      {
+         return;
+      }
+
+      InFlightLoad<V> refresh = new InFlightLoad<>(new CompletableFuture<>(), null);
+      if(inFlight.putIfAbsent(key, refresh) != null)
+      {
+         return;
+      }
+
+      try
+      {
+         executor.execute(() ->
+         {
+            try
+            {
+               refresh.future().complete(Optional.ofNullable(load(key, loader, refresh)));
+               refreshAheadCount.incrementAndGet();
+            }
+            catch(Exception e)
+            {
+               LOG.warn("Error refreshing memoized result ahead of its timeout", e, logPair("key", String.valueOf(key)));
+               refresh.future().completeExceptionally(e);
+            }
+            finally
+            {
+               inFlight.remove(key, refresh);
+            }
+         });
+      }
+      catch(RejectedExecutionException e)
+      {
+         inFlight.remove(key, refresh);
+         refresh.future().completeExceptionally(e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * check if a result is within the refresh-ahead window of timing out.
+    ***************************************************************************/
+   private boolean isDueForRefresh(CachedResult<V> cachedResult)
+   {
+      Duration window = this.refreshAheadWindow;
+      return (window != null && refreshAheadExecutor != null && cachedResult.storedAt().plus(timeout).minus(window).isBefore(Instant.now()));
+   }
+
+
+
+   /***************************************************************************
+    * turn on (or, with nulls, off) refreshing of results in the background,
+    * when they are within a window of timing out.
+    ***************************************************************************/
+   public void setRefreshAhead(Duration refreshAheadWindow, Executor refreshAheadExecutor)
+   {
+      this.refreshAheadWindow = refreshAheadWindow;
+      this.refreshAheadExecutor = refreshAheadExecutor;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for refreshAhead
+    *******************************************************************************/
+   public SingleFlightMemoization<K, V> withRefreshAhead(Duration refreshAheadWindow, Executor refreshAheadExecutor)
+   {
+      setRefreshAhead(refreshAheadWindow, refreshAheadExecutor);
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private boolean isExpired(CachedResult<V> cachedResult)
+   {
+      return (cachedResult.storedAt().plus(timeout).isBefore(Instant.now()));
+   }
+
+
+
+   /***************************************************************************
+    * clear all memoized results.  Any loads that are in-flight at the time
+    * will not have their results stored, and later requests will not wait
+    * for them.
+    ***************************************************************************/
+   public void clear()
+   {
+      inFlight.clear();
+      results.clear();
+   }
+
+
+
+   /***************************************************************************
+    * cancel all the loads that are in-flight, without clearing any memoized
+    * results:  the in-flight loads will not have their results stored, and
+    * later requests will not wait for them.  For when a change may have been
+    * missed by loads that already read their data, but whose keys can't be
+    * known until they complete.
+    ***************************************************************************/
+   public void cancelInFlightLoads()
+   {
+      inFlight.clear();
+   }
+
+
+
+   /***************************************************************************
+    * remove the memoized result for a single key.  A load of that key that's
+    * in-flight at the time will not have its result stored (loads of other
+    * keys are not affected).
+    ***************************************************************************/
+   public void clearKey(K key)
+   {
+      inFlight.remove(key);
+      results.remove(key);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for loadCount - the number of times a loader was run.
+    *******************************************************************************/
+   public long getLoadCount()
+   {
+      return (this.loadCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for coalescedLoadCount - the number of requests that waited for
+    ** another thread's load, rather than running their own.
+    *******************************************************************************/
+   public long getCoalescedLoadCount()
+   {
+      return (this.coalescedLoadCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for refreshAheadCount - the number of results that were refreshed
+    ** (successfully) in the background, ahead of timing out.
+    *******************************************************************************/
+   public long getRefreshAheadCount()
+   {
+      return (this.refreshAheadCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for refreshAheadWindow
+    *******************************************************************************/
+   public Duration getRefreshAheadWindow()
+   {
+      return (this.refreshAheadWindow);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for timeout
+    *******************************************************************************/
+   public Duration getTimeout()
+   {
+      return (this.timeout);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for timeout
+    *******************************************************************************/
+   public void setTimeout(Duration timeout)
+   {
+      this.timeout = timeout;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for timeout
+    *******************************************************************************/
+   public SingleFlightMemoization<K, V> withTimeout(Duration timeout)
+   {
+      this.timeout = timeout;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for maxSize
+    *******************************************************************************/
+   public Integer getMaxSize()
+   {
+      return (this.maxSize);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxSize
+    *******************************************************************************/
+   public void setMaxSize(Integer maxSize)
+   {
+      this.maxSize = maxSize;
+      trimToMaxSize();
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for maxSize
+    *******************************************************************************/
+   public SingleFlightMemoization<K, V> withMaxSize(Integer maxSize)
+   {
+      setMaxSize(maxSize);
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    * evict the least-recently-used results until we're within the max size -
+    * for when it's lowered (as stores only evict one result each).
+    ***************************************************************************/
+   private void trimToMaxSize()
+   {
+      Integer maxSize = this.maxSize;
+      if(maxSize == null)
+      {
+         return;
+      }
+
+      synchronized(results)
+      {
+         Iterator<K> iterator = results.keySet().iterator();
+         while(results.size() > maxSize && iterator.hasNext())
+         {
+            iterator.next();
+            iterator.remove();
+         }
+      }
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for loadWaitTimeout - how long a request waits for another thread's
+    ** load of the same key, before loading it itself.
+    *******************************************************************************/
+   public Duration getLoadWaitTimeout()
+   {
+      return (this.loadWaitTimeout);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for loadWaitTimeout
+    *******************************************************************************/
+   public void setLoadWaitTimeout(Duration loadWaitTimeout)
+   {
+      this.loadWaitTimeout = loadWaitTimeout;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for loadWaitTimeout
+    *******************************************************************************/
+   public SingleFlightMemoization<K, V> withLoadWaitTimeout(Duration loadWaitTimeout)
+   {
+      this.loadWaitTimeout = loadWaitTimeout;
+      return (this);
+   }
+
+}
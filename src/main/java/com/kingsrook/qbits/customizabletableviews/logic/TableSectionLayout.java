@@ -0,0 +1,203 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.FieldAndJoinTable;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QFieldSection;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** The field names in the sections of a table, pre-resolved to the table that
+ ** owns each field (the table itself, or a join table), with any fields that
+ ** can't be resolved already dropped - so that pruning sections for a view is
+ ** a matter of membership tests, rather than parsing (and catching exceptions
+ ** for) every section field name, on every request.
+ *******************************************************************************/
+public class TableSectionLayout
+{
+   private static final Map<String, TableSectionLayout> tableLayouts = new ConcurrentHashMap<>();
+
+   private final QTableMetaData           sourceTable;
+   private final List<List<SectionField>> sectionFields  = new ArrayList<>();
+   private final SortedSet<String>        joinTableNames = new TreeSet<>();
+
+
+
+   /***************************************************************************
+    * a field in a section, as resolved to its owning table.
+    *
+    * @param sectionFieldName the name of the field, as it is in the section
+    * (e.g., "fieldName" or "joinTableName.fieldName").
+    * @param joinTableName name of the join table that the field is from -
+    * or null if the field is from the table itself.
+    * @param fieldName the name of the field within its owning table.
+    ***************************************************************************/
+   public record SectionField(String sectionFieldName, String joinTableName, String fieldName)
+   {
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      public boolean isFromJoinTable()
+      {
+         return (joinTableName != null);
+      }
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor - resolves the fields in the sections of a table.
+    *******************************************************************************/
+   public TableSectionLayout(QTableMetaData table)
+   {
+      this.sourceTable = table;
+
+      for(QFieldSection section : CollectionUtils.nonNullList(table == null ? null : table.getSections()))
+      {
+         if(section.getFieldNames() == null)
+         {
+            sectionFields.add(null);
+            continue;
+         }
+
+         List<SectionField> fields = new ArrayList<>();
+         for(String sectionFieldName : section.getFieldNames())
+         {
+            try
+            {
+               FieldAndJoinTable fieldAndJoinTable = FieldAndJoinTable.get(table, sectionFieldName);
+               String            joinTableName     = fieldAndJoinTable.joinTable().getName();
+               SectionField sectionField = new SectionField(sectionFieldName, Objects.equals(joinTableName, table.getName()) ? null : joinTableName, fieldAndJoinTable.field().getName());
+               if(sectionField.isFromJoinTable())
+               {
+                  joinTableNames.add(joinTableName);
+               }
+               fields.add(sectionField);
+            }
+            catch(Exception e)
+            {
+               //////////////////////////////////////////////////////////
+               // an unknown field - leave it out, so it'll be removed //
+               //////////////////////////////////////////////////////////
+            }
+         }
+         sectionFields.add(Collections.unmodifiableList(fields));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the (shared) layout for a table.  Layouts are cached by table name,
+    * and re-used for any object with the same {@link FieldNameDictionary} as
+    * the one the layout was made for (i.e., the same version of the table).
+    ***************************************************************************/
+   public static TableSectionLayout forTable(QTableMetaData table)
+   {
+      if(table == null || table.getName() == null)
+      {
+         return (new TableSectionLayout(table));
+      }
+
+      FieldNameDictionary dictionary = FieldNameDictionary.forTable(table);
+      return (tableLayouts.compute(table.getName(), (name, existing) ->
+         (existing != null && (existing.sourceTable == table || FieldNameDictionary.forTable(existing.sourceTable) == dictionary)) ? existing : new TableSectionLayout(table)));
+   }
+
+
+
+   /***************************************************************************
+    * clear the cache of shared layouts - e.g., if the sections of a table were
+    * changed in-place (vs. through a new version of the table).
+    ***************************************************************************/
+   public static void clearCache()
+   {
+      tableLayouts.clear();
+   }
+
+
+
+   /***************************************************************************
+    * check if this layout matches the sections of a table - that is, it has
+    * the same number of sections (e.g., as a clone of the source table would).
+    ***************************************************************************/
+   public boolean matchesSectionsOf(QTableMetaData table)
+   {
+      return (table != null && CollectionUtils.nonNullList(table.getSections()).size() == sectionFields.size());
+   }
+
+
+
+   /***************************************************************************
+    * get the resolved fields for the section at an index - or null if that
+    * section doesn't have a list of field names.
+    ***************************************************************************/
+   public List<SectionField> getSectionFields(int sectionIndex)
+   {
+      return (sectionFields.get(sectionIndex));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for hasJoinTableFields - i.e., if any section has a field from a
+    ** join table (whose visibility depends on the join table's view).
+    *******************************************************************************/
+   public boolean getHasJoinTableFields()
+   {
+      return (!joinTableNames.isEmpty());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for joinTableNames - the (sorted) names of the join tables that
+    ** fields in the sections are from.
+    *******************************************************************************/
+   public Set<String> getJoinTableNames()
+   {
+      return (Collections.unmodifiableSet(joinTableNames));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for sourceTable
+    *******************************************************************************/
+   public QTableMetaData getSourceTable()
+   {
+      return (this.sourceTable);
+   }
+
+}
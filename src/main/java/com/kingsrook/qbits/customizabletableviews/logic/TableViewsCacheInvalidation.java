@@ -0,0 +1,334 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewRoleInt;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewWidget;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+
+
+/*******************************************************************************
+ ** The scope of cached personalization data that a change to this qbit's
+ ** tables affects - i.e., which table views, roles, and (customizable) table
+ ** names - or else, everything (e.g., if a record is missing a value that
+ ** we'd need to know the scope).
+ **
+ ** Invalidations can be merged together, to be applied all at once.
+ *******************************************************************************/
+public class TableViewsCacheInvalidation
+{
+   private final Set<Integer> tableViewIds = new HashSet<>();
+   private final Set<Integer> roleIds      = new HashSet<>();
+   private final Set<String>  tableNames   = new HashSet<>();
+
+   private boolean everything = false;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    *******************************************************************************/
+   public TableViewsCacheInvalidation()
+   {
+   }
+
+
+
+   /***************************************************************************
+    * an invalidation of everything.
+    ***************************************************************************/
+   public static TableViewsCacheInvalidation ofEverything()
+   {
+      TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation();
+      invalidation.everything = true;
+      return (invalidation);
+   }
+
+
+
+   /***************************************************************************
+    * build the invalidation for records (and, for updates, the old versions of
+    * the records) having been written to one of this qbit's tables:
+    *
+    * <ul>
+    * <li>{@link TableViewField}s and {@link TableViewWidget}s affect their
+    * tableViewId</li>
+    * <li>{@link TableView}s affect their own id - unless an update moves a
+    * view to a different customizableTableId, in which case everything is
+    * invalidated (as the view's cached keys are for its old table, and its
+    * new table has none referencing it yet)</li>
+    * <li>{@link TableViewRoleInt}s affect their roleId (and tableViewId)</li>
+    * <li>{@link CustomizableTable}s affect their tableName</li>
+    * </ul>
+    ***************************************************************************/
+   public static TableViewsCacheInvalidation forRecords(String tableName, List<QRecord> records, Optional<List<QRecord>> oldRecordList)
+   {
+      List<QRecord> allRecords = new ArrayList<>(CollectionUtils.nonNullList(records));
+      oldRecordList.ifPresent(oldRecords -> allRecords.addAll(CollectionUtils.nonNullList(oldRecords)));
+
+      TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation();
+      if(tableName == null)
+      {
+         invalidation.everything = true;
+         return (invalidation);
+      }
+
+      if(TableView.TABLE_NAME.equals(tableName) && didAnyValueChange(records, oldRecordList.orElse(null), "customizableTableId"))
+      {
+         invalidation.everything = true;
+         return (invalidation);
+      }
+
+      for(QRecord record : allRecords)
+      {
+         switch(tableName)
+         {
+            case TableViewField.TABLE_NAME, TableViewWidget.TABLE_NAME -> invalidation.addTableViewId(getValueInteger(allRecords, record, "tableViewId"));
+            case TableView.TABLE_NAME -> invalidation.addTableViewId(getValueInteger(allRecords, record, "id"));
+            case TableViewRoleInt.TABLE_NAME ->
+            {
+               invalidation.addRoleId(getValueInteger(allRecords, record, "roleId"));
+               invalidation.addTableViewId(getValueInteger(allRecords, record, "tableViewId"));
+            }
+            case CustomizableTable.TABLE_NAME -> invalidation.addTableName(getValueString(allRecords, record, "tableName"));
+            default -> invalidation.everything = true;
+         }
+      }
+
+      return (invalidation);
+   }
+
+
+
+   /***************************************************************************
+    * check if any (new) record has a value for a field that differs from the
+    * value in the old version of the record (by id).
+    ***************************************************************************/
+   private static boolean didAnyValueChange(List<QRecord> records, List<QRecord> oldRecords, String fieldName)
+   {
+      if(CollectionUtils.nullSafeIsEmpty(oldRecords))
+      {
+         return (false);
+      }
+
+      for(QRecord record : CollectionUtils.nonNullList(records))
+      {
+         if(record.getValues().containsKey(fieldName))
+         {
+            for(QRecord oldRecord : oldRecords)
+            {
+               if(record.getValue("id") != null && record.getValue("id").equals(oldRecord.getValue("id")))
+               {
+                  if(!Objects.equals(ValueUtils.getValueAsInteger(record.getValue(fieldName)), ValueUtils.getValueAsInteger(oldRecord.getValue(fieldName))))
+                  {
+                     return (true);
+                  }
+               }
+            }
+         }
+      }
+
+      return (false);
+   }
+
+
+
+   /***************************************************************************
+    * get an integer value from a record - or, if the record doesn't have it
+    * (e.g., a partial record from an update), from the other version of the
+    * record (by id) in the list.
+    ***************************************************************************/
+   private static Integer getValueInteger(List<QRecord> allRecords, QRecord record, String fieldName)
+   {
+      return (ValueUtils.getValueAsInteger(getValue(allRecords, record, fieldName)));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static String getValueString(List<QRecord> allRecords, QRecord record, String fieldName)
+   {
+      return (ValueUtils.getValueAsString(getValue(allRecords, record, fieldName)));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static Serializable getValue(List<QRecord> allRecords, QRecord record, String fieldName)
+   {
+      Serializable value = record.getValue(fieldName);
+      if(value == null && record.getValue("id") != null)
+      {
+         for(QRecord otherRecord : allRecords)
+         {
+            if(otherRecord != record && record.getValue("id").equals(otherRecord.getValue("id")) && otherRecord.getValue(fieldName) != null)
+            {
+               return (otherRecord.getValue(fieldName));
+            }
+         }
+      }
+      return (value);
+   }
+
+
+
+   /***************************************************************************
+    * add a table view id to the scope - where a null id (i.e., unknown) means
+    * to invalidate everything.
+    ***************************************************************************/
+   public TableViewsCacheInvalidation addTableViewId(Integer tableViewId)
+   {
+      if(tableViewId == null)
+      {
+         everything = true;
+      }
+      else
+      {
+         tableViewIds.add(tableViewId);
+      }
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    * add a role id to the scope - where a null id (i.e., unknown) means to
+    * invalidate everything.
+    ***************************************************************************/
+   public TableViewsCacheInvalidation addRoleId(Integer roleId)
+   {
+      if(roleId == null)
+      {
+         everything = true;
+      }
+      else
+      {
+         roleIds.add(roleId);
+      }
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    * add a table name to the scope - where a null name (i.e., unknown) means
+    * to invalidate everything.
+    ***************************************************************************/
+   public TableViewsCacheInvalidation addTableName(String tableName)
+   {
+      if(tableName == null)
+      {
+         everything = true;
+      }
+      else
+      {
+         tableNames.add(tableName);
+      }
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    * merge another invalidation's scope into this one.
+    ***************************************************************************/
+   public TableViewsCacheInvalidation mergeIn(TableViewsCacheInvalidation other)
+   {
+      if(other != null)
+      {
+         tableViewIds.addAll(other.tableViewIds);
+         roleIds.addAll(other.roleIds);
+         tableNames.addAll(other.tableNames);
+         everything = everything || other.everything;
+      }
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public boolean isEmpty()
+   {
+      return (!everything && tableViewIds.isEmpty() && roleIds.isEmpty() && tableNames.isEmpty());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for tableViewIds
+    *******************************************************************************/
+   public Set<Integer> getTableViewIds()
+   {
+      return (Collections.unmodifiableSet(this.tableViewIds));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for roleIds
+    *******************************************************************************/
+   public Set<Integer> getRoleIds()
+   {
+      return (Collections.unmodifiableSet(this.roleIds));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for tableNames
+    *******************************************************************************/
+   public Set<String> getTableNames()
+   {
+      return (Collections.unmodifiableSet(this.tableNames));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for everything
+    *******************************************************************************/
+   public boolean getEverything()
+   {
+      return (this.everything);
+   }
+
+}
@@ -0,0 +1,398 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+
+
+/*******************************************************************************
+ ** Collects {@link TableViewsCacheInvalidation}s and applies them (merged) as
+ ** one - so that bulk edits to table views (e.g., an import of hundreds of
+ ** TableViewField records, which runs many insert batches) don't keep clearing
+ ** the caches that live traffic is re-loading in the meantime.
+ **
+ ** Invalidations are coalesced in two ways:
+ ** <ul>
+ ** <li>within a batch, opened on the current thread via {@link #openBatch()}
+ ** (e.g., around a transaction) - where everything submitted by the thread is
+ ** applied when its outermost batch is closed.</li>
+ ** <li>over a time window (if one is set) - where the first invalidation starts
+ ** the window, and everything submitted until it ends is applied then.</li>
+ ** </ul>
+ **
+ ** With neither (the default), invalidations are applied immediately.  Note
+ ** that, while an invalidation is pending, reads (including by the thread that
+ ** made the change) can still get the cached data that it will invalidate.
+ **
+ ** Batches are not tied to backend transactions:  edits are submitted (by the
+ ** tables' post-action customizers) when they're made, not when they're
+ ** committed.  So, for edits in a transaction, without a batch, a read
+ ** between the invalidation and the commit can re-cache the old data (until
+ ** it expires), and a rollback doesn't take the invalidation back.  Code that
+ ** edits these tables in its own transaction should open a batch around it,
+ ** close the batch after committing (so that it's applied after the commit),
+ ** and {@link Batch#discard()} it on rollback.
+ *******************************************************************************/
+public class TableViewsCacheInvalidationCoalescer
+{
+   private static final QLogger LOG = QLogger.getLogger(TableViewsCacheInvalidationCoalescer.class);
+
+   private final Consumer<TableViewsCacheInvalidation> applier;
+   private final ThreadLocal<BatchState>               currentBatch = new ThreadLocal<>();
+
+   private Duration                    window;
+   private TableViewsCacheInvalidation pendingInvalidation;
+   private ScheduledExecutorService    scheduler;
+
+   private final AtomicLong submittedCount = new AtomicLong();
+   private final AtomicLong appliedCount   = new AtomicLong();
+   private final AtomicLong coalescedCount = new AtomicLong();
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    ** @param applier what to do with (merged) invalidations, once they're due.
+    *******************************************************************************/
+   public TableViewsCacheInvalidationCoalescer(Consumer<TableViewsCacheInvalidation> applier)
+   {
+      this.applier = applier;
+   }
+
+
+
+   /***************************************************************************
+    * submit an invalidation - to be applied now, at the end of the current
+    * thread's batch, or at the end of the window - whichever applies.
+    ***************************************************************************/
+   public void submit(TableViewsCacheInvalidation invalidation)
+   {
+      if(invalidation == null || invalidation.isEmpty())
+      {
+         return;
+      }
+
+      submittedCount.incrementAndGet();
+
+      BatchState batchState = currentBatch.get();
+      if(batchState != null)
+      {
+         if(!batchState.invalidation.isEmpty())
+         {
+            coalescedCount.incrementAndGet();
+         }
+         batchState.invalidation.mergeIn(invalidation);
+         return;
+      }
+
+      submitAfterBatch(invalidation);
+   }
+
+
+
+   /***************************************************************************
+    * submit an invalidation that isn't (or is no longer) part of a batch -
+    * either applying it, or holding it for the window.
+    ***************************************************************************/
+   private void submitAfterBatch(TableViewsCacheInvalidation invalidation)
+   {
+      synchronized(this)
+      {
+         if(window != null)
+         {
+            if(pendingInvalidation == null)
+            {
+               pendingInvalidation = new TableViewsCacheInvalidation().mergeIn(invalidation);
+
+               ///////////////////////////////////////////////////////////////////////////////
+               // flush with the context of the request that started the window - as the    //
+               // applier may need it (e.g., to record the invalidation in the change log). //
+               ///////////////////////////////////////////////////////////////////////////////
+               CapturedContext capturedContext = QContext.capture();
+               getScheduler().schedule(() -> flushWithContext(capturedContext), window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+               pendingInvalidation.mergeIn(invalidation);
+               coalescedCount.incrementAndGet();
+            }
+            return;
+         }
+      }
+
+      apply(invalidation);
+   }
+
+
+
+   /***************************************************************************
+    * open a batch on the current thread - closing it (e.g., via
+    * try-with-resources) applies everything submitted in it.  Batches can be
+    * nested, in which case only the outermost one's close applies them.
+    * Each call returns its own handle, and closing a handle more than once
+    * has no further effect.
+    ***************************************************************************/
+   public Batch openBatch()
+   {
+      BatchState batchState = currentBatch.get();
+      if(batchState == null)
+      {
+         batchState = new BatchState();
+         currentBatch.set(batchState);
+      }
+
+      batchState.depth++;
+      return (new Batch(batchState));
+   }
+
+
+
+   /***************************************************************************
+    * apply any invalidation that is waiting for the window to end, now.
+    ***************************************************************************/
+   public void flush()
+   {
+      TableViewsCacheInvalidation invalidation;
+      synchronized(this)
+      {
+         invalidation = pendingInvalidation;
+         pendingInvalidation = null;
+      }
+
+      if(invalidation != null)
+      {
+         apply(invalidation);
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private void flushWithContext(CapturedContext capturedContext)
+   {
+      try
+      {
+         QContext.init(capturedContext);
+         flush();
+      }
+      finally
+      {
+         QContext.clear();
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private void apply(TableViewsCacheInvalidation invalidation)
+   {
+      try
+      {
+         applier.accept(invalidation);
+         appliedCount.incrementAndGet();
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error applying table views cache invalidation", e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private synchronized ScheduledExecutorService getScheduler()
+   {
+      if(scheduler == null)
+      {
+         scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+         {
+            Thread thread = new Thread(runnable, "customizable-table-views-invalidation");
+            thread.setDaemon(true);
+            return (thread);
+         });
+      }
+      return (scheduler);
+   }
+
+
+
+   /***************************************************************************
+    * set the window over which to coalesce invalidations - where null (or a
+    * non-positive duration) means to apply them immediately.  Any invalidation
+    * waiting for a previous window is applied now.
+    ***************************************************************************/
+   public void setWindow(Duration window)
+   {
+      synchronized(this)
+      {
+         this.window = (window == null || window.isNegative() || window.isZero()) ? null : window;
+      }
+      flush();
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for window
+    *******************************************************************************/
+   public synchronized Duration getWindow()
+   {
+      return (this.window);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for submittedCount - the number of (non-empty) invalidations
+    ** submitted.
+    *******************************************************************************/
+   public long getSubmittedCount()
+   {
+      return (this.submittedCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for appliedCount - the number of (merged) invalidations applied.
+    *******************************************************************************/
+   public long getAppliedCount()
+   {
+      return (this.appliedCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for coalescedCount - the number of invalidations that were merged
+    ** into another pending one, rather than being applied on their own.
+    *******************************************************************************/
+   public long getCoalescedCount()
+   {
+      return (this.coalescedCount.get());
+   }
+
+
+
+   /***************************************************************************
+    * the invalidations collected on a thread while it has a batch open - shared
+    * by the (nested) {@link Batch} handles opened on it.
+    ***************************************************************************/
+   private static class BatchState
+   {
+      private TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation();
+      private int                         depth        = 0;
+   }
+
+
+
+   /***************************************************************************
+    * a handle on a batch of invalidations on a thread - see {@link #openBatch()}.
+    ***************************************************************************/
+   public class Batch implements AutoCloseable
+   {
+      private final BatchState batchState;
+      private       boolean    closed = false;
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      private Batch(BatchState batchState)
+      {
+         this.batchState = batchState;
+      }
+
+
+
+      /***************************************************************************
+       * discard the invalidations collected in this batch (and in any batches
+       * it's nested in, or that are nested in it - as they're all one batch) -
+       * e.g., when the transaction the batch is around is rolled back, so
+       * nothing it invalidated was changed.  Invalidations submitted after
+       * this are collected as usual.
+       ***************************************************************************/
+      public void discard()
+      {
+         batchState.invalidation = new TableViewsCacheInvalidation();
+      }
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public void close()
+      {
+         if(closed)
+         {
+            return;
+         }
+         closed = true;
+
+         if(batchState.depth <= 0)
+         {
+            LOG.warn("Closing a table views cache invalidation batch that has no open depth - ignoring");
+            return;
+         }
+
+         batchState.depth--;
+         if(batchState.depth > 0)
+         {
+            return;
+         }
+
+         ///////////////////////////////////////////////////////////////////////////
+         // only clear the thread's current batch if it is still this one - e.g., //
+         // not if this (outermost) handle is being closed on some other thread.  //
+         ///////////////////////////////////////////////////////////////////////////
+         if(currentBatch.get() == batchState)
+         {
+            currentBatch.remove();
+         }
+
+         if(!batchState.invalidation.isEmpty())
+         {
+            submitAfterBatch(batchState.invalidation);
+         }
+      }
+   }
+
+}
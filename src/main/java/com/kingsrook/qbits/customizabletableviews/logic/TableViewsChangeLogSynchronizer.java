@@ -0,0 +1,503 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewsChangeLog;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterOrderBy;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.StringUtils;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** Keeps the caches of table views on each node (JVM) of a cluster in sync, via
+ ** the {@link TableViewsChangeLog} table - with no broker needed:
+ ** <ul>
+ ** <li>invalidations applied on a node (from edits made there) are appended to
+ ** the log, along with the node's id.</li>
+ ** <li>each node polls the log (at most once per poll interval, as part of a
+ ** request that uses the caches) for rows with a generation (id) greater than
+ ** the last one it saw, and applies the scopes of any from other nodes.</li>
+ ** </ul>
+ **
+ ** As ids are allocated before the rows are committed, a row can become
+ ** visible after one with a greater id.  So the last generation seen only
+ ** advances past a contiguous run of ids:  an id missing below the greatest
+ ** one read is a gap, which is re-read on later polls (deduped against the
+ ** rows already applied above the last generation seen), until it shows up
+ ** or the gap timeout passes (e.g., for an id lost to a rolled back insert).
+ **
+ ** A node that hasn't polled in longer than the log is retained for can't know
+ ** what it missed - so it clears everything instead.  With no poll interval
+ ** set (the default), nothing is appended or polled.
+ *******************************************************************************/
+public class TableViewsChangeLogSynchronizer
+{
+   private static final QLogger LOG = QLogger.getLogger(TableViewsChangeLogSynchronizer.class);
+
+   static final Duration RETENTION             = Duration.ofDays(1);
+   static final int      PRUNE_EVERY_N_APPENDS = 100;
+   static final int      MAX_SCOPE_LENGTH      = 4000;
+   static final Duration DEFAULT_GAP_TIMEOUT   = Duration.ofMinutes(1);
+
+   private final String                                nodeId   = UUID.randomUUID().toString();
+   private final Consumer<TableViewsCacheInvalidation> applier;
+   private final ReentrantLock                         pollLock = new ReentrantLock();
+
+   private volatile Duration pollInterval;
+   private volatile Duration gapTimeout = DEFAULT_GAP_TIMEOUT;
+   private volatile Integer  lastSeenGeneration;
+   private volatile Instant  lastPolledAt;
+
+   /////////////////////////////////////////////////////////////////////////////
+   // ids above the last generation seen, that have been read already - and   //
+   // ids missing below the greatest one read, with when they were first seen //
+   // missing.  both are only used while holding the poll lock.               //
+   /////////////////////////////////////////////////////////////////////////////
+   private final Set<Integer>          seenAboveLastGeneration = new HashSet<>();
+   private final Map<Integer, Instant> gapsNoticedAt           = new TreeMap<>();
+
+   private final AtomicLong appendedCount = new AtomicLong();
+   private final AtomicLong appliedCount  = new AtomicLong();
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    ** @param applier what to do with invalidations read from the log.
+    *******************************************************************************/
+   public TableViewsChangeLogSynchronizer(Consumer<TableViewsCacheInvalidation> applier)
+   {
+      this.applier = applier;
+   }
+
+
+
+   /***************************************************************************
+    * append an invalidation (that was applied on this node) to the log - if
+    * polling is on.  Errors are logged, not thrown, as the edit that caused
+    * the invalidation has already been made.
+    ***************************************************************************/
+   public void append(TableViewsCacheInvalidation invalidation)
+   {
+      if(pollInterval == null || invalidation == null || invalidation.isEmpty())
+      {
+         return;
+      }
+
+      try
+      {
+         new InsertAction().execute(new InsertInput(TableViewsChangeLog.TABLE_NAME).withRecordEntity(toChangeLog(invalidation)));
+
+         if(appendedCount.incrementAndGet() % PRUNE_EVERY_N_APPENDS == 0)
+         {
+            prune();
+         }
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error appending to table views change log", e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * poll the log - if polling is on, and it has been at least the poll
+    * interval since the last poll.  If another thread is already polling,
+    * this one doesn't wait for it.
+    ***************************************************************************/
+   public void pollIfDue()
+   {
+      if(pollInterval == null || !isPollDue())
+      {
+         return;
+      }
+
+      if(pollLock.tryLock())
+      {
+         try
+         {
+            if(isPollDue())
+            {
+               poll();
+            }
+         }
+         finally
+         {
+            pollLock.unlock();
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private boolean isPollDue()
+   {
+      Instant lastPolledAt = this.lastPolledAt;
+      return (lastPolledAt == null || !lastPolledAt.plus(pollInterval).isAfter(Instant.now()));
+   }
+
+
+
+   /***************************************************************************
+    * poll the log now:  the first time (or if it's been too long since the
+    * last poll), just note the latest generation (clearing everything, in the
+    * too-long case); otherwise, apply the merged scopes of any rows from other
+    * nodes since the last generation that was seen (that weren't already
+    * applied), then advance the last generation seen past any ids that are
+    * now contiguous.
+    ***************************************************************************/
+   void poll()
+   {
+      try
+      {
+         Instant now = Instant.now();
+         if(lastSeenGeneration == null || lastPolledAt.plus(RETENTION).isBefore(now))
+         {
+            List<QRecord> latest = query(new QQueryFilter()
+               .withOrderBy(new QFilterOrderBy("id", false))
+               .withLimit(1));
+
+            if(lastSeenGeneration != null)
+            {
+               apply(TableViewsCacheInvalidation.ofEverything());
+            }
+
+            lastSeenGeneration = latest.isEmpty() ? 0 : latest.get(0).getValueInteger("id");
+            seenAboveLastGeneration.clear();
+            gapsNoticedAt.clear();
+         }
+         else
+         {
+            List<QRecord> records = query(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.GREATER_THAN, lastSeenGeneration))
+               .withOrderBy(new QFilterOrderBy("id", true)));
+
+            TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation();
+            for(QRecord record : records)
+            {
+               TableViewsChangeLog changeLog = new TableViewsChangeLog(record);
+               if(!seenAboveLastGeneration.add(changeLog.getId()))
+               {
+                  continue;
+               }
+
+               gapsNoticedAt.remove(changeLog.getId());
+               if(!nodeId.equals(changeLog.getNodeId()))
+               {
+                  invalidation.mergeIn(toInvalidation(changeLog));
+               }
+            }
+
+            if(!invalidation.isEmpty())
+            {
+               apply(invalidation);
+            }
+
+            advanceLastSeenGeneration(now);
+         }
+
+         lastPolledAt = now;
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error polling table views change log", e, logPair("lastSeenGeneration", lastSeenGeneration));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * note any new gaps below the greatest id read, then move the last
+    * generation seen up through ids that have been read, or that have been
+    * missing for longer than the gap timeout.
+    ***************************************************************************/
+   private void advanceLastSeenGeneration(Instant now)
+   {
+      int greatestSeen = seenAboveLastGeneration.stream().mapToInt(Integer::intValue).max().orElse(lastSeenGeneration);
+      for(int id = lastSeenGeneration + 1; id < greatestSeen; id++)
+      {
+         if(!seenAboveLastGeneration.contains(id))
+         {
+            gapsNoticedAt.putIfAbsent(id, now);
+         }
+      }
+
+      int generation = lastSeenGeneration;
+      while(generation < greatestSeen)
+      {
+         int     next      = generation + 1;
+         Instant noticedAt = gapsNoticedAt.get(next);
+         if(noticedAt != null && noticedAt.plus(gapTimeout).isAfter(now))
+         {
+            break;
+         }
+
+         if(noticedAt != null)
+         {
+            LOG.info("Giving up waiting for table views change log gap", logPair("id", next));
+         }
+
+         seenAboveLastGeneration.remove(next);
+         gapsNoticedAt.remove(next);
+         generation = next;
+      }
+
+      lastSeenGeneration = generation;
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private List<QRecord> query(QQueryFilter filter) throws QException
+   {
+      return (new QueryAction().execute(new QueryInput(TableViewsChangeLog.TABLE_NAME).withFilter(filter)).getRecords());
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private void apply(TableViewsCacheInvalidation invalidation)
+   {
+      applier.accept(invalidation);
+      appliedCount.incrementAndGet();
+   }
+
+
+
+   /***************************************************************************
+    * delete rows from the log that are older than it's retained for.
+    ***************************************************************************/
+   private void prune() throws QException
+   {
+      new DeleteAction().execute(new DeleteInput(TableViewsChangeLog.TABLE_NAME)
+         .withQueryFilter(new QQueryFilter(new QFilterCriteria("createDate", QCriteriaOperator.LESS_THAN, Instant.now().minus(RETENTION)))));
+   }
+
+
+
+   /***************************************************************************
+    * build a change log row for an invalidation - where a scope that's too big
+    * to store is recorded as everything.
+    ***************************************************************************/
+   TableViewsChangeLog toChangeLog(TableViewsCacheInvalidation invalidation)
+   {
+      String tableViewIds = joinScope(invalidation.getTableViewIds());
+      String roleIds      = joinScope(invalidation.getRoleIds());
+      String tableNames   = joinScope(invalidation.getTableNames());
+
+      boolean everything = invalidation.getEverything() || tableViewIds.length() > MAX_SCOPE_LENGTH || roleIds.length() > MAX_SCOPE_LENGTH || tableNames.length() > MAX_SCOPE_LENGTH;
+
+      return (new TableViewsChangeLog()
+         .withNodeId(nodeId)
+         .withEverything(everything)
+         .withTableViewIds(everything ? null : tableViewIds)
+         .withRoleIds(everything ? null : roleIds)
+         .withTableNames(everything ? null : tableNames)
+         .withCreateDate(Instant.now()));
+   }
+
+
+
+   /***************************************************************************
+    * read the invalidation back out of a change log row.
+    ***************************************************************************/
+   static TableViewsCacheInvalidation toInvalidation(TableViewsChangeLog changeLog)
+   {
+      if(Boolean.TRUE.equals(changeLog.getEverything()))
+      {
+         return (TableViewsCacheInvalidation.ofEverything());
+      }
+
+      TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation();
+      splitScope(changeLog.getTableViewIds()).forEach(id -> invalidation.addTableViewId(ValueUtils.getValueAsInteger(id)));
+      splitScope(changeLog.getRoleIds()).forEach(id -> invalidation.addRoleId(ValueUtils.getValueAsInteger(id)));
+      splitScope(changeLog.getTableNames()).forEach(invalidation::addTableName);
+      return (invalidation);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static String joinScope(Collection<? extends Serializable> values)
+   {
+      return (values.stream().map(String::valueOf).collect(Collectors.joining(",")));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static List<String> splitScope(String value)
+   {
+      if(!StringUtils.hasContent(value))
+      {
+         return (List.of());
+      }
+
+      return (Arrays.stream(value.split(",")).map(String::trim).filter(StringUtils::hasContent).toList());
+   }
+
+
+
+   /***************************************************************************
+    * forget the last generation seen (e.g., when all caches are cleared), so
+    * that the next poll starts over from the latest one.
+    ***************************************************************************/
+   public void reset()
+   {
+      pollLock.lock();
+      try
+      {
+         lastSeenGeneration = null;
+         lastPolledAt = null;
+         seenAboveLastGeneration.clear();
+         gapsNoticedAt.clear();
+      }
+      finally
+      {
+         pollLock.unlock();
+      }
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for pollInterval - where null (the default) turns off appending to,
+    ** and polling, the log.
+    *******************************************************************************/
+   public void setPollInterval(Duration pollInterval)
+   {
+      this.pollInterval = pollInterval;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for pollInterval
+    *******************************************************************************/
+   public Duration getPollInterval()
+   {
+      return (this.pollInterval);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for gapTimeout - how long to keep waiting for an id that is missing
+    ** from the log (below one that has been read) to show up.
+    *******************************************************************************/
+   public void setGapTimeout(Duration gapTimeout)
+   {
+      this.gapTimeout = gapTimeout == null ? DEFAULT_GAP_TIMEOUT : gapTimeout;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for gapTimeout
+    *******************************************************************************/
+   public Duration getGapTimeout()
+   {
+      return (this.gapTimeout);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for nodeId
+    *******************************************************************************/
+   public String getNodeId()
+   {
+      return (this.nodeId);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for lastSeenGeneration
+    *******************************************************************************/
+   public Integer getLastSeenGeneration()
+   {
+      return (this.lastSeenGeneration);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for appendedCount - the number of rows appended to the log.
+    *******************************************************************************/
+   public long getAppendedCount()
+   {
+      return (this.appendedCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for appliedCount - the number of invalidations applied from the log.
+    *******************************************************************************/
+   public long getAppliedCount()
+   {
+      return (this.appliedCount.get());
+   }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewRoleInt;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewWidget;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.apache.commons.lang3.BooleanUtils;
+
+
+/*******************************************************************************
+ ** Immutable, in-memory copy of all of this qbit's configuration - customizable
+ ** tables, table views (with their fields & widgets), and view-role ints -
+ ** indexed by table name, view id, and role id - so that effective views can
+ ** be found without going to the backend.
+ **
+ ** A snapshot is never modified - {@link #withChanges(TableViewsCacheInvalidation)}
+ ** builds a new one, re-loading only the records in an invalidation's scope,
+ ** and re-using the rest.  The entities in a snapshot are shared by every
+ ** request that uses it, so they must not be modified either.
+ **
+ ** A snapshot remembers when it was (fully) loaded - which incrementally built
+ ** ones inherit - so that it can be fully re-loaded once it's older than a max
+ ** age (catching any change that an invalidation missed).
+ *******************************************************************************/
+public class TableViewsConfigurationSnapshot
+{
+   private final Map<String, CustomizableTable> customizableTablesByName;
+   private final Map<Integer, TableView>        tableViewsById;
+   private final Set<RoleViewPair>              roleViewPairs;
+   private final Map<Integer, Set<Integer>>     tableViewIdsByRoleId;
+   private final Instant                        loadedAt;
+
+
+
+   /***************************************************************************
+    * a view-role int - i.e., a role having a view.
+    ***************************************************************************/
+   private record RoleViewPair(Integer roleId, Integer tableViewId)
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    *******************************************************************************/
+   private TableViewsConfigurationSnapshot(Map<String, CustomizableTable> customizableTablesByName, Map<Integer, TableView> tableViewsById, Set<RoleViewPair> roleViewPairs, Instant loadedAt)
+   {
+      this.loadedAt = loadedAt;
+      this.customizableTablesByName = Collections.unmodifiableMap(customizableTablesByName);
+      this.tableViewsById = Collections.unmodifiableMap(tableViewsById);
+      this.roleViewPairs = Collections.unmodifiableSet(roleViewPairs);
+
+      Map<Integer, Set<Integer>> tableViewIdsByRoleId = new HashMap<>();
+      for(RoleViewPair roleViewPair : roleViewPairs)
+      {
+         tableViewIdsByRoleId.computeIfAbsent(roleViewPair.roleId(), k -> new TreeSet<>()).add(roleViewPair.tableViewId());
+      }
+      this.tableViewIdsByRoleId = Collections.unmodifiableMap(tableViewIdsByRoleId);
+   }
+
+
+
+   /***************************************************************************
+    * load a snapshot of all of the configuration, from the backend.
+    ***************************************************************************/
+   public static TableViewsConfigurationSnapshot load() throws QException
+   {
+      Instant loadedAt = Instant.now();
+
+      Map<String, CustomizableTable> customizableTablesByName = new HashMap<>();
+      for(CustomizableTable customizableTable : loadCustomizableTables(new QQueryFilter()))
+      {
+         customizableTablesByName.put(customizableTable.getTableName(), customizableTable);
+      }
+
+      return (new TableViewsConfigurationSnapshot(customizableTablesByName, loadTableViews(null), loadRoleViewPairs(new QQueryFilter()), loadedAt));
+   }
+
+
+
+   /***************************************************************************
+    * build a new snapshot, with the records in the scope of an invalidation
+    * re-loaded from the backend (or all of them, if it's everything), and the
+    * rest shared with this snapshot.
+    ***************************************************************************/
+   public TableViewsConfigurationSnapshot withChanges(TableViewsCacheInvalidation invalidation) throws QException
+   {
+      if(invalidation.getEverything())
+      {
+         return (load());
+      }
+
+      Map<String, CustomizableTable> customizableTablesByName = new HashMap<>(this.customizableTablesByName);
+      Map<Integer, TableView>        tableViewsById           = new HashMap<>(this.tableViewsById);
+      Set<RoleViewPair>              roleViewPairs            = new HashSet<>(this.roleViewPairs);
+
+      Set<String> tableNames = invalidation.getTableNames();
+      if(!tableNames.isEmpty())
+      {
+         customizableTablesByName.keySet().removeAll(tableNames);
+         for(CustomizableTable customizableTable : loadCustomizableTables(new QQueryFilter(new QFilterCriteria("tableName", QCriteriaOperator.IN, new ArrayList<>(tableNames)))))
+         {
+            customizableTablesByName.put(customizableTable.getTableName(), customizableTable);
+         }
+      }
+
+      Set<Integer> tableViewIds = invalidation.getTableViewIds();
+      if(!tableViewIds.isEmpty())
+      {
+         tableViewsById.keySet().removeAll(tableViewIds);
+         tableViewsById.putAll(loadTableViews(tableViewIds));
+
+         roleViewPairs.removeIf(roleViewPair -> tableViewIds.contains(roleViewPair.tableViewId()));
+         roleViewPairs.addAll(loadRoleViewPairs(new QQueryFilter(new QFilterCriteria("tableViewId", QCriteriaOperator.IN, new ArrayList<>(tableViewIds)))));
+      }
+
+      Set<Integer> roleIds = invalidation.getRoleIds();
+      if(!roleIds.isEmpty())
+      {
+         roleViewPairs.removeIf(roleViewPair -> roleIds.contains(roleViewPair.roleId()));
+         roleViewPairs.addAll(loadRoleViewPairs(new QQueryFilter(new QFilterCriteria("roleId", QCriteriaOperator.IN, new ArrayList<>(roleIds)))));
+      }
+
+      return (new TableViewsConfigurationSnapshot(customizableTablesByName, tableViewsById, roleViewPairs, loadedAt));
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static List<CustomizableTable> loadCustomizableTables(QQueryFilter filter) throws QException
+   {
+      return (query(CustomizableTable.TABLE_NAME, filter).stream().map(CustomizableTable::new).toList());
+   }
+
+
+
+   /***************************************************************************
+    * load table views, with their fields & widgets (which are queried for
+    * directly, rather than as associations, as there can be very many) - either
+    * all of them (for null ids), or just the ones with the given ids.
+    ***************************************************************************/
+   private static Map<Integer, TableView> loadTableViews(Collection<Integer> tableViewIds) throws QException
+   {
+      QQueryFilter tableViewFilter = new QQueryFilter();
+      QQueryFilter childFilter     = new QQueryFilter();
+      if(tableViewIds != null)
+      {
+         tableViewFilter.addCriteria(new QFilterCriteria("id", QCriteriaOperator.IN, new ArrayList<>(tableViewIds)));
+         childFilter.addCriteria(new QFilterCriteria("tableViewId", QCriteriaOperator.IN, new ArrayList<>(tableViewIds)));
+      }
+
+      Map<Integer, List<TableViewField>> fieldsByTableViewId = new HashMap<>();
+      for(QRecord record : query(TableViewField.TABLE_NAME, childFilter))
+      {
+         TableViewField tableViewField = new TableViewField(record);
+         fieldsByTableViewId.computeIfAbsent(tableViewField.getTableViewId(), k -> new ArrayList<>()).add(tableViewField);
+      }
+
+      Map<Integer, List<TableViewWidget>> widgetsByTableViewId = new HashMap<>();
+      for(QRecord record : query(TableViewWidget.TABLE_NAME, childFilter))
+      {
+         TableViewWidget tableViewWidget = new TableViewWidget(record);
+         widgetsByTableViewId.computeIfAbsent(tableViewWidget.getTableViewId(), k -> new ArrayList<>()).add(tableViewWidget);
+      }
+
+      Map<Integer, TableView> tableViewsById = new HashMap<>();
+      for(QRecord record : query(TableView.TABLE_NAME, tableViewFilter))
+      {
+         TableView tableView = new TableView(record);
+         tableView.setFields(Collections.unmodifiableList(fieldsByTableViewId.getOrDefault(tableView.getId(), new ArrayList<>())));
+         tableView.setWidgets(Collections.unmodifiableList(widgetsByTableViewId.getOrDefault(tableView.getId(), new ArrayList<>())));
+         tableViewsById.put(tableView.getId(), tableView);
+      }
+
+      return (tableViewsById);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static Set<RoleViewPair> loadRoleViewPairs(QQueryFilter filter) throws QException
+   {
+      Set<RoleViewPair> roleViewPairs = new HashSet<>();
+      for(QRecord record : query(TableViewRoleInt.TABLE_NAME, filter))
+      {
+         roleViewPairs.add(new RoleViewPair(record.getValueInteger("roleId"), record.getValueInteger("tableViewId")));
+      }
+      return (roleViewPairs);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private static List<QRecord> query(String tableName, QQueryFilter filter) throws QException
+   {
+      return (new QueryAction().execute(new QueryInput(tableName).withFilter(filter)).getRecords());
+   }
+
+
+
+   /***************************************************************************
+    * same as the personalizer's (database) check - is there an active
+    * customizable table record for a table name.
+    ***************************************************************************/
+   public boolean isTableCustomizable(String tableName)
+   {
+      CustomizableTable customizableTable = customizableTablesByName.get(tableName);
+      return (customizableTable != null && BooleanUtils.isTrue(customizableTable.getIsActive()));
+   }
+
+
+
+   /***************************************************************************
+    * get the views for a table that are assigned to any of a set of roles -
+    * ordered by id.
+    ***************************************************************************/
+   public List<TableView> getTableViewsForRoles(String tableName, Collection<Integer> roleIds)
+   {
+      CustomizableTable customizableTable = customizableTablesByName.get(tableName);
+      if(customizableTable == null)
+      {
+         return (Collections.emptyList());
+      }
+
+      SortedSet<Integer> tableViewIds = new TreeSet<>();
+      for(Integer roleId : roleIds)
+      {
+         tableViewIds.addAll(tableViewIdsByRoleId.getOrDefault(roleId, Collections.emptySet()));
+      }
+
+      List<TableView> tableViews = new ArrayList<>();
+      for(Integer tableViewId : tableViewIds)
+      {
+         TableView tableView = tableViewsById.get(tableViewId);
+         if(tableView != null && customizableTable.getId().equals(tableView.getCustomizableTableId()))
+         {
+            tableViews.add(tableView);
+         }
+      }
+
+      return (tableViews);
+   }
+
+
+
+   /***************************************************************************
+    * get the customizable table record for a table name (or null).
+    ***************************************************************************/
+   public CustomizableTable getCustomizableTable(String tableName)
+   {
+      return (customizableTablesByName.get(tableName));
+   }
+
+
+
+   /***************************************************************************
+    * get a table view (with its fields & widgets) by id (or null).
+    ***************************************************************************/
+   public TableView getTableView(Integer tableViewId)
+   {
+      return (tableViewsById.get(tableViewId));
+   }
+
+
+
+   /***************************************************************************
+    * check if this snapshot was (fully) loaded longer ago than a max age -
+    * where a null max age means never.
+    ***************************************************************************/
+   public boolean isOlderThan(Duration maxAge)
+   {
+      return (maxAge != null && loadedAt.plus(maxAge).isBefore(Instant.now()));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for loadedAt - when the snapshot that this one was (incrementally)
+    ** built from was fully loaded.
+    *******************************************************************************/
+   public Instant getLoadedAt()
+   {
+      return (this.loadedAt);
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   public int getTableViewCount()
+   {
+      return (tableViewsById.size());
+   }
+
+}
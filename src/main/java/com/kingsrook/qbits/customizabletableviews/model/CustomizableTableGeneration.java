@@ -0,0 +1,235 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.model;
+
+
+import java.time.Instant;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QField;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.data.QRecordEntity;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.audits.AuditLevel;
+import com.kingsrook.qqq.backend.core.model.metadata.audits.QAuditRules;
+import com.kingsrook.qqq.backend.core.model.metadata.layout.QIcon;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.MetaDataCustomizerInterface;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.annotations.QMetaDataProducingEntity;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.SectionFactory;
+
+
+/*******************************************************************************
+ ** QRecord Entity for CustomizableTableGeneration table - an append-only
+ ** companion to {@link CustomizableTable}, where each row is a bump of the
+ ** generation of the table with its tableName (or of all tables, for
+ ** {@link #ALL_TABLES}).  A table's current generation is the greatest id of
+ ** its rows - so a bump is a single insert, with no read-then-update to race,
+ ** and without touching the CustomizableTable record (its modifyDate, audits,
+ ** or post-action customizers).
+ **
+ ** Only written and read when the qbit's generationCheckInterval is set.
+ *******************************************************************************/
+@QMetaDataProducingEntity(
+   produceTableMetaData = true,
+   tableMetaDataCustomizer = CustomizableTableGeneration.TableMetaDataCustomizer.class
+)
+public class CustomizableTableGeneration extends QRecordEntity
+{
+   public static final String TABLE_NAME = "CustomizableTableGeneration";
+
+   /////////////////////////////////////////////////////////////////
+   // the tableName of a bump that applies to every table's views //
+   /////////////////////////////////////////////////////////////////
+   public static final String ALL_TABLES = "*";
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public static class TableMetaDataCustomizer implements MetaDataCustomizerInterface<QTableMetaData>
+   {
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public QTableMetaData customizeMetaData(QInstance qInstance, QTableMetaData table) throws QException
+      {
+         table
+            .withIcon(new QIcon().withName("update"))
+            .withRecordLabelFormat("%s")
+            .withRecordLabelFields("id")
+            .withAuditRules(new QAuditRules().withAuditLevel(AuditLevel.NONE))
+            .withSection(SectionFactory.defaultT1("id", "tableName"))
+            .withSection(SectionFactory.defaultT3("createDate"));
+
+         return (table);
+      }
+   }
+
+
+
+   @QField(isEditable = false, isPrimaryKey = true)
+   private Integer id;
+
+   @QField(maxLength = 100)
+   private String tableName;
+
+   @QField(isEditable = false)
+   private Instant createDate;
+
+
+
+   /*******************************************************************************
+    ** Default constructor
+    *******************************************************************************/
+   public CustomizableTableGeneration()
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor that takes a QRecord
+    *******************************************************************************/
+   public CustomizableTableGeneration(QRecord record)
+   {
+      populateFromQRecord(record);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for id
+    * @see #withId(Integer)
+    *******************************************************************************/
+   public Integer getId()
+   {
+      return (this.id);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for id
+    * @see #withId(Integer)
+    *******************************************************************************/
+   public void setId(Integer id)
+   {
+      this.id = id;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for id
+    *
+    * @param id
+    * the generation - assigned (increasing) by the backend
+    *
+    * @return this
+    *******************************************************************************/
+   public CustomizableTableGeneration withId(Integer id)
+   {
+      this.id = id;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for tableName
+    * @see #withTableName(String)
+    *******************************************************************************/
+   public String getTableName()
+   {
+      return (this.tableName);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for tableName
+    * @see #withTableName(String)
+    *******************************************************************************/
+   public void setTableName(String tableName)
+   {
+      this.tableName = tableName;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for tableName
+    *
+    * @param tableName
+    * name of the (customizable) table whose generation was bumped - or
+    * {@link #ALL_TABLES}
+    *
+    * @return this
+    *******************************************************************************/
+   public CustomizableTableGeneration withTableName(String tableName)
+   {
+      this.tableName = tableName;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for createDate
+    * @see #withCreateDate(Instant)
+    *******************************************************************************/
+   public Instant getCreateDate()
+   {
+      return (this.createDate);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for createDate
+    * @see #withCreateDate(Instant)
+    *******************************************************************************/
+   public void setCreateDate(Instant createDate)
+   {
+      this.createDate = createDate;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for createDate
+    *
+    * @param createDate
+    * when the generation was bumped
+    *
+    * @return this
+    *******************************************************************************/
+   public CustomizableTableGeneration withCreateDate(Instant createDate)
+   {
+      this.createDate = createDate;
+      return (this);
+   }
+
+}
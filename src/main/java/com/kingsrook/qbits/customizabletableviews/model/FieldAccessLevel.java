@@ -22,7 +22,12 @@
 package com.kingsrook.qbits.customizabletableviews.model;
 
 
-import java.util.Objects;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QVirtualFieldMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.possiblevalues.PossibleValueEnum;
@@ -44,6 +49,10 @@ public enum FieldAccessLevel implements PossibleValueEnum<String>
 
    public static final String NAME = "FieldAccessLevel";
 
+   private static final Map<String, FieldAccessLevel> BY_ID = Arrays.stream(values()).collect(Collectors.toMap(FieldAccessLevel::getId, Function.identity()));
+
+   private static final List<FieldAccessLevel> IN_RESTRICTIVENESS_ORDER = Arrays.stream(values()).sorted(Comparator.comparingInt(FieldAccessLevel::getRestrictiveness)).toList();
+
 
 
    /*******************************************************************************
@@ -68,15 +77,18 @@ public enum FieldAccessLevel implements PossibleValueEnum<String>
          return (null);
       }
 
-      for(FieldAccessLevel value : FieldAccessLevel.values())
-      {
-         if(Objects.equals(value.name(), id))
-         {
-            return (value);
-         }
-      }
+      return (BY_ID.get(id));
+   }
 
-      return (null);
+
+
+   /*******************************************************************************
+    ** Get all values, ordered from least to most restrictive (e.g., the order in
+    ** which {@link #merge(FieldAccessLevel)} prefers them).
+    *******************************************************************************/
+   public static List<FieldAccessLevel> valuesInRestrictivenessOrder()
+   {
+      return (IN_RESTRICTIVENESS_ORDER);
    }
 
 
@@ -103,6 +115,17 @@ public enum FieldAccessLevel implements PossibleValueEnum<String>
 
 
 
+   /*******************************************************************************
+    ** Getter for restrictiveness
+    **
+    *******************************************************************************/
+   public int getRestrictiveness()
+   {
+      return restrictiveness;
+   }
+
+
+
    /*******************************************************************************
     **
     *******************************************************************************/
@@ -149,13 +172,52 @@ public enum FieldAccessLevel implements PossibleValueEnum<String>
     *
     ***************************************************************************/
    public void apply(QFieldMetaData fieldMetaData)
+   {
+      if(!isChangeableByAccessLevels(fieldMetaData))
+      {
+         return;
+      }
+
+      /////////////////////////////////////////////////////////////////////////////////////////////
+      // so - we'll only be here for "editable, optional" fields - where we can change 2 things: //
+      /////////////////////////////////////////////////////////////////////////////////////////////
+      if(this == READ_ONLY)
+      {
+         fieldMetaData.setIsEditable(false);
+      }
+      else if(this == EDITABLE_REQUIRED)
+      {
+         fieldMetaData.setIsRequired(true);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * check if {@link #apply(QFieldMetaData)} would change a field - i.e., only
+    * if the field is visible, editable, and optional, and this level makes it
+    * read-only or required.
+    ***************************************************************************/
+   public boolean wouldChange(QFieldMetaData fieldMetaData)
+   {
+      return (isChangeableByAccessLevels(fieldMetaData) && (this == READ_ONLY || this == EDITABLE_REQUIRED));
+   }
+
+
+
+   /***************************************************************************
+    * check if access levels are allowed to change a field at all - i.e., if
+    * it's visible, editable, and optional (shared by {@link #apply} and
+    * {@link #wouldChange}, so they can't disagree).
+    ***************************************************************************/
+   private static boolean isChangeableByAccessLevels(QFieldMetaData fieldMetaData)
    {
       if(fieldMetaData.getIsHidden())
       {
          //////////////////////////////////////////////////////////////////////////////////////
          // if the field is hidden, then no access level is allowed to un-hide it. so, noop. //
          //////////////////////////////////////////////////////////////////////////////////////
-         return;
+         return (false);
       }
 
       if(!fieldMetaData.getIsEditable())
@@ -165,7 +227,7 @@ public enum FieldAccessLevel implements PossibleValueEnum<String>
          // but, we don't actually have a hidden level - that's just the default if no  //
          // level is defined.  so, also noop if field is editable.                      //
          /////////////////////////////////////////////////////////////////////////////////
-         return;
+         return (false);
       }
 
       if(fieldMetaData.getIsRequired())
@@ -173,20 +235,10 @@ public enum FieldAccessLevel implements PossibleValueEnum<String>
          ////////////////////////////////////////////////////////////////////////////////////
          // if the field is required, we're not allowed to change it.  it must be entered. //
          ////////////////////////////////////////////////////////////////////////////////////
-         return;
+         return (false);
       }
 
-      /////////////////////////////////////////////////////////////////////////////////////////////
-      // so - we'll only be here for "editable, optional" fields - where we can change 2 things: //
-      /////////////////////////////////////////////////////////////////////////////////////////////
-      if(this == READ_ONLY)
-      {
-         fieldMetaData.setIsEditable(false);
-      }
-      else if(this == EDITABLE_REQUIRED)
-      {
-         fieldMetaData.setIsRequired(true);
-      }
+      return (true);
    }
 
 
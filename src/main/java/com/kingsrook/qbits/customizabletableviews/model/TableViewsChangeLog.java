@@ -0,0 +1,389 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.model;
+
+
+import java.time.Instant;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QField;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.data.QRecordEntity;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.audits.AuditLevel;
+import com.kingsrook.qqq.backend.core.model.metadata.audits.QAuditRules;
+import com.kingsrook.qqq.backend.core.model.metadata.layout.QIcon;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.MetaDataCustomizerInterface;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.annotations.QMetaDataProducingEntity;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.SectionFactory;
+
+
+/*******************************************************************************
+ ** QRecord Entity for TableViewsChangeLog table - a log of the changes made to
+ ** the table views tables (each with the scope of cached data that it affects),
+ ** which each node polls (by generation, i.e., id), so that edits made on one
+ ** node invalidate the cached views on all of them.
+ *******************************************************************************/
+@QMetaDataProducingEntity(
+   produceTableMetaData = true,
+   tableMetaDataCustomizer = TableViewsChangeLog.TableMetaDataCustomizer.class
+)
+public class TableViewsChangeLog extends QRecordEntity
+{
+   public static final String TABLE_NAME = "TableViewsChangeLog";
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public static class TableMetaDataCustomizer implements MetaDataCustomizerInterface<QTableMetaData>
+   {
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public QTableMetaData customizeMetaData(QInstance qInstance, QTableMetaData table) throws QException
+      {
+         table
+            .withIcon(new QIcon().withName("history"))
+            .withRecordLabelFormat("%s")
+            .withRecordLabelFields("id")
+            .withAuditRules(new QAuditRules().withAuditLevel(AuditLevel.NONE))
+            .withSection(SectionFactory.defaultT1("id", "nodeId"))
+            .withSection(SectionFactory.defaultT2("everything", "tableViewIds", "roleIds", "tableNames"))
+            .withSection(SectionFactory.defaultT3("createDate"));
+
+         return (table);
+      }
+   }
+
+
+
+   @QField(isEditable = false, isPrimaryKey = true)
+   private Integer id;
+
+   @QField(maxLength = 4000)
+   private String tableViewIds;
+
+   @QField(maxLength = 4000)
+   private String roleIds;
+
+   @QField(maxLength = 4000)
+   private String tableNames;
+
+   @QField()
+   private Boolean everything;
+
+   @QField(maxLength = 100)
+   private String nodeId;
+
+   @QField(isEditable = false)
+   private Instant createDate;
+
+
+
+   /*******************************************************************************
+    ** Default constructor
+    *******************************************************************************/
+   public TableViewsChangeLog()
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor that takes a QRecord
+    *******************************************************************************/
+   public TableViewsChangeLog(QRecord record)
+   {
+      populateFromQRecord(record);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for id
+    * @see #withId(Integer)
+    *******************************************************************************/
+   public Integer getId()
+   {
+      return (this.id);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for id
+    * @see #withId(Integer)
+    *******************************************************************************/
+   public void setId(Integer id)
+   {
+      this.id = id;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for id
+    *
+    * @param id
+    * the generation of the change - assigned (increasing) by the backend
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withId(Integer id)
+   {
+      this.id = id;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for tableViewIds
+    * @see #withTableViewIds(String)
+    *******************************************************************************/
+   public String getTableViewIds()
+   {
+      return (this.tableViewIds);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for tableViewIds
+    * @see #withTableViewIds(String)
+    *******************************************************************************/
+   public void setTableViewIds(String tableViewIds)
+   {
+      this.tableViewIds = tableViewIds;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for tableViewIds
+    *
+    * @param tableViewIds
+    * comma-separated ids of the table views affected by the change
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withTableViewIds(String tableViewIds)
+   {
+      this.tableViewIds = tableViewIds;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for roleIds
+    * @see #withRoleIds(String)
+    *******************************************************************************/
+   public String getRoleIds()
+   {
+      return (this.roleIds);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for roleIds
+    * @see #withRoleIds(String)
+    *******************************************************************************/
+   public void setRoleIds(String roleIds)
+   {
+      this.roleIds = roleIds;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for roleIds
+    *
+    * @param roleIds
+    * comma-separated ids of the roles affected by the change
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withRoleIds(String roleIds)
+   {
+      this.roleIds = roleIds;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for tableNames
+    * @see #withTableNames(String)
+    *******************************************************************************/
+   public String getTableNames()
+   {
+      return (this.tableNames);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for tableNames
+    * @see #withTableNames(String)
+    *******************************************************************************/
+   public void setTableNames(String tableNames)
+   {
+      this.tableNames = tableNames;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for tableNames
+    *
+    * @param tableNames
+    * comma-separated names of the (customizable) tables affected by the change
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withTableNames(String tableNames)
+   {
+      this.tableNames = tableNames;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for everything
+    * @see #withEverything(Boolean)
+    *******************************************************************************/
+   public Boolean getEverything()
+   {
+      return (this.everything);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for everything
+    * @see #withEverything(Boolean)
+    *******************************************************************************/
+   public void setEverything(Boolean everything)
+   {
+      this.everything = everything;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for everything
+    *
+    * @param everything
+    * whether the change affects everything (i.e., all caches should be cleared)
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withEverything(Boolean everything)
+   {
+      this.everything = everything;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for nodeId
+    * @see #withNodeId(String)
+    *******************************************************************************/
+   public String getNodeId()
+   {
+      return (this.nodeId);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for nodeId
+    * @see #withNodeId(String)
+    *******************************************************************************/
+   public void setNodeId(String nodeId)
+   {
+      this.nodeId = nodeId;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for nodeId
+    *
+    * @param nodeId
+    * identifier of the node (JVM) that made the change
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withNodeId(String nodeId)
+   {
+      this.nodeId = nodeId;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for createDate
+    * @see #withCreateDate(Instant)
+    *******************************************************************************/
+   public Instant getCreateDate()
+   {
+      return (this.createDate);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for createDate
+    * @see #withCreateDate(Instant)
+    *******************************************************************************/
+   public void setCreateDate(Instant createDate)
+   {
+      this.createDate = createDate;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for createDate
+    *
+    * @param createDate
+    * when the change was recorded
+    *
+    * @return this
+    *******************************************************************************/
+   public TableViewsChangeLog withCreateDate(Instant createDate)
+   {
+      this.createDate = createDate;
+      return (this);
+   }
+
+}
@@ -22,6 +22,7 @@
 package com.kingsrook.qbits.customizabletableviews;
 
 
+import com.kingsrook.qbits.customizabletableviews.logic.CustomizableTableViewsTablePersonalizer;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.instances.QInstanceEnricher;
@@ -65,6 +66,7 @@ public class BaseTest
       QContext.init(qInstance, new QSession());
 
       MemoryRecordStore.fullReset();
+      CustomizableTableViewsTablePersonalizer.clearMemoizations();
    }
 
 
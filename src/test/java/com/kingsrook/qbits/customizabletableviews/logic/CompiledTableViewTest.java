@@ -0,0 +1,370 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewWidget;
+import com.kingsrook.qbits.customizabletableviews.model.WidgetAccessLevel;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.AdornmentType;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.DisplayFormat;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.FieldAdornment;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QVirtualFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.layout.QIcon;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.SectionFactory;
+import org.junit.jupiter.api.Test;
+import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.EDITABLE_OPTIONAL;
+import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.EDITABLE_REQUIRED;
+import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.READ_ONLY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for CompiledTableView (and its FieldNameDictionary and
+ ** FieldAccessMatrix)
+ *******************************************************************************/
+class CompiledTableViewTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testFieldNameDictionary()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("dictionaryTable")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("name", QFieldType.STRING))
+         .withVirtualField(new QVirtualFieldMetaData("computed", QFieldType.STRING));
+
+      FieldNameDictionary dictionary = FieldNameDictionary.forTable(table);
+      assertEquals(List.of("id", "name", "computed"), dictionary.getNames());
+      assertEquals(0, dictionary.indexOf("id"));
+      assertEquals(2, dictionary.indexOf("computed"));
+      assertEquals(-1, dictionary.indexOf("notAField"));
+
+      ////////////////////////////////////////////////////////////////////////////
+      // the same table object, or a clone of it, shares a dictionary - but a   //
+      // changed version doesn't (and alternating between them doesn't replace) //
+      ////////////////////////////////////////////////////////////////////////////
+      assertSame(dictionary, FieldNameDictionary.forTable(table));
+      assertSame(dictionary, FieldNameDictionary.forTable(table.clone()));
+
+      QTableMetaData changedTable = table.clone();
+      changedTable.getField("name").setIsRequired(true);
+      FieldNameDictionary changedDictionary = FieldNameDictionary.forTable(changedTable);
+      assertNotSame(dictionary, changedDictionary);
+      assertSame(dictionary, FieldNameDictionary.forTable(table.clone()));
+      assertSame(changedDictionary, FieldNameDictionary.forTable(changedTable.clone()));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testCompile()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("compileTable")
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("c", QFieldType.STRING))
+         .withVirtualField(new QVirtualFieldMetaData("v", QFieldType.STRING));
+
+      CompiledTableView compiledTableView = CompiledTableView.compile(new TableView()
+         .withFields(List.of(
+            new TableViewField().withFieldName("compileTable.a").withAccessLevel(READ_ONLY),
+            new TableViewField().withFieldName("compileTable.b").withAccessLevel("invalid"),
+            new TableViewField().withFieldName("compileTable.v").withAccessLevel(READ_ONLY),
+            new TableViewField().withFieldName("compileTable.notAField").withAccessLevel(READ_ONLY),
+            new TableViewField().withFieldName("noTablePrefix").withAccessLevel(READ_ONLY)))
+         .withWidgets(List.of(
+            new TableViewWidget().withWidgetName("w1").withAccessLevel(WidgetAccessLevel.HAS_ACCESS))),
+         table);
+
+      assertTrue(compiledTableView.isCompiledFor(table));
+      assertTrue(compiledTableView.isCompiledFor(table.clone()));
+
+      QTableMetaData changedTable = table.clone();
+      changedTable.getField("c").setIsRequired(true);
+      assertFalse(compiledTableView.isCompiledFor(changedTable));
+
+      assertTrue(compiledTableView.isFieldInView("a"));
+      assertEquals(READ_ONLY, compiledTableView.getFieldAccessLevel("a"));
+
+      /////////////////////////////////////////////////////////////
+      // a field with a bad access level is in view, w/o a level //
+      /////////////////////////////////////////////////////////////
+      assertTrue(compiledTableView.isFieldInView("b"));
+      assertNull(compiledTableView.getFieldAccessLevel("b"));
+
+      assertFalse(compiledTableView.isFieldInView("c"));
+      assertTrue(compiledTableView.isFieldInView("v"));
+      assertFalse(compiledTableView.isFieldInView("notAField"));
+      assertFalse(compiledTableView.isFieldInView("noTablePrefix"));
+
+      assertTrue(compiledTableView.isWidgetInView("w1"));
+      assertFalse(compiledTableView.isWidgetInView("w2"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testGrantsWholeTable()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("wholeTable")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withVirtualField(new QVirtualFieldMetaData("v", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id", "a"))
+         .withSection(SectionFactory.defaultT2().withName("w").withWidgetName("w1"));
+
+      List<TableViewField> allFields = List.of(
+         new TableViewField().withFieldName("wholeTable.id").withAccessLevel(READ_ONLY),
+         new TableViewField().withFieldName("wholeTable.a").withAccessLevel(EDITABLE_OPTIONAL),
+         new TableViewField().withFieldName("wholeTable.v").withAccessLevel(READ_ONLY));
+      List<TableViewWidget> allWidgets = List.of(new TableViewWidget().withWidgetName("w1").withAccessLevel(WidgetAccessLevel.HAS_ACCESS));
+
+      ////////////////////////////////////////////////////////////////////////////////
+      // every field & widget, at levels that don't change anything (read-only on a //
+      // non-editable field is a no-op) - so the whole table is granted.            //
+      ////////////////////////////////////////////////////////////////////////////////
+      assertTrue(CompiledTableView.compile(new TableView().withFields(allFields).withWidgets(allWidgets), table).getGrantsWholeTable());
+
+      ///////////////////////////////////////////////////////
+      // but not if a field, or widget, is missing from it //
+      ///////////////////////////////////////////////////////
+      assertFalse(CompiledTableView.compile(new TableView().withFields(allFields.subList(0, 2)).withWidgets(allWidgets), table).getGrantsWholeTable());
+      assertFalse(CompiledTableView.compile(new TableView().withFields(allFields), table).getGrantsWholeTable());
+
+      /////////////////////////////////////////////////////
+      // nor if a level would change an (editable) field //
+      /////////////////////////////////////////////////////
+      assertFalse(CompiledTableView.compile(new TableView().withWidgets(allWidgets).withFields(List.of(
+         new TableViewField().withFieldName("wholeTable.id").withAccessLevel(READ_ONLY),
+         new TableViewField().withFieldName("wholeTable.a").withAccessLevel(EDITABLE_REQUIRED),
+         new TableViewField().withFieldName("wholeTable.v").withAccessLevel(READ_ONLY))), table).getGrantsWholeTable());
+
+      ///////////////////////////////////////////////////////////////////////
+      // nor if a section has a field that's not in the table (as applying //
+      // the view removes it), nor if compiled without a source table      //
+      ///////////////////////////////////////////////////////////////////////
+      QTableMetaData tableWithUnknownSectionField = table.clone().withSection(SectionFactory.defaultT3("notAField"));
+      assertFalse(CompiledTableView.compile(new TableView().withFields(allFields).withWidgets(allWidgets), tableWithUnknownSectionField).getGrantsWholeTable());
+      assertFalse(CompiledTableView.compile(new TableView().withFields(allFields).withWidgets(allWidgets), new FieldNameDictionary()).getGrantsWholeTable());
+   }
+
+
+
+   /*******************************************************************************
+    ** make sure that combining matrices gives the same answer as
+    ** FieldAccessLevel.merge, for all combinations of levels (including none).
+    *******************************************************************************/
+   @Test
+   void testCombineMatchesMerge()
+   {
+      List<FieldAccessLevel> levelsAndNull = new ArrayList<>(Arrays.asList(FieldAccessLevel.values()));
+      levelsAndNull.add(null);
+
+      for(FieldAccessLevel level1 : levelsAndNull)
+      {
+         for(FieldAccessLevel level2 : levelsAndNull)
+         {
+            FieldAccessMatrix matrix1 = new FieldAccessMatrix();
+            FieldAccessMatrix matrix2 = new FieldAccessMatrix();
+            if(level1 != null)
+            {
+               matrix1.set(0, level1);
+            }
+            if(level2 != null)
+            {
+               matrix2.set(0, level2);
+            }
+
+            FieldAccessLevel expected = level1 == null ? level2 : level1.merge(level2);
+            FieldAccessMatrix combined = FieldAccessMatrix.combine(List.of(matrix1, matrix2));
+            assertEquals(expected, combined.getAccessLevel(0), "Combining " + level1 + " and " + level2);
+            assertEquals(expected != null, combined.isInView(0));
+         }
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testMatrixSet()
+   {
+      FieldAccessMatrix matrix = new FieldAccessMatrix();
+      assertFalse(matrix.isInView(0));
+      assertFalse(matrix.isInView(-1));
+
+      matrix.set(0, null);
+      assertTrue(matrix.isInView(0));
+      assertNull(matrix.getAccessLevel(0));
+
+      ///////////////////////////////////////////////////////////////
+      // setting a field twice merges (least restrictive one wins) //
+      ///////////////////////////////////////////////////////////////
+      matrix.set(1, READ_ONLY);
+      matrix.set(1, EDITABLE_REQUIRED);
+      matrix.set(1, READ_ONLY);
+      assertEquals(EDITABLE_REQUIRED, matrix.getAccessLevel(1));
+      assertTrue(matrix.getMembers(EDITABLE_REQUIRED).get(1));
+      assertFalse(matrix.getMembers(READ_ONLY).get(1));
+
+      matrix.set(1, EDITABLE_OPTIONAL);
+      assertEquals(EDITABLE_OPTIONAL, matrix.getAccessLevel(1));
+      assertEquals(1, matrix.getMembers(EDITABLE_OPTIONAL).cardinality() + matrix.getMembers(EDITABLE_REQUIRED).cardinality() + matrix.getMembers(READ_ONLY).cardinality());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testFingerprint()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("fingerprintTable")
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("c", QFieldType.STRING));
+
+      TableViewField  a  = new TableViewField().withFieldName("fingerprintTable.a").withAccessLevel(READ_ONLY);
+      TableViewField  b  = new TableViewField().withFieldName("fingerprintTable.b").withAccessLevel(EDITABLE_OPTIONAL);
+      TableViewWidget w1 = new TableViewWidget().withWidgetName("w1").withAccessLevel(WidgetAccessLevel.HAS_ACCESS);
+      TableViewWidget w2 = new TableViewWidget().withWidgetName("w2").withAccessLevel(WidgetAccessLevel.HAS_ACCESS);
+
+      String fingerprint = CompiledTableView.compile(new TableView().withFields(List.of(a, b)).withWidgets(List.of(w1, w2)), table).getFingerprint();
+      assertEquals(64, fingerprint.length());
+
+      /////////////////////////////////////////////////////////////////////////////
+      // the order of fields & widgets, and fields not in the table, don't count //
+      /////////////////////////////////////////////////////////////////////////////
+      assertEquals(fingerprint, CompiledTableView.compile(new TableView().withFields(List.of(b, a)).withWidgets(List.of(w2, w1)), table).getFingerprint());
+      assertEquals(fingerprint, CompiledTableView.compile(new TableView().withName("other").withFields(List.of(b, a, new TableViewField().withFieldName("fingerprintTable.notAField").withAccessLevel(READ_ONLY))).withWidgets(List.of(w2, w1)), table).getFingerprint());
+
+      ///////////////////////////////////////////////////
+      // but access levels, fields, and widgets all do //
+      ///////////////////////////////////////////////////
+      TableViewField readOnlyB = new TableViewField().withFieldName("fingerprintTable.b").withAccessLevel(READ_ONLY);
+      assertNotEquals(fingerprint, CompiledTableView.compile(new TableView().withFields(List.of(a, readOnlyB)).withWidgets(List.of(w1, w2)), table).getFingerprint());
+      assertNotEquals(fingerprint, CompiledTableView.compile(new TableView().withFields(List.of(a)).withWidgets(List.of(w1, w2)), table).getFingerprint());
+      assertNotEquals(fingerprint, CompiledTableView.compile(new TableView().withFields(List.of(a, b)).withWidgets(List.of(w1)), table).getFingerprint());
+
+      //////////////////////////////////////////////////////////////////////
+      // and it's the same for a new version of the (same-shaped) table - //
+      // i.e., it doesn't depend on anything but the content of the view  //
+      //////////////////////////////////////////////////////////////////////
+      assertEquals(fingerprint, CompiledTableView.compile(new TableView().withFields(List.of(a, b)).withWidgets(List.of(w1, w2)), table.clone()).getFingerprint());
+   }
+
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testFingerprintIsStableAcrossRuns()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("stableTable")
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING));
+
+      ////////////////////////////////////////////////////////////////////////////
+      // a fingerprint is a hash of content only - so it's a known value, which //
+      // any other JVM (e.g., after a restart, or another node) also computes   //
+      ////////////////////////////////////////////////////////////////////////////
+      CompiledTableView compiledTableView = CompiledTableView.compile(new TableView()
+         .withFields(List.of(new TableViewField().withFieldName("stableTable.a").withAccessLevel(READ_ONLY)))
+         .withWidgets(List.of(new TableViewWidget().withWidgetName("w1").withAccessLevel(WidgetAccessLevel.HAS_ACCESS))), table);
+      assertEquals("e87618733230f58ef2800bcc564b5b8629df4326b343d33c01d50d4a405354d2", compiledTableView.getFingerprint());
+
+      /////////////////////////////////////////////////////////////////////////////
+      // table versions are the same for equal meta data, and change with it too //
+      /////////////////////////////////////////////////////////////////////////////
+      String tableVersion = CompiledTableView.computeTableVersion(table);
+      assertEquals(tableVersion, CompiledTableView.computeTableVersion(table.clone()));
+      assertNotEquals(tableVersion, CompiledTableView.computeTableVersion(table.clone().withLabel("Other Label")));
+      assertNotEquals(tableVersion, CompiledTableView.computeTableVersion(table.clone().withField(new QFieldMetaData("c", QFieldType.STRING))));
+   }
+
+
+
+   /*******************************************************************************
+    ** a table's version covers all of its meta data - not just the parts that
+    ** personalization reads (which are all its structure version covers).
+    *******************************************************************************/
+   @Test
+   void testTableVersionCoversAllMetaData()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("versionTable")
+         .withField(new QFieldMetaData("a", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("b", QFieldType.STRING));
+      String tableVersion     = CompiledTableView.computeTableVersion(table);
+      String structureVersion = CompiledTableView.computeStructureVersion(table);
+
+      QTableMetaData withDisplayFormat = table.clone();
+      withDisplayFormat.getField("a").setDisplayFormat(DisplayFormat.COMMAS);
+      assertNotEquals(tableVersion, CompiledTableView.computeTableVersion(withDisplayFormat));
+      assertEquals(structureVersion, CompiledTableView.computeStructureVersion(withDisplayFormat));
+
+      QTableMetaData withAdornment = table.clone();
+      withAdornment.getField("b").withFieldAdornment(new FieldAdornment(AdornmentType.CHIP));
+      assertNotEquals(tableVersion, CompiledTableView.computeTableVersion(withAdornment));
+      assertNotEquals(CompiledTableView.computeTableVersion(withDisplayFormat), CompiledTableView.computeTableVersion(withAdornment));
+      assertEquals(structureVersion, CompiledTableView.computeStructureVersion(withAdornment));
+
+      QTableMetaData withIcon = table.clone().withIcon(new QIcon().withName("star"));
+      assertNotEquals(tableVersion, CompiledTableView.computeTableVersion(withIcon));
+   }
+
+}
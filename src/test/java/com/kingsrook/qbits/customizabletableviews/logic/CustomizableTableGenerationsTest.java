@@ -0,0 +1,246 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTableGeneration;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for CustomizableTableGenerations
+ *******************************************************************************/
+class CustomizableTableGenerationsTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach() throws QException
+   {
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName("order").withIsActive(true),
+         new CustomizableTable().withId(2).withTableName("customer").withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(10).withCustomizableTableId(1).withName("a"))));
+   }
+
+
+
+   /*******************************************************************************
+    ** simulate two nodes, each with their own generations tracker.
+    *******************************************************************************/
+   @Test
+   void testTwoNodes() throws QException
+   {
+      List<TableViewsCacheInvalidation> appliedOnNodeA = new ArrayList<>();
+      List<TableViewsCacheInvalidation> appliedOnNodeB = new ArrayList<>();
+      CustomizableTableGenerations      nodeA          = new CustomizableTableGenerations(appliedOnNodeA::add);
+      CustomizableTableGenerations      nodeB          = new CustomizableTableGenerations(appliedOnNodeB::add);
+      nodeA.setCheckInterval(Duration.ZERO);
+      nodeB.setCheckInterval(Duration.ZERO);
+
+      ////////////////////////////////////////
+      // first checks just note generations //
+      ////////////////////////////////////////
+      nodeA.checkIfDue();
+      nodeB.checkIfDue();
+      assertEquals(0, appliedOnNodeA.size());
+      assertEquals(0, appliedOnNodeB.size());
+
+      /////////////////////////////////////////////////////////////////////////////
+      // an edit to a view on node A bumps the generation of the view's table... //
+      /////////////////////////////////////////////////////////////////////////////
+      nodeA.bump(new TableViewsCacheInvalidation().addTableViewId(10));
+      assertNotNull(getGeneration("order"));
+      assertNull(getGeneration("customer"));
+      assertEquals(1, nodeA.getBumpCount());
+
+      ///////////////////////////////////////////////////////////////////////
+      // ... which node B sees (just for that table) - as does node A, but //
+      // that's only the one extra invalidation of its own change.         //
+      ///////////////////////////////////////////////////////////////////////
+      nodeB.checkIfDue();
+      assertEquals(1, appliedOnNodeB.size());
+      assertEquals(Set.of("order"), appliedOnNodeB.get(0).getTableNames());
+      assertEquals(1, nodeB.getStaleTableCount());
+
+      nodeA.checkIfDue();
+      assertEquals(1, appliedOnNodeA.size());
+      nodeA.checkIfDue();
+      assertEquals(1, appliedOnNodeA.size());
+
+      ///////////////////////////////////////////////////////////////////
+      // everything is a single bump, that invalidates everything, and //
+      // generations only ever go up                                   //
+      ///////////////////////////////////////////////////////////////////
+      Integer orderGeneration = getGeneration("order");
+      nodeB.bump(new TableViewsCacheInvalidation().addTableName("order"));
+      nodeB.bump(TableViewsCacheInvalidation.ofEverything());
+      assertTrue(getGeneration("order") > orderGeneration);
+      assertNotNull(getGeneration(CustomizableTableGeneration.ALL_TABLES));
+      assertNull(getGeneration("customer"));
+
+      nodeA.checkIfDue();
+      assertEquals(2, appliedOnNodeA.size());
+      assertTrue(appliedOnNodeA.get(1).getEverything());
+   }
+
+
+
+   /*******************************************************************************
+    ** a deleted view can't be looked up to find its table - so deleting one bumps
+    ** the generation for all tables, which the other node sees as everything.
+    *******************************************************************************/
+   @Test
+   void testDeletedViewAcrossTwoNodes() throws QException
+   {
+      List<TableViewsCacheInvalidation> appliedOnNodeB = new ArrayList<>();
+      CustomizableTableGenerations      nodeA          = new CustomizableTableGenerations(i -> { });
+      CustomizableTableGenerations      nodeB          = new CustomizableTableGenerations(appliedOnNodeB::add);
+      nodeA.setCheckInterval(Duration.ZERO);
+      nodeB.setCheckInterval(Duration.ZERO);
+      nodeB.checkIfDue();
+
+      ///////////////////////////////////////////////////////////////////////
+      // by the time node A's post-delete invalidation is bumped, the view //
+      // (and its fields, widgets, and role-ints) are already gone         //
+      ///////////////////////////////////////////////////////////////////////
+      List<QRecord> deletedRecords = new QueryAction().execute(new QueryInput(TableView.TABLE_NAME)).getRecords();
+      new DeleteAction().execute(new DeleteInput(TableView.TABLE_NAME).withPrimaryKeys(List.of(10)));
+      nodeA.bump(TableViewsCacheInvalidation.forRecords(TableView.TABLE_NAME, deletedRecords, Optional.empty()));
+      assertNotNull(getGeneration(CustomizableTableGeneration.ALL_TABLES));
+
+      nodeB.checkIfDue();
+      assertEquals(1, appliedOnNodeB.size());
+      assertTrue(appliedOnNodeB.get(0).getEverything());
+   }
+
+
+
+   /*******************************************************************************
+    ** bumps are inserts of generation rows - so concurrent bumps can't be lost,
+    ** and the CustomizableTable records aren't touched.
+    *******************************************************************************/
+   @Test
+   void testBumpOnlyInsertsGenerations() throws QException
+   {
+      QRecord customizableTableBefore = GetAction.execute(CustomizableTable.TABLE_NAME, 1);
+
+      CustomizableTableGenerations nodeA = new CustomizableTableGenerations(i -> { });
+      CustomizableTableGenerations nodeB = new CustomizableTableGenerations(i -> { });
+      nodeA.setCheckInterval(Duration.ZERO);
+      nodeB.setCheckInterval(Duration.ZERO);
+
+      nodeA.bump(new TableViewsCacheInvalidation().addTableName("order"));
+      Integer afterA = getGeneration("order");
+      nodeB.bump(new TableViewsCacheInvalidation().addTableViewId(10));
+      Integer afterB = getGeneration("order");
+
+      assertTrue(afterB > afterA);
+      assertEquals(2, new QueryAction().execute(new QueryInput(CustomizableTableGeneration.TABLE_NAME)).getRecords().size());
+      assertEquals(customizableTableBefore.getValues(), GetAction.execute(CustomizableTable.TABLE_NAME, 1).getValues());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testCheckInterval()
+   {
+      List<TableViewsCacheInvalidation> applied = new ArrayList<>();
+      CustomizableTableGenerations      nodeA   = new CustomizableTableGenerations(i -> { });
+      CustomizableTableGenerations      nodeB   = new CustomizableTableGenerations(applied::add);
+      nodeA.setCheckInterval(Duration.ofMinutes(1));
+      nodeB.setCheckInterval(Duration.ofMinutes(1));
+
+      nodeB.checkIfDue();
+      nodeA.bump(new TableViewsCacheInvalidation().addTableName("customer"));
+
+      nodeB.checkIfDue();
+      assertEquals(0, applied.size());
+      assertEquals(1, nodeB.getCheckCount());
+
+      nodeB.check();
+      assertEquals(1, applied.size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDisabledByDefault() throws QException
+   {
+      CustomizableTableGenerations generations = new CustomizableTableGenerations(i -> { });
+      generations.bump(TableViewsCacheInvalidation.ofEverything());
+      generations.checkIfDue();
+
+      assertEquals(0, new QueryAction().execute(new QueryInput(CustomizableTableGeneration.TABLE_NAME)).getRecords().size());
+      assertEquals(0, generations.getCheckCount());
+   }
+
+
+
+   /***************************************************************************
+    * the current generation of a table - i.e., its greatest generation row id.
+    ***************************************************************************/
+   private Integer getGeneration(String tableName) throws QException
+   {
+      return (new QueryAction().execute(new QueryInput(CustomizableTableGeneration.TABLE_NAME)
+            .withFilter(new QQueryFilter(new QFilterCriteria("tableName", QCriteriaOperator.EQUALS, tableName))))
+         .getRecords().stream()
+         .map(r -> r.getValueInteger("id"))
+         .max(Integer::compare)
+         .orElse(null));
+   }
+
+}
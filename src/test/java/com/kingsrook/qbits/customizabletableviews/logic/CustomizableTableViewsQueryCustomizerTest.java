@@ -0,0 +1,542 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewRoleInt;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.QueryOrGetInputInterface;
+import com.kingsrook.qqq.backend.core.model.actions.tables.get.GetInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QVirtualFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinOn;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinType;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.Association;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.session.QUser;
+import com.kingsrook.qqq.backend.module.rdbms.jdbc.ConnectionManager;
+import com.kingsrook.qqq.backend.module.rdbms.jdbc.QueryManager;
+import com.kingsrook.qqq.backend.module.rdbms.model.metadata.RDBMSBackendMetaData;
+import com.kingsrook.qqq.backend.module.rdbms.model.metadata.RDBMSTableBackendDetails;
+import org.junit.jupiter.api.Test;
+import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.READ_ONLY;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for CustomizableTableViewsQueryCustomizer
+ *******************************************************************************/
+class CustomizableTableViewsQueryCustomizerTest extends BaseTest
+{
+   private static final QLogger LOG = QLogger.getLogger(CustomizableTableViewsQueryCustomizerTest.class);
+
+   private static final AtomicInteger virtualFieldComputations = new AtomicInteger();
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testFieldProjection() throws QException
+   {
+      CustomizableTableViewsQueryCustomizer customizer = new CustomizableTableViewsQueryCustomizer();
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("projectionTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("required", QFieldType.STRING).withIsRequired(true)));
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("projectionJoinTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("x", QFieldType.STRING)));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+
+      ///////////////////////////////////////////////////
+      // a table that isn't customizable is left as-is //
+      ///////////////////////////////////////////////////
+      QueryInput queryInput = new QueryInput("projectionTable");
+      assertSame(queryInput, customizer.customizeQueryInput(queryInput));
+      assertNull(queryInput.getFieldNamesToInclude());
+
+      insertViewForRole101("projectionTable", List.of("a"));
+
+      //////////////////////////////////////////////////////////////////////////
+      // once customizable, only the fields in the view (plus the always-keep //
+      // ones:  the primary key & required fields) are included               //
+      //////////////////////////////////////////////////////////////////////////
+      queryInput = customizer.customizeQueryInput(new QueryInput("projectionTable"));
+      assertEquals(Set.of("id", "a", "required"), queryInput.getFieldNamesToInclude());
+
+      /////////////////////////////////////////////////////////////////
+      // a query that already had fields to include is only narrowed //
+      /////////////////////////////////////////////////////////////////
+      queryInput = customizer.customizeQueryInput(new QueryInput("projectionTable").withFieldNamesToInclude(Set.of("a", "b")));
+      assertEquals(Set.of("a"), queryInput.getFieldNamesToInclude());
+
+      //////////////////////////////////////////////////////////////////////////////////////
+      // selected join tables add their visible fields (all, if they aren't customizable) //
+      //////////////////////////////////////////////////////////////////////////////////////
+      queryInput = customizer.customizeQueryInput(new QueryInput("projectionTable").withQueryJoin(new QueryJoin("projectionJoinTable").withSelect(true)));
+      assertEquals(Set.of("id", "a", "required", "projectionJoinTable.id", "projectionJoinTable.x"), queryInput.getFieldNamesToInclude());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testHiddenAssociationsAreNotLoaded() throws QException
+   {
+      CustomizableTableViewsQueryCustomizer customizer = new CustomizableTableViewsQueryCustomizer();
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("orderTable")
+         .withBackendName(MEMORY_BACKEND_NAME)
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withAssociation(new Association().withName("lines").withJoinName("orderJoinLineTable").withAssociatedTableName("lineTable"))
+         .withAssociation(new Association().withName("notes").withJoinName("orderJoinNoteTable").withAssociatedTableName("noteTable")));
+
+      for(String childTableName : List.of("lineTable", "noteTable"))
+      {
+         QContext.getQInstance().addTable(new QTableMetaData()
+            .withName(childTableName)
+            .withBackendName(MEMORY_BACKEND_NAME)
+            .withPrimaryKeyField("id")
+            .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+            .withField(new QFieldMetaData("orderId", QFieldType.INTEGER)));
+      }
+
+      QContext.getQInstance().addJoin(new QJoinMetaData().withName("orderJoinLineTable").withLeftTable("orderTable").withRightTable("lineTable").withType(JoinType.ONE_TO_MANY).withJoinOn(new JoinOn("id", "orderId")));
+      QContext.getQInstance().addJoin(new QJoinMetaData().withName("orderJoinNoteTable").withLeftTable("orderTable").withRightTable("noteTable").withType(JoinType.ONE_TO_MANY).withJoinOn(new JoinOn("id", "orderId")));
+
+      new InsertAction().execute(new InsertInput("orderTable").withRecords(List.of(new QRecord().withValue("id", 1))));
+      new InsertAction().execute(new InsertInput("lineTable").withRecords(List.of(new QRecord().withValue("id", 1).withValue("orderId", 1))));
+      new InsertAction().execute(new InsertInput("noteTable").withRecords(List.of(new QRecord().withValue("id", 1).withValue("orderId", 1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+
+      ////////////////////////////////////////////////////////////////////////////////
+      // make both child tables customizable - the note table with a view for 101,  //
+      // the line table with none, so to 101, it's hidden.  (the order table itself //
+      // isn't customizable - so its fields aren't projected.)                      //
+      ////////////////////////////////////////////////////////////////////////////////
+      insertViewForRole101("noteTable", List.of("orderId"));
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withTableName("lineTable").withIsActive(true))));
+
+      QueryInput queryInput = customizer.customizeQueryInput(new QueryInput("orderTable").withIncludeAssociations(true));
+      assertEquals(Set.of("notes"), Set.copyOf(queryInput.getAssociationNamesToInclude()));
+      assertNull(queryInput.getFieldNamesToInclude());
+
+      QRecord order = new QueryAction().execute(queryInput).getRecords().get(0);
+      assertEquals(1, order.getAssociatedRecords().get("notes").size());
+      assertNull(order.getAssociatedRecords().get("lines"));
+
+      /////////////////////////////////////////////////////////////////////
+      // queries that don't include associations aren't changed for them //
+      /////////////////////////////////////////////////////////////////////
+      assertNull(customizer.customizeQueryInput(new QueryInput("orderTable")).getAssociationNamesToInclude());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPossibleValueTranslationLimitedToView() throws QException
+   {
+      CustomizableTableViewsQueryCustomizer customizer = new CustomizableTableViewsQueryCustomizer();
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("translatedTable")
+         .withBackendName(MEMORY_BACKEND_NAME)
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("visibleTableId", QFieldType.INTEGER).withPossibleValueSourceName(CustomizableTable.TABLE_NAME))
+         .withField(new QFieldMetaData("hiddenTableId", QFieldType.INTEGER).withPossibleValueSourceName(CustomizableTable.TABLE_NAME)));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      insertViewForRole101("translatedTable", List.of("visibleTableId"));
+
+      Integer customizableTableId = new QueryAction().execute(new QueryInput(CustomizableTable.TABLE_NAME)).getRecords().get(0).getValueInteger("id");
+      new InsertAction().execute(new InsertInput("translatedTable").withRecords(List.of(
+         new QRecord().withValue("visibleTableId", customizableTableId).withValue("hiddenTableId", customizableTableId))));
+
+      /////////////////////////////////////////////////////////////////
+      // without customizing, both fields are translated & formatted //
+      /////////////////////////////////////////////////////////////////
+      QRecord record = new QueryAction().execute(new QueryInput("translatedTable").withShouldTranslatePossibleValues(true).withShouldGenerateDisplayValues(true)).getRecords().get(0);
+      assertNotNull(record.getDisplayValue("visibleTableId"));
+      assertNotNull(record.getDisplayValue("hiddenTableId"));
+
+      //////////////////////////////////////////////////////////////////////////
+      // customized, only the fields in the view are translated (& formatted) //
+      //////////////////////////////////////////////////////////////////////////
+      QueryInput queryInput = customizer.customizeQueryInput(new QueryInput("translatedTable").withShouldTranslatePossibleValues(true).withShouldGenerateDisplayValues(true));
+      assertEquals(Set.of("id", "visibleTableId"), queryInput.getFieldsToTranslatePossibleValues());
+
+      record = new QueryAction().execute(queryInput).getRecords().get(0);
+      assertEquals(customizableTableId, record.getValueInteger("visibleTableId"));
+      assertNotNull(record.getDisplayValue("visibleTableId"));
+      assertNull(record.getDisplayValue("hiddenTableId"));
+
+      /////////////////////////////////////////////////////////////////////////
+      // a query that already had fields to translate is only narrowed - and //
+      // queries that don't translate possible values aren't changed for it  //
+      /////////////////////////////////////////////////////////////////////////
+      queryInput = customizer.customizeQueryInput(new QueryInput("translatedTable").withShouldTranslatePossibleValues(true).withFieldsToTranslatePossibleValues(Set.of("visibleTableId", "hiddenTableId")));
+      assertEquals(Set.of("visibleTableId"), queryInput.getFieldsToTranslatePossibleValues());
+      assertNull(customizer.customizeQueryInput(new QueryInput("translatedTable")).getFieldsToTranslatePossibleValues());
+   }
+
+
+
+   /*******************************************************************************
+    ** integration test of the wiring that the README describes:  an application
+    ** runs its user queries through the customizer (and so, via QueryAction), and
+    ** gets back only what each user's view shows - while system queries that go
+    ** straight to QueryAction still see the whole table.
+    *******************************************************************************/
+   @Test
+   void testUserQueriesThroughQueryAction() throws Exception
+   {
+      QTableMetaData orderTable = new QTableMetaData()
+         .withName("userQueryOrder")
+         .withBackendName(RDBMS_BACKEND_NAME)
+         .withBackendDetails(new RDBMSTableBackendDetails().withTableName("user_query_order"))
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withBackendName("id").withIsEditable(false))
+         .withField(new QFieldMetaData("orderNo", QFieldType.STRING).withBackendName("order_no"))
+         .withField(new QFieldMetaData("margin", QFieldType.STRING).withBackendName("margin"))
+         .withField(new QFieldMetaData("customerId", QFieldType.INTEGER).withBackendName("customer_id"));
+      QTableMetaData customerTable = new QTableMetaData()
+         .withName("userQueryCustomer")
+         .withBackendName(RDBMS_BACKEND_NAME)
+         .withBackendDetails(new RDBMSTableBackendDetails().withTableName("user_query_customer"))
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withBackendName("id").withIsEditable(false))
+         .withField(new QFieldMetaData("name", QFieldType.STRING).withBackendName("name"))
+         .withField(new QFieldMetaData("creditLimit", QFieldType.STRING).withBackendName("credit_limit"));
+      QContext.getQInstance().addTable(orderTable);
+      QContext.getQInstance().addTable(customerTable);
+      QContext.getQInstance().addJoin(new QJoinMetaData().withLeftTable(orderTable.getName()).withRightTable(customerTable.getName()).withInferredName().withType(JoinType.MANY_TO_ONE).withJoinOn(new JoinOn("customerId", "id")));
+
+      RDBMSBackendMetaData backend = (RDBMSBackendMetaData) QContext.getQInstance().getBackend(RDBMS_BACKEND_NAME);
+      try(Connection connection = new ConnectionManager().getConnection(backend))
+      {
+         QueryManager.executeUpdate(connection, "DROP TABLE IF EXISTS user_query_order");
+         QueryManager.executeUpdate(connection, "DROP TABLE IF EXISTS user_query_customer");
+         QueryManager.executeUpdate(connection, "CREATE TABLE user_query_order (id INT AUTO_INCREMENT PRIMARY KEY, order_no VARCHAR(100), margin VARCHAR(100), customer_id INT)");
+         QueryManager.executeUpdate(connection, "CREATE TABLE user_query_customer (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100), credit_limit VARCHAR(100))");
+      }
+
+      new InsertAction().execute(new InsertInput(customerTable.getName()).withRecords(List.of(new QRecord().withValue("name", "Acme").withValue("creditLimit", "10000"))));
+      new InsertAction().execute(new InsertInput(orderTable.getName()).withRecords(List.of(new QRecord().withValue("orderNo", "A-1").withValue("margin", "42%").withValue("customerId", 1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      insertViewForRole101(orderTable.getName(), List.of("orderNo", "customerId"));
+      insertViewForRole101(customerTable.getName(), List.of("name"));
+
+      //////////////////////////////////////////////////////////////////////
+      // a user query run through the customizer only reads what the view //
+      // shows - of the table itself, and of the joined table.            //
+      //////////////////////////////////////////////////////////////////////
+      CustomizableTableViewsQueryCustomizer customizer = new CustomizableTableViewsQueryCustomizer();
+      QRecord userRecord = customizer.execute(new QueryInput(orderTable.getName()).withQueryJoin(new QueryJoin(customerTable.getName()).withSelect(true))).getRecords().get(0);
+      assertEquals("A-1", userRecord.getValueString("orderNo"));
+      assertEquals("Acme", userRecord.getValueString("userQueryCustomer.name"));
+      assertTrue(userRecord.getValues().containsKey("orderNo"));
+      assertFalse(userRecord.getValues().containsKey("margin"));
+      assertFalse(userRecord.getValues().containsKey("userQueryCustomer.creditLimit"));
+
+      ////////////////////////////////////////////////////////////////
+      // a role with no view of the table only gets the always-kept //
+      // fields (here, just the primary key)                        //
+      ////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "102");
+      QRecord otherRoleRecord = customizer.execute(new QueryInput(orderTable.getName())).getRecords().get(0);
+      assertEquals(Set.of("id"), otherRoleRecord.getValues().keySet());
+
+      /////////////////////////////////////////////////////////////////////////
+      // while a system query, straight to QueryAction, sees the whole table //
+      /////////////////////////////////////////////////////////////////////////
+      QRecord systemRecord = new QueryAction().execute(new QueryInput(orderTable.getName()).withQueryJoin(new QueryJoin(customerTable.getName()).withSelect(true))).getRecords().get(0);
+      assertEquals("42%", systemRecord.getValueString("margin"));
+      assertEquals("10000", systemRecord.getValueString("userQueryCustomer.creditLimit"));
+   }
+
+
+
+   /*******************************************************************************
+    ** benchmark of the I/O that projection saves, when querying a wide table in
+    ** the (H2) RDBMS backend, for a user whose view only has a few of its fields.
+    *******************************************************************************/
+   @Test
+   void testFieldProjectionOnRdbms() throws Exception
+   {
+      int noOfColumns = 100;
+      int noOfRows    = 1000;
+
+      ////////////////////////////////////////////////////////////
+      // create a wide table in the database, and its meta data //
+      ////////////////////////////////////////////////////////////
+      QTableMetaData table = new QTableMetaData()
+         .withName("wideTable")
+         .withBackendName(RDBMS_BACKEND_NAME)
+         .withBackendDetails(new RDBMSTableBackendDetails().withTableName("wide_table"))
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withBackendName("id").withIsEditable(false));
+
+      StringBuilder ddl = new StringBuilder("CREATE TABLE wide_table (id INT AUTO_INCREMENT PRIMARY KEY");
+      for(int i = 0; i < noOfColumns; i++)
+      {
+         table.withField(new QFieldMetaData("column" + i, QFieldType.STRING).withBackendName("column_" + i));
+         ddl.append(", column_").append(i).append(" VARCHAR(100)");
+      }
+      ddl.append(")");
+      QContext.getQInstance().addTable(table);
+
+      RDBMSBackendMetaData backend = (RDBMSBackendMetaData) QContext.getQInstance().getBackend(RDBMS_BACKEND_NAME);
+      try(Connection connection = new ConnectionManager().getConnection(backend))
+      {
+         QueryManager.executeUpdate(connection, "DROP TABLE IF EXISTS wide_table");
+         QueryManager.executeUpdate(connection, ddl.toString());
+      }
+
+      List<QRecord> records = new ArrayList<>();
+      for(int row = 0; row < noOfRows; row++)
+      {
+         QRecord record = new QRecord();
+         for(int i = 0; i < noOfColumns; i++)
+         {
+            record.setValue("column" + i, "value " + row + " of column " + i);
+         }
+         records.add(record);
+      }
+      new InsertAction().execute(new InsertInput(table.getName()).withRecords(records));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      insertViewForRole101(table.getName(), List.of("column0", "column1"));
+
+      ////////////////////////////////////////////////////////////////////
+      // query the table as-is, then with the view's projection applied //
+      ////////////////////////////////////////////////////////////////////
+      long          fullStart      = System.nanoTime();
+      List<QRecord> fullRecords    = new QueryAction().execute(new QueryInput(table.getName())).getRecords();
+      long          fullNanos      = System.nanoTime() - fullStart;
+      long          projectedStart = System.nanoTime();
+      List<QRecord> projected      = new QueryAction().execute(new CustomizableTableViewsQueryCustomizer().customizeQueryInput(new QueryInput(table.getName()))).getRecords();
+      long          projectedNanos = System.nanoTime() - projectedStart;
+
+      assertEquals(noOfRows, fullRecords.size());
+      assertEquals(noOfRows, projected.size());
+      assertEquals(Set.of("id", "column0", "column1"), projected.get(0).getValues().keySet());
+      assertEquals(fullRecords.get(0).getValue("column1"), projected.get(0).getValue("column1"));
+
+      long fullValueChars      = countValueChars(fullRecords);
+      long projectedValueChars = countValueChars(projected);
+      assertTrue(projectedValueChars * 10 < fullValueChars, "Projection should read far less data");
+
+      LOG.info("Field projection benchmark", logPair("rows", noOfRows), logPair("columns", noOfColumns + 1),
+         logPair("fullValueChars", fullValueChars), logPair("projectedValueChars", projectedValueChars),
+         logPair("fullMillis", fullNanos / 1_000_000), logPair("projectedMillis", projectedNanos / 1_000_000));
+   }
+
+
+
+   /*******************************************************************************
+    ** benchmark of the virtual field computations that projection saves, when
+    ** querying a table whose post-query customizer computes its virtual fields,
+    ** for a user whose view only has one of them.
+    *******************************************************************************/
+   @Test
+   void testHiddenVirtualFieldsAreNotComputed() throws QException
+   {
+      int noOfRows = 10_000;
+
+      QTableMetaData table = new QTableMetaData()
+         .withName("virtualFieldsTable")
+         .withBackendName(MEMORY_BACKEND_NAME)
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("name", QFieldType.STRING))
+         .withVirtualField(new QVirtualFieldMetaData("visibleComputed", QFieldType.STRING))
+         .withVirtualField(new QVirtualFieldMetaData("hiddenComputed", QFieldType.STRING))
+         .withCustomizer(TableCustomizers.POST_QUERY_RECORD, new QCodeReference(VirtualFieldsPostQueryCustomizer.class));
+      QContext.getQInstance().addTable(table);
+
+      List<QRecord> records = new ArrayList<>();
+      for(int row = 0; row < noOfRows; row++)
+      {
+         records.add(new QRecord().withValue("name", "name " + row));
+      }
+      new InsertAction().execute(new InsertInput(table.getName()).withRecords(records));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      insertViewForRole101(table.getName(), List.of("name", "visibleComputed"));
+
+      ///////////////////////////////////////////////////////////////////////
+      // query the table as-is (computing both virtual fields, per record) //
+      // then with the view's projection applied (computing just one)      //
+      ///////////////////////////////////////////////////////////////////////
+      virtualFieldComputations.set(0);
+      long          fullStart        = System.nanoTime();
+      List<QRecord> fullRecords      = new QueryAction().execute(new QueryInput(table.getName())).getRecords();
+      long          fullNanos        = System.nanoTime() - fullStart;
+      int           fullComputations = virtualFieldComputations.getAndSet(0);
+
+      QueryInput projectedInput = new CustomizableTableViewsQueryCustomizer().customizeQueryInput(new QueryInput(table.getName()));
+      assertEquals(Set.of("id", "name", "visibleComputed"), projectedInput.getFieldNamesToInclude());
+      assertEquals(Set.of("visibleComputed"), CustomizableTableViewsQueryCustomizer.getVirtualFieldNamesToCompute(projectedInput));
+
+      /////////////////////////////////////////////////////////////////////
+      // only queries are projected - a get computes every virtual field //
+      /////////////////////////////////////////////////////////////////////
+      assertEquals(Set.of("visibleComputed", "hiddenComputed"), CustomizableTableViewsQueryCustomizer.getVirtualFieldNamesToCompute(new GetInput(table.getName())));
+
+      long          projectedStart        = System.nanoTime();
+      List<QRecord> projected             = new QueryAction().execute(projectedInput).getRecords();
+      long          projectedNanos        = System.nanoTime() - projectedStart;
+      int           projectedComputations = virtualFieldComputations.getAndSet(0);
+
+      assertEquals(noOfRows, fullRecords.size());
+      assertEquals(noOfRows, projected.size());
+      assertEquals(2 * noOfRows, fullComputations);
+      assertEquals(noOfRows, projectedComputations);
+      assertEquals(fullRecords.get(0).getValue("visibleComputed"), projected.get(0).getValue("visibleComputed"));
+      assertNull(projected.get(0).getValue("hiddenComputed"));
+
+      LOG.info("Virtual field computation benchmark", logPair("rows", noOfRows),
+         logPair("fullComputations", fullComputations), logPair("projectedComputations", projectedComputations),
+         logPair("fullMillis", fullNanos / 1_000_000), logPair("projectedMillis", projectedNanos / 1_000_000));
+   }
+
+
+
+   /***************************************************************************
+    * count the characters in the (string forms of the) values of records - as
+    * a proxy for the data read from the backend & transferred.
+    ***************************************************************************/
+   private long countValueChars(List<QRecord> records)
+   {
+      return (records.stream()
+         .flatMap(record -> record.getValues().values().stream())
+         .filter(Objects::nonNull)
+         .mapToLong(value -> String.valueOf(value).length())
+         .sum());
+   }
+
+
+
+   /***************************************************************************
+    * make a table customizable, with a view (for role 101) of some fields.
+    ***************************************************************************/
+   private void insertViewForRole101(String tableName, List<String> fieldNames) throws QException
+   {
+      Integer customizableTableId = new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withTableName(tableName).withIsActive(true)))).getRecords().get(0).getValueInteger("id");
+
+      List<TableViewField> fields = fieldNames.stream().map(fieldName -> new TableViewField().withFieldName(tableName + "." + fieldName).withAccessLevel(READ_ONLY)).toList();
+      Integer tableViewId = new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withCustomizableTableId(customizableTableId).withName("view").withFields(fields)))).getRecords().get(0).getValueInteger("id");
+
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(tableViewId))));
+   }
+
+
+
+   /***************************************************************************
+    * post-query customizer that computes virtual fields (counting each value
+    * it computes) - but only the ones the query asks for.
+    ***************************************************************************/
+   public static class VirtualFieldsPostQueryCustomizer implements TableCustomizerInterface
+   {
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public List<QRecord> postQuery(QueryOrGetInputInterface queryInput, List<QRecord> records) throws QException
+      {
+         Set<String> virtualFieldNames = CustomizableTableViewsQueryCustomizer.getVirtualFieldNamesToCompute(queryInput);
+         for(QRecord record : records)
+         {
+            for(String virtualFieldName : virtualFieldNames)
+            {
+               virtualFieldComputations.incrementAndGet();
+               record.setValue(virtualFieldName, virtualFieldName + " of " + record.getValueString("name"));
+            }
+         }
+         return (records);
+      }
+   }
+
+}
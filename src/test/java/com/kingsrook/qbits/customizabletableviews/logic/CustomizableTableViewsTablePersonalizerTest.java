@@ -22,6 +22,7 @@
 package com.kingsrook.qbits.customizabletableviews.logic;
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -29,9 +30,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.CustomizableTableViewsQBitConfig;
 import com.kingsrook.qbits.customizabletableviews.QFieldMetaDataAssert;
 import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
 import com.kingsrook.qbits.customizabletableviews.model.CustomizableTableViewsFieldMetaData;
@@ -41,14 +49,19 @@ import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
 import com.kingsrook.qbits.customizabletableviews.model.TableViewRoleInt;
 import com.kingsrook.qbits.customizabletableviews.model.TableViewWidget;
 import com.kingsrook.qbits.customizabletableviews.model.WidgetAccessLevel;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
 import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
 import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.AbstractTableActionInput;
 import com.kingsrook.qqq.backend.core.model.actions.metadata.TableMetaDataInput;
 import com.kingsrook.qqq.backend.core.model.actions.metadata.personalization.TableMetaDataPersonalizerInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.QInputSource;
+import com.kingsrook.qqq.backend.core.model.actions.tables.QueryOrGetInputInterface;
 import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
@@ -56,6 +69,10 @@ import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.DisplayFormat;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.DynamicDefaultValueBehavior;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
@@ -65,6 +82,8 @@ import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinType;
 import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.security.MultiRecordSecurityLock;
 import com.kingsrook.qqq.backend.core.model.metadata.security.RecordSecurityLock;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.Association;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.ExposedJoin;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.SectionFactory;
 import com.kingsrook.qqq.backend.core.model.session.QUser;
@@ -77,6 +96,7 @@ import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -390,6 +410,247 @@ class CustomizableTableViewsTablePersonalizerTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testEffectiveTableViewsAreSharedByRoleSet() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      String tableName = "tableForRoleSets";
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName(tableName)
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING)));
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(tableName).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a").withFields(List.of(new TableViewField().withFieldName(tableName + ".a").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("b").withFields(List.of(new TableViewField().withFieldName(tableName + ".b").withAccessLevel(EDITABLE_OPTIONAL)))
+      )));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(2)
+      )));
+
+      //////////////////////////////////////////////////////////////////////////////
+      // two different users, with the same roles (in a different order & format) //
+      // get the very same effective view                                         //
+      //////////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1,2");
+      TableView viewForFirstUser = personalizer.getEffectiveTableViewForCurrentSession(tableName);
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "2, 1,2");
+      assertSame(viewForFirstUser, personalizer.getEffectiveTableViewForCurrentSession(tableName));
+      assertEquals(2, viewForFirstUser.getFields().size());
+
+      ////////////////////////////////////////////////////////////////////////
+      // if that user's roles change, they get the view for their new roles //
+      ////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "2");
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession(tableName))
+         .isNotNull()
+         .extracting("name").isEqualTo("b");
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testEditsOnlyInvalidateAffectedViews() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      String tableName = "tableForScopedInvalidation";
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName(tableName)
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("c", QFieldType.STRING)));
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(tableName).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a").withFields(List.of(new TableViewField().withFieldName(tableName + ".a").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("b").withFields(List.of(new TableViewField().withFieldName(tableName + ".b").withAccessLevel(EDITABLE_OPTIONAL)))
+      )));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(2)
+      )));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1");
+      TableView viewForRole1 = personalizer.getEffectiveTableViewForCurrentSession(tableName);
+      QContext.getQSession().setValue("roleIds", "2");
+      TableView viewForRole2 = personalizer.getEffectiveTableViewForCurrentSession(tableName);
+
+      //////////////////////////////////////////////////////////////////////////
+      // adding a field to view 1 evicts role 1's view, but not role 2's view //
+      //////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(TableViewField.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewField().withTableViewId(1).withFieldName(tableName + ".c").withAccessLevel(READ_ONLY))));
+
+      QContext.getQSession().setValue("roleIds", "2");
+      assertSame(viewForRole2, personalizer.getEffectiveTableViewForCurrentSession(tableName));
+
+      QContext.getQSession().setValue("roleIds", "1");
+      TableView newViewForRole1 = personalizer.getEffectiveTableViewForCurrentSession(tableName);
+      assertNotSame(viewForRole1, newViewForRole1);
+      assertEquals(2, newViewForRole1.getFields().size());
+
+      /////////////////////////////////////////////////////////////
+      // giving role 2 access to view 1 evicts role 2's view too //
+      /////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(2).withTableViewId(1))));
+
+      QContext.getQSession().setValue("roleIds", "2");
+      TableView newViewForRole2 = personalizer.getEffectiveTableViewForCurrentSession(tableName);
+      assertNotSame(viewForRole2, newViewForRole2);
+      assertEquals(3, newViewForRole2.getFields().size());
+   }
+
+
+
+   /*******************************************************************************
+    ** an edit made while an effective view is being loaded (after the load read
+    ** the views, but before it stored its result) mustn't leave the pre-edit
+    ** view memoized - even though the load hasn't registered its key yet.
+    *******************************************************************************/
+   @Test
+   void testInvalidationDuringLoad() throws Exception
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      String tableName = "tableForInFlightInvalidation";
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName(tableName)
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING)));
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(tableName).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a").withFields(List.of(new TableViewField().withFieldName(tableName + ".a").withAccessLevel(EDITABLE_OPTIONAL))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1");
+
+      ////////////////////////////////////////////////////////////////////////////
+      // block the load right after it has queried the table views for the role //
+      ////////////////////////////////////////////////////////////////////////////
+      QContext.getQInstance().getTable(TableView.TABLE_NAME).withCustomizer(TableCustomizers.POST_QUERY_RECORD, new QCodeReference(BlockingPostQueryCustomizer.class));
+      BlockingPostQueryCustomizer.loadStarted = new CountDownLatch(1);
+      BlockingPostQueryCustomizer.releaseLoad = new CountDownLatch(1);
+      BlockingPostQueryCustomizer.blockNextQuery.set(true);
+
+      CapturedContext capturedContext = QContext.capture();
+      ExecutorService executorService = Executors.newSingleThreadExecutor();
+      try
+      {
+         Future<TableView> blockedLoad = executorService.submit(() ->
+         {
+            QContext.init(capturedContext);
+            try
+            {
+               return (personalizer.getEffectiveTableViewForCurrentSession(tableName));
+            }
+            finally
+            {
+               QContext.clear();
+            }
+         });
+         assertTrue(BlockingPostQueryCustomizer.loadStarted.await(5, TimeUnit.SECONDS));
+
+         ////////////////////////////////////////////////////////////////////
+         // edit the view while the load is blocked - then let it complete //
+         ////////////////////////////////////////////////////////////////////
+         new InsertAction().execute(new InsertInput(TableViewField.TABLE_NAME).withRecordEntities(List.of(
+            new TableViewField().withTableViewId(1).withFieldName(tableName + ".b").withAccessLevel(READ_ONLY))));
+         BlockingPostQueryCustomizer.releaseLoad.countDown();
+         assertEquals(1, blockedLoad.get(5, TimeUnit.SECONDS).getFields().size());
+      }
+      finally
+      {
+         BlockingPostQueryCustomizer.releaseLoad.countDown();
+         executorService.shutdownNow();
+      }
+
+      ////////////////////////////////////////////////////////////////////
+      // the blocked load's (pre-edit) view wasn't stored - so the next //
+      // request loads the edited view.                                 //
+      ////////////////////////////////////////////////////////////////////
+      assertEquals(2, personalizer.getEffectiveTableViewForCurrentSession(tableName).getFields().size());
+   }
+
+
+
+   /***************************************************************************
+    * post-query customizer that (once armed) blocks the next query it sees,
+    * until it's released.
+    ***************************************************************************/
+   public static class BlockingPostQueryCustomizer implements TableCustomizerInterface
+   {
+      static final AtomicBoolean     blockNextQuery = new AtomicBoolean(false);
+      static volatile CountDownLatch loadStarted    = new CountDownLatch(0);
+      static volatile CountDownLatch releaseLoad    = new CountDownLatch(0);
+
+
+
+      /***************************************************************************
+       *
+       ***************************************************************************/
+      @Override
+      public List<QRecord> postQuery(QueryOrGetInputInterface queryInput, List<QRecord> records) throws QException
+      {
+         if(blockNextQuery.compareAndSet(true, false))
+         {
+            loadStarted.countDown();
+            try
+            {
+               releaseLoad.await(5, TimeUnit.SECONDS);
+            }
+            catch(InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+         }
+         return (records);
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testGetRoleIdsForCurrentSession()
+   {
+      QContext.getQSession().setValue("roleIds", null);
+      assertEquals("", CustomizableTableViewsTablePersonalizer.getRoleSetKey(CustomizableTableViewsTablePersonalizer.getRoleIdsForCurrentSession()));
+
+      QContext.getQSession().setValue("roleIds", "");
+      assertEquals("", CustomizableTableViewsTablePersonalizer.getRoleSetKey(CustomizableTableViewsTablePersonalizer.getRoleIdsForCurrentSession()));
+
+      QContext.getQSession().setValue("roleIds", "3,1,2");
+      assertEquals("1,2,3", CustomizableTableViewsTablePersonalizer.getRoleSetKey(CustomizableTableViewsTablePersonalizer.getRoleIdsForCurrentSession()));
+
+      QContext.getQSession().setValue("roleIds", "10, 2,,10");
+      assertEquals("2,10", CustomizableTableViewsTablePersonalizer.getRoleSetKey(CustomizableTableViewsTablePersonalizer.getRoleIdsForCurrentSession()));
+   }
+
+
+
    /***************************************************************************
     *
     ***************************************************************************/
@@ -782,6 +1043,71 @@ class CustomizableTableViewsTablePersonalizerTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    ** the "always keep" rules are evaluated once per table (and kind of action),
+    ** including any rules added by a subclass.
+    *******************************************************************************/
+   @Test
+   void testAlwaysKeepFieldMasks()
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("maskTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("createDate", QFieldType.DATE_TIME).withBehavior(DynamicDefaultValueBehavior.CREATE_DATE))
+         .withField(new QFieldMetaData("keptBySubclass", QFieldType.STRING))
+         .withField(new QFieldMetaData("optional", QFieldType.STRING));
+
+      CountingPersonalizer personalizer      = new CountingPersonalizer();
+      CompiledTableView    compiledTableView = CompiledTableView.compile(new TableView().withFields(List.of()), table);
+
+      assertEquals(Set.of("id", "keptBySubclass"), personalizer.getFieldsToKeepForTable(compiledTableView, table.clone(), new QueryInput()).keySet());
+      int ruleCallsAfterFirstRequest = personalizer.ruleCalls;
+      assertTrue(ruleCallsAfterFirstRequest > 0);
+
+      ////////////////////////////////////////////////////////////////////////
+      // subsequent requests (of either kind) use the masks, not the rules. //
+      ////////////////////////////////////////////////////////////////////////
+      assertEquals(Set.of("id", "keptBySubclass"), personalizer.getFieldsToKeepForTable(compiledTableView, table.clone(), new QueryInput()).keySet());
+      assertEquals(Set.of("id", "createDate", "keptBySubclass"), personalizer.getFieldsToKeepForTable(compiledTableView, table.clone(), new UpdateInput()).keySet());
+      assertEquals(ruleCallsAfterFirstRequest, personalizer.ruleCalls);
+
+      ///////////////////////////////////////////////////////////////////////////
+      // the base class has its own masks, without the subclass's extra rule - //
+      // and a new version of the table gets new masks.                        //
+      ///////////////////////////////////////////////////////////////////////////
+      assertEquals(Set.of("id"), new CustomizableTableViewsTablePersonalizer().getFieldsToKeepForTable(compiledTableView, table.clone(), new QueryInput()).keySet());
+
+      QTableMetaData newVersionOfTable = table.clone();
+      newVersionOfTable.getField("optional").setIsRequired(true);
+      assertEquals(Set.of("id", "keptBySubclass", "optional"), personalizer.getFieldsToKeepForTable(CompiledTableView.compile(new TableView(), newVersionOfTable), newVersionOfTable.clone(), new QueryInput()).keySet());
+      assertTrue(personalizer.ruleCalls > ruleCallsAfterFirstRequest);
+   }
+
+
+
+   /***************************************************************************
+    ** personalizer subclass, which adds a rule, and counts calls to the rules.
+    ***************************************************************************/
+   public static class CountingPersonalizer extends CustomizableTableViewsTablePersonalizer
+   {
+      private int ruleCalls = 0;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      protected boolean shouldKeepFieldDueToRules(QTableMetaData cloneTable, QFieldMetaData field, AbstractTableActionInput tableActionInput)
+      {
+         ruleCalls++;
+         return (field.getName().equals("keptBySubclass") || super.shouldKeepFieldDueToRules(cloneTable, field, tableActionInput));
+      }
+   }
+
+
+
    /*******************************************************************************
     **
     *******************************************************************************/
@@ -903,6 +1229,12 @@ class CustomizableTableViewsTablePersonalizerTest extends BaseTest
       QContext.getQInstance().addJoin(new QJoinMetaData().withLeftTable("baseTable").withRightTable("joinTable").withInferredName().withType(JoinType.ONE_TO_ONE).withJoinOn(new JoinOn("id", "joinField")));
       baseTable.getSection("s1").getFieldNames().add("joinTable.joinField");
 
+      ///////////////////////////////////////////////////////////////////////////////////
+      // personalized tables are memoized - so since we just changed the meta data in- //
+      // place (vs. through a new instance), clear memoizations to see the new section //
+      ///////////////////////////////////////////////////////////////////////////////////
+      CustomizableTableViewsTablePersonalizer.clearMemoizations();
+
       //////////////////////////////////////////
       // by default, should get the joinField //
       //////////////////////////////////////////
@@ -941,6 +1273,1074 @@ class CustomizableTableViewsTablePersonalizerTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWholeTableFastPath() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData baseTable = new QTableMetaData()
+         .withName("baseTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("optional", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("optional").withName("s1"))
+         .withSection(SectionFactory.defaultT2().withWidgetName("lilWidgy").withName("w0"));
+      QContext.getQInstance().addTable(baseTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(baseTable.getName()).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("all")
+            .withFields(List.of(
+               new TableViewField().withFieldName(baseTable.getName() + ".id").withAccessLevel(READ_ONLY),
+               new TableViewField().withFieldName(baseTable.getName() + ".optional").withAccessLevel(EDITABLE_OPTIONAL)))
+            .withWidgets(List.of(new TableViewWidget().withWidgetName("lilWidgy").withAccessLevel(WidgetAccessLevel.HAS_ACCESS))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("readOnly")
+            .withFields(List.of(
+               new TableViewField().withFieldName(baseTable.getName() + ".id").withAccessLevel(READ_ONLY),
+               new TableViewField().withFieldName(baseTable.getName() + ".optional").withAccessLevel(READ_ONLY)))
+            .withWidgets(List.of(new TableViewWidget().withWidgetName("lilWidgy").withAccessLevel(WidgetAccessLevel.HAS_ACCESS))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(2))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      TableMetaDataPersonalizerInput input = new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER);
+
+      ////////////////////////////////////////////////////////////////////
+      // a view that grants the whole table gives back the table itself //
+      ////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "1");
+      long countBefore = CustomizableTableViewsTablePersonalizer.getWholeTableFastPathCount();
+      assertSame(baseTable, personalizer.execute(input));
+      assertEquals(countBefore + 1, CustomizableTableViewsTablePersonalizer.getWholeTableFastPathCount());
+
+      ////////////////////////////////////////////////////////////////////////////
+      // one that makes an editable field read-only still gets a personalized   //
+      // clone - as do role sets that merge with it (since read-only loses out) //
+      ////////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "2");
+      QTableMetaData personalizedTable = personalizer.execute(input);
+      assertNotSame(baseTable, personalizedTable);
+      assertFalse(personalizedTable.getField("optional").getIsEditable());
+      assertEquals(countBefore + 1, CustomizableTableViewsTablePersonalizer.getWholeTableFastPathCount());
+
+      QContext.getQSession().setValue("roleIds", "1,2");
+      assertSame(baseTable, personalizer.execute(input));
+      assertEquals(countBefore + 2, CustomizableTableViewsTablePersonalizer.getWholeTableFastPathCount());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPersonalizedTablesShareUnchangedMetaData() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData baseTable = new QTableMetaData()
+         .withName("baseTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("optional", QFieldType.STRING))
+         .withField(new QFieldMetaData("madeReadOnly", QFieldType.STRING))
+         .withField(new QFieldMetaData("hidden", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("optional", "madeReadOnly", "hidden").withName("s1"));
+      QContext.getQInstance().addTable(baseTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(baseTable.getName()).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a")
+            .withFields(List.of(
+               new TableViewField().withFieldName(baseTable.getName() + ".optional").withAccessLevel(EDITABLE_OPTIONAL),
+               new TableViewField().withFieldName(baseTable.getName() + ".madeReadOnly").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1");
+      QTableMetaData personalizedTable = personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER));
+      assertNotSame(baseTable, personalizedTable);
+      assertEquals(Set.of("id", "optional", "madeReadOnly"), getFieldNames(personalizedTable));
+
+      ////////////////////////////////////////////////////////////////////////
+      // the personalized table's fields & sections are its own copies - so //
+      // changing them, via the personalized table, can't change the table  //
+      ////////////////////////////////////////////////////////////////////////
+      assertNotSame(baseTable.getField("optional"), personalizedTable.getField("optional"));
+      assertNotSame(baseTable.getSection("s0"), personalizedTable.getSection("s0"));
+      assertEquals(baseTable.getSection("s0").getFieldNames(), personalizedTable.getSection("s0").getFieldNames());
+
+      ///////////////////////////////////////////////////////////////////////////
+      // the copy-on-write tables that views are applied to share one set of   //
+      // copies of the table's fields & sections - made once, for all of them. //
+      ///////////////////////////////////////////////////////////////////////////
+      QTableMetaData copyOnWriteTable = CustomizableTableViewsTablePersonalizer.makeCopyOnWriteTable(baseTable);
+      QTableMetaData otherCopy        = CustomizableTableViewsTablePersonalizer.makeCopyOnWriteTable(baseTable);
+      assertNotSame(copyOnWriteTable, otherCopy);
+      assertNotSame(baseTable.getField("optional"), otherCopy.getField("optional"));
+      assertSame(copyOnWriteTable.getField("optional"), otherCopy.getField("optional"));
+      assertSame(copyOnWriteTable.getSection("s0"), otherCopy.getSection("s0"));
+
+      /////////////////////////////////////////////////////
+      // and the view's changes aren't made to the table //
+      /////////////////////////////////////////////////////
+      assertFalse(personalizedTable.getField("madeReadOnly").getIsEditable());
+      assertTrue(baseTable.getField("madeReadOnly").getIsEditable());
+      assertEquals(List.of("optional", "madeReadOnly"), personalizedTable.getSection("s1").getFieldNames());
+      assertEquals(List.of("optional", "madeReadOnly", "hidden"), baseTable.getSection("s1").getFieldNames());
+   }
+
+
+
+   /*******************************************************************************
+    ** the memoized, personalized version of a table is never handed out itself -
+    ** each caller gets its own copy, which it can change without affecting the
+    ** table, or what later callers get.
+    *******************************************************************************/
+   @Test
+   void testPersonalizedTablesCanBeChangedByCallers() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData baseTable = new QTableMetaData()
+         .withName("changedByCallerTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("optional", QFieldType.STRING))
+         .withField(new QFieldMetaData("madeReadOnly", QFieldType.STRING))
+         .withField(new QFieldMetaData("hidden", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("optional", "madeReadOnly", "hidden").withName("s1"));
+      QContext.getQInstance().addTable(baseTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(baseTable.getName()).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a")
+            .withFields(List.of(
+               new TableViewField().withFieldName(baseTable.getName() + ".optional").withAccessLevel(EDITABLE_OPTIONAL),
+               new TableViewField().withFieldName(baseTable.getName() + ".madeReadOnly").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1");
+      TableMetaDataPersonalizerInput input = new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER);
+
+      ////////////////////////////////////////////////////////
+      // a caller changes everything it can about its table //
+      ////////////////////////////////////////////////////////
+      QTableMetaData changedTable = personalizer.execute(input);
+      changedTable.setLabel("Changed");
+      changedTable.getField("optional").setIsEditable(false);
+      changedTable.getField("madeReadOnly").setIsEditable(true);
+      changedTable.getSection("s0").getFieldNames().clear();
+      changedTable.getSection("s1").getFieldNames().add("hidden");
+      changedTable.getFields().remove("id");
+      changedTable.getSections().remove(0);
+
+      /////////////////////////////////////////////////////////////////////////////
+      // the next caller gets its own, intact, copy - of the same memoized table //
+      /////////////////////////////////////////////////////////////////////////////
+      long           personalizationCount = CustomizableTableViewsTablePersonalizer.getPersonalizationCount();
+      QTableMetaData nextTable            = personalizer.execute(input);
+      assertEquals(personalizationCount, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+      assertNotSame(changedTable, nextTable);
+      assertEquals(baseTable.getLabel(), nextTable.getLabel());
+      assertEquals(Set.of("id", "optional", "madeReadOnly"), getFieldNames(nextTable));
+      assertTrue(nextTable.getField("optional").getIsEditable());
+      assertFalse(nextTable.getField("madeReadOnly").getIsEditable());
+      assertEquals(List.of("id"), nextTable.getSection("s0").getFieldNames());
+      assertEquals(List.of("optional", "madeReadOnly"), nextTable.getSection("s1").getFieldNames());
+
+      ///////////////////////////////////////
+      // and the source table is as it was //
+      ///////////////////////////////////////
+      assertEquals(Set.of("id", "optional", "madeReadOnly", "hidden"), getFieldNames(baseTable));
+      assertTrue(baseTable.getField("optional").getIsEditable());
+      assertTrue(baseTable.getField("madeReadOnly").getIsEditable());
+      assertEquals(List.of("id"), baseTable.getSection("s0").getFieldNames());
+      assertEquals(List.of("optional", "madeReadOnly", "hidden"), baseTable.getSection("s1").getFieldNames());
+   }
+
+
+
+   /*******************************************************************************
+    ** many threads getting (and changing) the same memoized, personalized table at
+    ** once should each get their own, intact, copy of it - with the source table
+    ** unchanged, and the table only personalized once.
+    *******************************************************************************/
+   @Test
+   void testConcurrentCallers() throws Exception
+   {
+      QTableMetaData baseTable = new QTableMetaData()
+         .withName("concurrentTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("c", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("a", "b", "c").withName("s1"));
+      QContext.getQInstance().addTable(baseTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(baseTable.getName()).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a").withFields(List.of(
+            new TableViewField().withFieldName(baseTable.getName() + ".a").withAccessLevel(EDITABLE_OPTIONAL),
+            new TableViewField().withFieldName(baseTable.getName() + ".b").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1");
+
+      CustomizableTableViewsTablePersonalizer personalizer    = new CustomizableTableViewsTablePersonalizer();
+      CapturedContext                         capturedContext = QContext.capture();
+      CountDownLatch                          start           = new CountDownLatch(1);
+
+      /////////////////////////////////////////////////////////////////////
+      // personalize the table once up front, so it's in the memoization //
+      /////////////////////////////////////////////////////////////////////
+      personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER));
+      long personalizationCount = CustomizableTableViewsTablePersonalizer.getPersonalizationCount();
+
+      int             threadCount     = 8;
+      int             iterations      = 200;
+      ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+      try
+      {
+         List<Future<List<QTableMetaData>>> futures = new ArrayList<>();
+         for(int i = 0; i < threadCount; i++)
+         {
+            futures.add(executorService.submit(() ->
+            {
+               QContext.init(capturedContext);
+               try
+               {
+                  start.await();
+                  List<QTableMetaData> results = new ArrayList<>();
+                  for(int j = 0; j < iterations; j++)
+                  {
+                     QTableMetaData table = personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER));
+
+                     /////////////////////////////////////////////////////
+                     // each caller checks, then changes, its own table //
+                     /////////////////////////////////////////////////////
+                     assertEquals(List.of("id", "a", "b"), new ArrayList<>(table.getFields().keySet()));
+                     assertEquals(List.of("a", "b"), table.getSection("s1").getFieldNames());
+                     table.getFields().remove("a");
+                     table.getSection("s1").getFieldNames().add("c");
+                     table.getField("b").setIsEditable(true);
+                     results.add(table);
+                  }
+                  return (results);
+               }
+               finally
+               {
+                  QContext.clear();
+               }
+            }));
+         }
+
+         start.countDown();
+
+         List<QTableMetaData> allResults = new ArrayList<>();
+         for(Future<List<QTableMetaData>> future : futures)
+         {
+            allResults.addAll(future.get(30, TimeUnit.SECONDS));
+         }
+
+         //////////////////////////////////////////////////////////////////////
+         // everyone got their own table - all from the one memoized version //
+         //////////////////////////////////////////////////////////////////////
+         assertEquals(threadCount * iterations, allResults.stream().map(System::identityHashCode).distinct().count(), "Every caller should get its own table");
+         assertEquals(personalizationCount, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+
+         QTableMetaData personalizedTable = personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER));
+         assertEquals(List.of("id", "a", "b"), new ArrayList<>(personalizedTable.getFields().keySet()));
+         assertEquals(List.of("a", "b"), personalizedTable.getSection("s1").getFieldNames());
+         assertEquals(Map.of("id", false, "a", true, "b", false), personalizedTable.getFields().values().stream().collect(Collectors.toMap(QFieldMetaData::getName, QFieldMetaData::getIsEditable)));
+
+         ///////////////////////////////////////
+         // and the source table is as it was //
+         ///////////////////////////////////////
+         assertEquals(List.of("id", "a", "b", "c"), new ArrayList<>(baseTable.getFields().keySet()));
+         assertEquals(List.of("a", "b", "c"), baseTable.getSection("s1").getFieldNames());
+         assertTrue(baseTable.getField("b").getIsEditable());
+      }
+      finally
+      {
+         executorService.shutdownNow();
+      }
+   }
+
+
+
+   /*******************************************************************************
+    ** the effective view memoization is sized from the qbit config if it says
+    ** to - else for every table in the instance, for a number of role sets.
+    *******************************************************************************/
+   @Test
+   void testEffectiveTableViewCacheSize()
+   {
+      QInstance qInstance = new QInstance();
+      assertEquals(1000, CustomizableTableViewsTablePersonalizer.getEffectiveTableViewCacheSize(null, qInstance));
+
+      for(int i = 0; i < 300; i++)
+      {
+         qInstance.addTable(new QTableMetaData().withName("table" + i));
+      }
+      assertEquals(300 * 50, CustomizableTableViewsTablePersonalizer.getEffectiveTableViewCacheSize(null, qInstance));
+      assertEquals(300 * 50, CustomizableTableViewsTablePersonalizer.getEffectiveTableViewCacheSize(new CustomizableTableViewsQBitConfig(), qInstance));
+
+      CustomizableTableViewsQBitConfig config = new CustomizableTableViewsQBitConfig().withEffectiveTableViewCacheSize(250);
+      assertEquals(250, CustomizableTableViewsTablePersonalizer.getEffectiveTableViewCacheSize(config, qInstance));
+
+      List<String> errors = new ArrayList<>();
+      new CustomizableTableViewsQBitConfig().withEffectiveTableViewCacheSize(0).validate(qInstance, errors);
+      assertTrue(errors.stream().anyMatch(error -> error.contains("effectiveTableViewCacheSize")));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPersonalizedTablesAreMemoized() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData baseTable = new QTableMetaData()
+         .withName("baseTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("optional", QFieldType.STRING))
+         .withField(new QFieldMetaData("createDate", QFieldType.DATE_TIME).withBehavior(DynamicDefaultValueBehavior.CREATE_DATE))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("optional", "createDate").withName("s1"));
+      QContext.getQInstance().addTable(baseTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withTableName(baseTable.getName()).withIsActive(true))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+
+      ////////////////////////////////////////////////////////////////////////////
+      // a repeated request gets a copy of the same personalized table - rather //
+      // than the view being applied to the table again                         //
+      ////////////////////////////////////////////////////////////////////////////
+      TableMetaDataPersonalizerInput input             = new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER);
+      QTableMetaData                 personalizedTable = personalizer.execute(input);
+      assertNotSame(baseTable, personalizedTable);
+      assertEquals(Set.of("id"), getFieldNames(personalizedTable));
+
+      long personalizationCount = CustomizableTableViewsTablePersonalizer.getPersonalizationCount();
+      assertEquals(Set.of("id"), getFieldNames(personalizer.execute(input)));
+      assertEquals(personalizationCount, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+
+      /////////////////////////////////////////////////////////////////////////
+      // but an insert gets its own version (with the dynamic-default field) //
+      /////////////////////////////////////////////////////////////////////////
+      QTableMetaData personalizedForInsert = personalizer.customizeTable(new InsertInput(baseTable.getName()));
+      assertEquals(personalizationCount + 1, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+      assertEquals(Set.of("id", "createDate"), getFieldNames(personalizedForInsert));
+      assertEquals(Set.of("id", "createDate"), getFieldNames(personalizer.customizeTable(new InsertInput(baseTable.getName()))));
+      assertEquals(personalizationCount + 1, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+
+      //////////////////////////////////////////////////////////////////////////
+      // editing the qbit's tables clears the memoization, giving a new table //
+      //////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a")
+            .withFields(List.of(new TableViewField().withFieldName(baseTable.getName() + ".optional").withAccessLevel(EDITABLE_OPTIONAL))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1))));
+
+      QTableMetaData personalizedAfterEdit = personalizer.execute(input);
+      assertEquals(personalizationCount + 2, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+      assertEquals(Set.of("id", "optional"), getFieldNames(personalizedAfterEdit));
+   }
+
+
+
+   /*******************************************************************************
+    ** personalizer subclasses (with their own "always keep" rules) don't share
+    ** personalized tables with the base class, for the same table, view & action.
+    *******************************************************************************/
+   @Test
+   void testPersonalizedTablesAreMemoizedPerPersonalizerClass() throws QException
+   {
+      QTableMetaData baseTable = new QTableMetaData()
+         .withName("perClassTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("keptBySubclass", QFieldType.STRING))
+         .withField(new QFieldMetaData("optional", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id", "keptBySubclass", "optional").withName("s0"));
+      QContext.getQInstance().addTable(baseTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withTableName(baseTable.getName()).withIsActive(true))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+
+      ////////////////////////////////////////////////////////////////////////////
+      // whichever class personalizes the table first, each gets its own fields //
+      ////////////////////////////////////////////////////////////////////////////
+      TableMetaDataPersonalizerInput input                  = new TableMetaDataPersonalizerInput().withTableMetaData(baseTable).withInputSource(QInputSource.USER);
+      QTableMetaData                 personalizedBySubclass = new CountingPersonalizer().execute(input);
+      QTableMetaData                 personalizedByBase     = new CustomizableTableViewsTablePersonalizer().execute(input);
+      assertEquals(Set.of("id", "keptBySubclass"), getFieldNames(personalizedBySubclass));
+      assertEquals(Set.of("id"), getFieldNames(personalizedByBase));
+
+      ///////////////////////////////////////////////////
+      // and each class still re-uses its own versions //
+      ///////////////////////////////////////////////////
+      long personalizationCount = CustomizableTableViewsTablePersonalizer.getPersonalizationCount();
+      assertEquals(Set.of("id", "keptBySubclass"), getFieldNames(new CountingPersonalizer().execute(input)));
+      assertEquals(Set.of("id"), getFieldNames(new CustomizableTableViewsTablePersonalizer().execute(input)));
+      assertEquals(personalizationCount, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testEquivalentViewsAreInterned() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData plainTable = new QTableMetaData()
+         .withName("internTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("a", "b").withName("s1"));
+      QContext.getQInstance().addTable(plainTable);
+
+      QTableMetaData joinTable = new QTableMetaData()
+         .withName("internJoinTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("joinField", QFieldType.STRING));
+      QContext.getQInstance().addTable(joinTable);
+
+      QTableMetaData tableWithJoin = new QTableMetaData()
+         .withName("internTableWithJoin")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("a", "b", "internJoinTable.joinField").withName("s1"));
+      QContext.getQInstance().addTable(tableWithJoin);
+      QContext.getQInstance().addJoin(new QJoinMetaData().withLeftTable(tableWithJoin.getName()).withRightTable(joinTable.getName()).withInferredName().withType(JoinType.ONE_TO_ONE).withJoinOn(new JoinOn("id", "id")));
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(plainTable.getName()).withIsActive(true),
+         new CustomizableTable().withId(2).withTableName(joinTable.getName()).withIsActive(true),
+         new CustomizableTable().withId(3).withTableName(tableWithJoin.getName()).withIsActive(true))));
+
+      //////////////////////////////////////////////////////////////////////////////////
+      // roles 101 and 102 each have their own views of the two main tables - but the //
+      // views grant the same fields (in a different order).  only 101 sees the join. //
+      //////////////////////////////////////////////////////////////////////////////////
+      TableViewField a = new TableViewField().withFieldName("internTable.a").withAccessLevel(READ_ONLY);
+      TableViewField b = new TableViewField().withFieldName("internTable.b").withAccessLevel(EDITABLE_OPTIONAL);
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("101").withFields(List.of(a, b)),
+         new TableView().withId(2).withCustomizableTableId(1).withName("102").withFields(List.of(b, a)),
+         new TableView().withId(3).withCustomizableTableId(2).withName("101")
+            .withFields(List.of(new TableViewField().withFieldName("internJoinTable.joinField").withAccessLevel(READ_ONLY))),
+         new TableView().withId(4).withCustomizableTableId(3).withName("101")
+            .withFields(List.of(new TableViewField().withFieldName("internTableWithJoin.a").withAccessLevel(READ_ONLY))),
+         new TableView().withId(5).withCustomizableTableId(3).withName("102")
+            .withFields(List.of(new TableViewField().withFieldName("internTableWithJoin.a").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(101).withTableViewId(3),
+         new TableViewRoleInt().withRoleId(101).withTableViewId(4),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(2),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(5))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      CompiledTableView compiledForFirstRole = personalizer.getEffectiveCompiledTableViewForCurrentSession(plainTable.getName());
+      QTableMetaData    plainForFirstRole    = personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(plainTable).withInputSource(QInputSource.USER));
+      QTableMetaData    withJoinForFirstRole = personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(tableWithJoin).withInputSource(QInputSource.USER));
+      assertEquals(List.of("a", "internJoinTable.joinField"), withJoinForFirstRole.getSection("s1").getFieldNames());
+
+      /////////////////////////////////////////////////////////////////////////////
+      // the other role set gets the very same compiled view - and a copy of the //
+      // same personalized table (without the view being applied again)          //
+      /////////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "102");
+      assertSame(compiledForFirstRole, personalizer.getEffectiveCompiledTableViewForCurrentSession(plainTable.getName()));
+      long personalizationCount = CustomizableTableViewsTablePersonalizer.getPersonalizationCount();
+      assertEquals(getFieldNames(plainForFirstRole), getFieldNames(personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(plainTable).withInputSource(QInputSource.USER))));
+      assertEquals(personalizationCount, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+
+      //////////////////////////////////////////////////////////////////////////////////
+      // and the same compiled view of the table with the join - but since the join's //
+      // fields depend on the join table's view, not the same personalized table      //
+      //////////////////////////////////////////////////////////////////////////////////
+      QTableMetaData withJoinForSecondRole = personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(tableWithJoin).withInputSource(QInputSource.USER));
+      assertEquals(personalizationCount + 1, CustomizableTableViewsTablePersonalizer.getPersonalizationCount());
+      assertEquals(List.of("a"), withJoinForSecondRole.getSection("s1").getFieldNames());
+
+      assertThat(CustomizableTableViewsTablePersonalizer.getEffectiveTableViewDedupRatio()).isGreaterThan(1);
+   }
+
+
+
+   /*******************************************************************************
+    ** interned views are held weakly - so the pool keeps only the views that are
+    ** still in use, rather than every view ever interned.
+    *******************************************************************************/
+   @Test
+   void testUnusedInternedViewsAreReleased() throws InterruptedException
+   {
+      QTableMetaData table = new QTableMetaData()
+         .withName("releasedInternTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING));
+
+      CompiledTableView kept = CustomizableTableViewsTablePersonalizer.internCompiledTableView(compileViewOfField(table, "a"));
+      CustomizableTableViewsTablePersonalizer.internCompiledTableView(compileViewOfField(table, "b"));
+
+      /////////////////////////////////////////////////////////////////////
+      // nothing holds on to the second view - so it's dropped once it's //
+      // garbage collected, while the first (still in use) one is kept.  //
+      /////////////////////////////////////////////////////////////////////
+      for(int i = 0; i < 50 && CustomizableTableViewsTablePersonalizer.getInternedTableViewCount() > 1; i++)
+      {
+         System.gc();
+         Thread.sleep(10);
+      }
+      assertEquals(1, CustomizableTableViewsTablePersonalizer.getInternedTableViewCount());
+      assertSame(kept, CustomizableTableViewsTablePersonalizer.internCompiledTableView(compileViewOfField(table, "a")));
+
+      ////////////////////////////////////////////////////////////////////
+      // and an equivalent of the dropped view becomes the interned one //
+      ////////////////////////////////////////////////////////////////////
+      CompiledTableView readded = compileViewOfField(table, "b");
+      assertSame(readded, CustomizableTableViewsTablePersonalizer.internCompiledTableView(readded));
+      assertEquals(2, CustomizableTableViewsTablePersonalizer.getInternedTableViewCount());
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private CompiledTableView compileViewOfField(QTableMetaData table, String fieldName)
+   {
+      return (CompiledTableView.compile(new TableView().withFields(List.of(new TableViewField().withFieldName(table.getName() + "." + fieldName).withAccessLevel(READ_ONLY))), table));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPersonalizedTableFingerprint() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData table = new QTableMetaData()
+         .withName("fingerprintTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id", "a", "b").withName("s0"));
+      QContext.getQInstance().addTable(table);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(table.getName()).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a")
+            .withFields(List.of(new TableViewField().withFieldName("fingerprintTable.a").withAccessLevel(READ_ONLY))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("b")
+            .withFields(List.of(new TableViewField().withFieldName("fingerprintTable.b").withAccessLevel(READ_ONLY))),
+         new TableView().withId(3).withCustomizableTableId(1).withName("a and b")
+            .withFields(List.of(
+               new TableViewField().withFieldName("fingerprintTable.b").withAccessLevel(READ_ONLY),
+               new TableViewField().withFieldName("fingerprintTable.a").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(2),
+         new TableViewRoleInt().withRoleId(103).withTableViewId(3))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101,102");
+      String fingerprint = personalizer.getPersonalizedTableFingerprint(table.getName());
+      assertNotNull(fingerprint);
+
+      ///////////////////////////////////////////////////////////////////////////////
+      // the order of roles doesn't matter - nor which views grant the same fields //
+      ///////////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "102, 101");
+      assertEquals(fingerprint, personalizer.getPersonalizedTableFingerprint(table.getName()));
+      QContext.getQSession().setValue("roleIds", "103");
+      assertEquals(fingerprint, personalizer.getPersonalizedTableFingerprint(table.getName()));
+
+      ///////////////////////////////////////////////////////////////////////////////////
+      // nor does re-loading everything (e.g., as after a restart) - but other grants, //
+      // or another version of the table's meta data, give a different fingerprint     //
+      ///////////////////////////////////////////////////////////////////////////////////
+      CustomizableTableViewsTablePersonalizer.clearMemoizations();
+      assertEquals(fingerprint, personalizer.getPersonalizedTableFingerprint(table.getName()));
+
+      QContext.getQSession().setValue("roleIds", "101");
+      assertNotEquals(fingerprint, personalizer.getPersonalizedTableFingerprint(table.getName()));
+
+      ////////////////////////////////////////////////////////////////////////
+      // (table versions are memoized - so after an in-place change, clear) //
+      ////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "101,102");
+      table.setLabel("New Label");
+      CustomizableTableViewsTablePersonalizer.clearMemoizations();
+      assertNotEquals(fingerprint, personalizer.getPersonalizedTableFingerprint(table.getName()));
+
+      ////////////////////////////////////////////////////////////////////////////////
+      // a new version of the table that only changes how a field is displayed - so //
+      // it shares the table's dictionary - gets a new fingerprint, too             //
+      ////////////////////////////////////////////////////////////////////////////////
+      String         labelFingerprint = personalizer.getPersonalizedTableFingerprint(table.getName());
+      QTableMetaData reformattedTable = table.clone();
+      reformattedTable.getField("a").setDisplayFormat(DisplayFormat.COMMAS);
+      QContext.getQInstance().getTables().put(reformattedTable.getName(), reformattedTable);
+      assertSame(FieldNameDictionary.forTable(table), FieldNameDictionary.forTable(reformattedTable));
+      assertNotEquals(labelFingerprint, personalizer.getPersonalizedTableFingerprint(table.getName()));
+
+      assertNull(personalizer.getPersonalizedTableFingerprint("notATable"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testHiddenAssociationsArePruned() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      String linesJoinName = QJoinMetaData.makeInferredJoinName("orderTable", "lineTable");
+      String notesJoinName = QJoinMetaData.makeInferredJoinName("orderTable", "noteTable");
+
+      QTableMetaData orderTable = new QTableMetaData()
+         .withName("orderTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("name", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id", "name").withName("s0"))
+         .withSection(SectionFactory.defaultT2().withName("lines").withWidgetName(linesJoinName))
+         .withSection(SectionFactory.defaultT2().withName("notes").withWidgetName(notesJoinName))
+         .withAssociation(new Association().withName("lines").withJoinName(linesJoinName).withAssociatedTableName("lineTable"))
+         .withAssociation(new Association().withName("notes").withJoinName(notesJoinName).withAssociatedTableName("noteTable"));
+      QContext.getQInstance().addTable(orderTable);
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("lineTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("orderId", QFieldType.INTEGER)));
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("noteTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("orderId", QFieldType.INTEGER)));
+
+      /////////////////////////////////////////////////////////////////////////////
+      // the order & line tables are customizable - but no one has a line view.  //
+      // role 101 gets the whole order table; role 102 doesn't get notes widget. //
+      /////////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(orderTable.getName()).withIsActive(true),
+         new CustomizableTable().withId(2).withTableName("lineTable").withIsActive(true))));
+
+      List<TableViewField> orderFields = List.of(
+         new TableViewField().withFieldName("orderTable.id").withAccessLevel(READ_ONLY),
+         new TableViewField().withFieldName("orderTable.name").withAccessLevel(EDITABLE_OPTIONAL));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("101").withFields(orderFields).withWidgets(List.of(
+            new TableViewWidget().withWidgetName(linesJoinName).withAccessLevel(WidgetAccessLevel.HAS_ACCESS),
+            new TableViewWidget().withWidgetName(notesJoinName).withAccessLevel(WidgetAccessLevel.HAS_ACCESS))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("102").withFields(orderFields).withWidgets(List.of(
+            new TableViewWidget().withWidgetName(linesJoinName).withAccessLevel(WidgetAccessLevel.HAS_ACCESS))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(2))));
+
+      /////////////////////////////////////////////////////////////////////////////////
+      // even though 101's view grants the whole order table, the association to the //
+      // hidden line table is removed (so the table isn't used as-is)                //
+      /////////////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      TableMetaDataPersonalizerInput input             = new TableMetaDataPersonalizerInput().withTableMetaData(orderTable).withInputSource(QInputSource.USER);
+      QTableMetaData                 personalizedTable = personalizer.execute(input);
+      assertNotSame(orderTable, personalizedTable);
+      assertEquals(List.of("notes"), personalizedTable.getAssociations().stream().map(Association::getName).toList());
+      assertEquals(2, orderTable.getAssociations().size());
+
+      ///////////////////////////////////////////////////////////////////////////
+      // 102 loses the notes widget's section - but not the notes association, //
+      // as (the non-customizable) note table isn't hidden                     //
+      ///////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "102");
+      personalizedTable = personalizer.execute(input);
+      assertEquals(List.of("notes"), personalizedTable.getAssociations().stream().map(Association::getName).toList());
+      assertNull(personalizedTable.getSection("notes"));
+
+      ////////////////////////////////////////////////////////////////////////////
+      // once 101 gets a view of the line table, they see the whole order table //
+      ////////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(3).withCustomizableTableId(2).withName("lines")
+            .withFields(List.of(new TableViewField().withFieldName("lineTable.orderId").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(3))));
+
+      QContext.getQSession().setValue("roleIds", "101");
+      assertSame(orderTable, personalizer.execute(input));
+   }
+
+
+
+   /*******************************************************************************
+    ** a widget's name is independent of an association's join name - so whether
+    ** an association is hidden only depends on its associated table's view, not
+    ** on whether (some) widget is in the table's view.
+    *******************************************************************************/
+   @Test
+   void testHiddenAssociationsDontDependOnWidgets() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      String linesJoinName = QJoinMetaData.makeInferredJoinName("invoiceTable", "invoiceLineTable");
+
+      QTableMetaData invoiceTable = new QTableMetaData()
+         .withName("invoiceTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2().withName("lines").withWidgetName("invoiceLinesWidget"))
+         .withAssociation(new Association().withName("lines").withJoinName(linesJoinName).withAssociatedTableName("invoiceLineTable"));
+      QContext.getQInstance().addTable(invoiceTable);
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("invoiceLineTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("invoiceId", QFieldType.INTEGER)));
+
+      ///////////////////////////////////////////////////////////////////////////////
+      // role 101 gets the lines widget, but no view of the line table - while 102 //
+      // doesn't get the widget, but does get a view of the line table             //
+      ///////////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(invoiceTable.getName()).withIsActive(true),
+         new CustomizableTable().withId(2).withTableName("invoiceLineTable").withIsActive(true))));
+
+      List<TableViewField> invoiceFields = List.of(new TableViewField().withFieldName("invoiceTable.id").withAccessLevel(READ_ONLY));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("101").withFields(invoiceFields).withWidgets(List.of(
+            new TableViewWidget().withWidgetName("invoiceLinesWidget").withAccessLevel(WidgetAccessLevel.HAS_ACCESS))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("102").withFields(invoiceFields),
+         new TableView().withId(3).withCustomizableTableId(2).withName("102 lines")
+            .withFields(List.of(new TableViewField().withFieldName("invoiceLineTable.invoiceId").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(2),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(3))));
+
+      TableMetaDataPersonalizerInput input = new TableMetaDataPersonalizerInput().withTableMetaData(invoiceTable).withInputSource(QInputSource.USER);
+
+      //////////////////////////////////////////////////////////////////
+      // 101 keeps the widget's section, but loses the association... //
+      //////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      assertEquals(Set.of("lines"), personalizer.getHiddenAssociationNames(invoiceTable));
+      QTableMetaData personalizedTable = personalizer.execute(input);
+      assertNotNull(personalizedTable.getSection("lines"));
+      assertEquals(Collections.emptyList(), personalizedTable.getAssociations());
+
+      ////////////////////////////////////////////////////////////////////////
+      // ...while 102 loses the widget's section, but keeps the association //
+      ////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "102");
+      assertEquals(Collections.emptySet(), personalizer.getHiddenAssociationNames(invoiceTable));
+      personalizedTable = personalizer.execute(input);
+      assertNull(personalizedTable.getSection("lines"));
+      assertEquals(List.of("lines"), personalizedTable.getAssociations().stream().map(Association::getName).toList());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testHiddenExposedJoinsArePruned() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData shipmentTable = new QTableMetaData()
+         .withName("shipmentTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER).withIsEditable(false))
+         .withField(new QFieldMetaData("carrierId", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("warehouseId", QFieldType.INTEGER))
+         .withSection(SectionFactory.defaultT1("id", "carrierId", "warehouseId").withName("s0"))
+         .withExposedJoin(new ExposedJoin().withJoinTable("carrierTable").withJoinPath(List.of(QJoinMetaData.makeInferredJoinName("shipmentTable", "carrierTable"))))
+         .withExposedJoin(new ExposedJoin().withJoinTable("warehouseTable").withJoinPath(List.of(QJoinMetaData.makeInferredJoinName("shipmentTable", "warehouseTable"))));
+      QContext.getQInstance().addTable(shipmentTable);
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("carrierTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("name", QFieldType.STRING)));
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName("warehouseTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER))
+         .withField(new QFieldMetaData("name", QFieldType.STRING)));
+
+      ///////////////////////////////////////////////////////////////////////////
+      // the shipment & carrier tables are customizable (the warehouse isn't). //
+      // role 101 gets the whole shipment table - but only 102 sees carriers.  //
+      ///////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(shipmentTable.getName()).withIsActive(true),
+         new CustomizableTable().withId(2).withTableName("carrierTable").withIsActive(true))));
+
+      List<TableViewField> shipmentFields = List.of(
+         new TableViewField().withFieldName("shipmentTable.id").withAccessLevel(READ_ONLY),
+         new TableViewField().withFieldName("shipmentTable.carrierId").withAccessLevel(EDITABLE_OPTIONAL),
+         new TableViewField().withFieldName("shipmentTable.warehouseId").withAccessLevel(EDITABLE_OPTIONAL));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("shipments").withFields(shipmentFields),
+         new TableView().withId(2).withCustomizableTableId(2).withName("carriers").withFields(List.of(
+            new TableViewField().withFieldName("carrierTable.name").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(102).withTableViewId(2))));
+
+      //////////////////////////////////////////////////////////////////////////////
+      // even though 101's view grants the whole shipment table, the exposed join //
+      // to the hidden carrier table is removed (so the table isn't used as-is)   //
+      //////////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+      TableMetaDataPersonalizerInput input             = new TableMetaDataPersonalizerInput().withTableMetaData(shipmentTable).withInputSource(QInputSource.USER);
+      QTableMetaData                 personalizedTable = personalizer.execute(input);
+      assertNotSame(shipmentTable, personalizedTable);
+      assertEquals(List.of("warehouseTable"), personalizedTable.getExposedJoins().stream().map(ExposedJoin::getJoinTable).toList());
+      assertEquals(2, shipmentTable.getExposedJoins().size());
+
+      ////////////////////////////////////////////////////
+      // 102 can see carriers - so gets the table as-is //
+      ////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "102");
+      assertSame(shipmentTable, personalizer.execute(input));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDefaultViewFetchedWithRoleViews() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      String tableName = "defaultWithRoles";
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName(tableName)
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("c", QFieldType.STRING)));
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(tableName).withIsActive(true).withDefaultTableViewId(3))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a").withFields(List.of(new TableViewField().withFieldName(tableName + ".a").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("b").withFields(List.of(new TableViewField().withFieldName(tableName + ".b").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(3).withCustomizableTableId(1).withName("c").withFields(List.of(new TableViewField().withFieldName(tableName + ".c").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(2),
+         new TableViewRoleInt().withRoleId(5).withTableViewId(3))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      assertTrue(personalizer.isTableCustomizable(tableName));
+
+      /////////////////////////////////////////////////////////////////////////
+      // role views win over the default view - which comes back in the same //
+      // query, but only counts as a role view for a role it's assigned to.  //
+      /////////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "1");
+      assertEquals(Map.of(tableName + ".a", EDITABLE_OPTIONAL), tableViewToFieldMap(personalizer.getEffectiveTableViewForCurrentSession(tableName)));
+
+      QContext.getQSession().setValue("roleIds", "1,2");
+      assertEquals(Map.of(tableName + ".a", EDITABLE_OPTIONAL, tableName + ".b", EDITABLE_OPTIONAL), tableViewToFieldMap(personalizer.getEffectiveTableViewForCurrentSession(tableName)));
+
+      QContext.getQSession().setValue("roleIds", "1,5");
+      assertEquals(Map.of(tableName + ".a", EDITABLE_OPTIONAL, tableName + ".c", READ_ONLY), tableViewToFieldMap(personalizer.getEffectiveTableViewForCurrentSession(tableName)));
+
+      ///////////////////////////////////////////////////////////////////////
+      // with no role views (or no roles at all), fall back to the default //
+      ///////////////////////////////////////////////////////////////////////
+      QContext.getQSession().setValue("roleIds", "3");
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession(tableName)).extracting("name").isEqualTo("c");
+
+      QContext.getQSession().setValue("roleIds", null);
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession(tableName)).extracting("name").isEqualTo("c");
+
+      //////////////////////////////////////////////////////////////////////////////////
+      // clearing the default view id updates the (shared) customizable table row too //
+      //////////////////////////////////////////////////////////////////////////////////
+      new UpdateAction().execute(new UpdateInput(CustomizableTable.TABLE_NAME).withRecord(new QRecord().withValue("id", 1).withValue("defaultTableViewId", null)));
+      QContext.getQSession().setValue("roleIds", "3");
+      assertEmptyView(personalizer.getEffectiveTableViewForCurrentSession(tableName));
+
+      QContext.getQSession().setValue("roleIds", "2");
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession(tableName)).extracting("name").isEqualTo("b");
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPrefetchEffectiveTableViews() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer.getQBitConfig().setPrefetchEffectiveTableViews(true);
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      for(String tableName : List.of("prefetchA", "prefetchB", "prefetchC"))
+      {
+         QContext.getQInstance().addTable(new QTableMetaData()
+            .withName(tableName)
+            .withField(new QFieldMetaData("a", QFieldType.STRING))
+            .withField(new QFieldMetaData("b", QFieldType.STRING)));
+      }
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName("prefetchA").withIsActive(true),
+         new CustomizableTable().withId(2).withTableName("prefetchB").withIsActive(true),
+         new CustomizableTable().withId(3).withTableName("prefetchC").withIsActive(true).withDefaultTableViewId(4))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a1").withFields(List.of(new TableViewField().withFieldName("prefetchA.a").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(2).withCustomizableTableId(2).withName("b1").withFields(List.of(new TableViewField().withFieldName("prefetchB.a").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(3).withCustomizableTableId(2).withName("b2").withFields(List.of(new TableViewField().withFieldName("prefetchB.b").withAccessLevel(READ_ONLY))),
+         new TableView().withId(4).withCustomizableTableId(3).withName("cDefault").withFields(List.of(new TableViewField().withFieldName("prefetchC.b").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(1).withTableViewId(2),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(2),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(3))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1,2");
+
+      ////////////////////////////////////////////////////////////////////////////
+      // personalizing one table prefetches the views of all of them - so, even //
+      // with the backend's records gone, the other tables' views are found.    //
+      ////////////////////////////////////////////////////////////////////////////
+      personalizer.execute(new TableMetaDataPersonalizerInput().withTableMetaData(QContext.getQInstance().getTable("prefetchA")).withInputSource(QInputSource.USER));
+      MemoryRecordStore.getInstance().reset();
+
+      assertTrue(personalizer.isTableCustomizable("prefetchB"));
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession("prefetchA")).extracting("name").isEqualTo("a1");
+
+      TableView viewForB = personalizer.getEffectiveTableViewForCurrentSession("prefetchB");
+      assertEquals(Map.of("prefetchB.a", EDITABLE_OPTIONAL, "prefetchB.b", READ_ONLY), tableViewToFieldMap(viewForB));
+
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession("prefetchC")).extracting("name").isEqualTo("cDefault");
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testJoinTableFieldsAreSharedAcrossRequests() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QTableMetaData joinTable = new QTableMetaData()
+         .withName("joinTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING).withIsEditable(false))
+         .withField(new QFieldMetaData("joinField", QFieldType.STRING))
+         .withField(new QFieldMetaData("hiddenField", QFieldType.STRING));
+      QContext.getQInstance().addTable(joinTable);
+
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(joinTable.getName()).withIsActive(true))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a")
+            .withFields(List.of(new TableViewField().withFieldName(joinTable.getName() + ".joinField").withAccessLevel(READ_ONLY))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(101).withTableViewId(1))));
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "101");
+
+      //////////////////////////////////////////////////////////////////////////
+      // two different requests (i.e., per-request caches) share the same set //
+      //////////////////////////////////////////////////////////////////////////
+      Set<String> fieldsToKeep = personalizer.getFieldsToKeepFromJoinTable(joinTable.getName(), new QueryInput(), new HashMap<>());
+      assertEquals(Set.of("id", "joinField"), fieldsToKeep);
+      assertSame(fieldsToKeep, personalizer.getFieldsToKeepFromJoinTable(joinTable.getName(), new QueryInput(), new HashMap<>()));
+
+      ////////////////////////////////////////////////////
+      // but a user with other roles gets their own set //
+      ////////////////////////////////////////////////////
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "102");
+      assertEquals(Set.of("id"), personalizer.getFieldsToKeepFromJoinTable(joinTable.getName(), new QueryInput(), new HashMap<>()));
+   }
+
+
+
    /***************************************************************************
     *
     ***************************************************************************/
@@ -0,0 +1,344 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for SingleFlightMemoization
+ *******************************************************************************/
+class SingleFlightMemoizationTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** many threads asking for the same key at once should all get the result of
+    ** a single load.
+    *******************************************************************************/
+   @Test
+   void testConcurrentRequestsAreCoalesced() throws Exception
+   {
+      SingleFlightMemoization<String, Integer> memoization = new SingleFlightMemoization<>(Duration.ofMinutes(1));
+      AtomicInteger                            loads       = new AtomicInteger();
+      CountDownLatch                           releaseLoad = new CountDownLatch(1);
+
+      int             threadCount     = 8;
+      ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+      try
+      {
+         List<Future<Optional<Integer>>> futures = new ArrayList<>();
+         for(int i = 0; i < threadCount; i++)
+         {
+            futures.add(executorService.submit(() -> memoization.getResultThrowing("key", k ->
+            {
+               releaseLoad.await();
+               return (loads.incrementAndGet());
+            })));
+         }
+
+         ///////////////////////////////////////////////////////////////////////
+         // let the load finish once all the other threads are waiting for it //
+         ///////////////////////////////////////////////////////////////////////
+         long giveUpAt = System.currentTimeMillis() + 5000;
+         while(memoization.getCoalescedLoadCount() < threadCount - 1 && System.currentTimeMillis() < giveUpAt)
+         {
+            Thread.sleep(5);
+         }
+         releaseLoad.countDown();
+
+         for(Future<Optional<Integer>> future : futures)
+         {
+            assertEquals(Optional.of(1), future.get(5, TimeUnit.SECONDS));
+         }
+      }
+      finally
+      {
+         executorService.shutdownNow();
+      }
+
+      assertEquals(1, loads.get());
+      assertEquals(1, memoization.getLoadCount());
+      assertEquals(threadCount - 1, memoization.getCoalescedLoadCount());
+
+      ////////////////////////////////////////////////////
+      // and now the result is memoized for later calls //
+      ////////////////////////////////////////////////////
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> loads.incrementAndGet()));
+      assertEquals(1, loads.get());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testTimeoutAndClear()
+   {
+      SingleFlightMemoization<String, Integer> memoization = new SingleFlightMemoization<>(Duration.ofMinutes(1));
+      AtomicInteger                            loads       = new AtomicInteger();
+
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> loads.incrementAndGet()));
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> loads.incrementAndGet()));
+
+      memoization.clear();
+      assertEquals(Optional.of(2), memoization.getResult("key", k -> loads.incrementAndGet()));
+
+      memoization.clearKey("key");
+      assertEquals(Optional.of(3), memoization.getResult("key", k -> loads.incrementAndGet()));
+
+      memoization.setTimeout(Duration.ofMillis(-1));
+      assertEquals(Optional.of(4), memoization.getResult("key", k -> loads.incrementAndGet()));
+      assertEquals(Optional.of(5), memoization.getResult("key", k -> loads.incrementAndGet()));
+   }
+
+
+
+   /*******************************************************************************
+    ** a result that was loaded while the memoization was being cleared should
+    ** be returned, but not stored.
+    *******************************************************************************/
+   @Test
+   void testClearDuringLoad()
+   {
+      SingleFlightMemoization<String, Integer> memoization = new SingleFlightMemoization<>(Duration.ofMinutes(1));
+      AtomicInteger                            loads       = new AtomicInteger();
+
+      assertEquals(Optional.of(1), memoization.getResult("key", k ->
+      {
+         memoization.clear();
+         return (loads.incrementAndGet());
+      }));
+
+      assertEquals(Optional.of(2), memoization.getResult("key", k -> loads.incrementAndGet()));
+   }
+
+
+
+   /*******************************************************************************
+    ** clearing one key while another key's load is running doesn't stop that
+    ** other key's result from being stored.
+    *******************************************************************************/
+   @Test
+   void testClearKeyDuringLoadOfOtherKey()
+   {
+      SingleFlightMemoization<String, Integer> memoization = new SingleFlightMemoization<>(Duration.ofMinutes(1));
+      AtomicInteger                            loads       = new AtomicInteger();
+
+      assertEquals(Optional.of(1), memoization.getResult("a", k ->
+      {
+         memoization.clearKey("b");
+         return (loads.incrementAndGet());
+      }));
+      assertEquals(Optional.of(1), memoization.getResult("a", k -> loads.incrementAndGet()));
+
+      /////////////////////////////////////////////////////////////
+      // but clearing the key being loaded means it isn't stored //
+      /////////////////////////////////////////////////////////////
+      assertEquals(Optional.of(2), memoization.getResult("b", k ->
+      {
+         memoization.clearKey("b");
+         return (loads.incrementAndGet());
+      }));
+      assertEquals(Optional.of(3), memoization.getResult("b", k -> loads.incrementAndGet()));
+   }
+
+
+
+   /*******************************************************************************
+    ** a loader that asks for its own key (on the same thread) gets a result,
+    ** rather than waiting for itself forever.
+    *******************************************************************************/
+   @Test
+   void testReentrantLoad()
+   {
+      SingleFlightMemoization<String, Integer> memoization = new SingleFlightMemoization<>(Duration.ofMinutes(1));
+      AtomicInteger                            loads       = new AtomicInteger();
+
+      assertEquals(Optional.of(2), memoization.getResult("key", k -> 1 + memoization.getResult("key", k2 -> loads.incrementAndGet()).orElseThrow()));
+      assertEquals(Optional.of(2), memoization.getResult("key", k -> -1));
+      assertEquals(2, memoization.getLoadCount());
+   }
+
+
+
+   /*******************************************************************************
+    ** waiting for another thread's load is bounded - after the loadWaitTimeout,
+    ** the waiting thread loads the key itself (without storing the result).
+    *******************************************************************************/
+   @Test
+   void testLoadWaitTimeout() throws Exception
+   {
+      SingleFlightMemoization<String, Integer> memoization = new SingleFlightMemoization<String, Integer>(Duration.ofMinutes(1)).withLoadWaitTimeout(Duration.ofMillis(50));
+      CountDownLatch                           loadStarted = new CountDownLatch(1);
+      CountDownLatch                           releaseLoad = new CountDownLatch(1);
+
+      ExecutorService executorService = Executors.newSingleThreadExecutor();
+      try
+      {
+         Future<Optional<Integer>> slowLoad = executorService.submit(() -> memoization.getResultThrowing("key", k ->
+         {
+            loadStarted.countDown();
+            releaseLoad.await();
+            return (1);
+         }));
+
+         assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+         assertEquals(Optional.of(2), memoization.getResult("key", k -> 2));
+
+         releaseLoad.countDown();
+         assertEquals(Optional.of(1), slowLoad.get(5, TimeUnit.SECONDS));
+      }
+      finally
+      {
+         executorService.shutdownNow();
+      }
+
+      ///////////////////////////////////////////////////////////
+      // the slow (registered) load's result is the one stored //
+      ///////////////////////////////////////////////////////////
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> 3));
+   }
+
+
+
+   /*******************************************************************************
+    ** results within the refresh-ahead window are re-loaded in the background,
+    ** with callers getting the current result until the new one is in place.
+    *******************************************************************************/
+   @Test
+   void testRefreshAhead()
+   {
+      List<Runnable>                           pendingRefreshes = new ArrayList<>();
+      SingleFlightMemoization<String, Integer> memoization      = new SingleFlightMemoization<String, Integer>(Duration.ofMinutes(1))
+         .withRefreshAhead(Duration.ofMinutes(2), pendingRefreshes::add);
+      AtomicInteger loads = new AtomicInteger();
+
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> loads.incrementAndGet()));
+
+      ////////////////////////////////////////////////////////////////////////////////
+      // (with a 2-minute window on a 1-minute timeout, every hit is due) - the hit //
+      // returns the current value, and only one refresh is started for the key     //
+      ////////////////////////////////////////////////////////////////////////////////
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> loads.incrementAndGet()));
+      assertEquals(Optional.of(1), memoization.getResult("key", k -> loads.incrementAndGet()));
+      assertEquals(1, pendingRefreshes.size());
+
+      pendingRefreshes.remove(0).run();
+      assertEquals(1, memoization.getRefreshAheadCount());
+      assertEquals(Optional.of(2), memoization.getResult("key", k -> loads.incrementAndGet()));
+
+      ///////////////////////////////////////////////////////////////////////
+      // a failed refresh keeps the current value - and can be tried again //
+      ///////////////////////////////////////////////////////////////////////
+      pendingRefreshes.clear();
+      memoization.getResult("key", k ->
+      {
+         throw (new IllegalStateException("refresh failed"));
+      });
+      pendingRefreshes.remove(0).run();
+      assertEquals(Optional.of(2), memoization.getResult("key", k -> loads.incrementAndGet()));
+      assertEquals(1, pendingRefreshes.size());
+
+      /////////////////////////////////////
+      // and with it turned off, no more //
+      /////////////////////////////////////
+      pendingRefreshes.clear();
+      memoization.setRefreshAhead(null, null);
+      memoization.getResult("key", k -> loads.incrementAndGet());
+      assertTrue(pendingRefreshes.isEmpty());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testExceptionsAndMaxSize()
+   {
+      SingleFlightMemoization<Integer, Integer> memoization = new SingleFlightMemoization<Integer, Integer>(Duration.ofMinutes(1)).withMaxSize(2);
+
+      assertThatThrownBy(() -> memoization.getResultThrowing(0, k ->
+      {
+         throw (new QException("load failed"));
+      })).isInstanceOf(QException.class);
+
+      ////////////////////////////////////////////
+      // a failed load isn't memoized, or stuck //
+      ////////////////////////////////////////////
+      assertEquals(Optional.of(0), memoization.getResult(0, k -> k));
+
+      memoization.getResult(1, k -> k);
+      memoization.getResult(2, k -> k);
+      assertTrue(memoization.getLoadCount() >= 4);
+      assertEquals(Optional.of(2), memoization.getResult(2, k -> -1));
+   }
+
+
+
+   /*******************************************************************************
+    ** beyond the max size, the least-recently-used results (not the oldest
+    ** ones) are evicted - and lowering the max size evicts them right away.
+    *******************************************************************************/
+   @Test
+   void testLeastRecentlyUsedEviction()
+   {
+      SingleFlightMemoization<Integer, Integer> memoization = new SingleFlightMemoization<Integer, Integer>(Duration.ofMinutes(1)).withMaxSize(2);
+      memoization.getResult(1, k -> k);
+      memoization.getResult(2, k -> k);
+
+      ///////////////////////////////////////////////////////////////////////
+      // using 1 (the oldest) makes 2 the least-recently-used - so storing //
+      // 3 evicts 2, and 1 & 3 are still memoized                          //
+      ///////////////////////////////////////////////////////////////////////
+      assertEquals(Optional.of(1), memoization.getResult(1, k -> -1));
+      memoization.getResult(3, k -> k);
+      assertEquals(Optional.of(1), memoization.getResult(1, k -> -1));
+      assertEquals(Optional.of(3), memoization.getResult(3, k -> -1));
+      assertEquals(Optional.of(-2), memoization.getResult(2, k -> -k));
+
+      /////////////////////////////////////////////////////////////////////////
+      // (2 was re-stored, evicting 1) - lowering the max size evicts 3, too //
+      /////////////////////////////////////////////////////////////////////////
+      memoization.setMaxSize(1);
+      assertEquals(Optional.of(-2), memoization.getResult(2, k -> 0));
+      assertEquals(Optional.of(-3), memoization.getResult(3, k -> -k));
+   }
+
+}
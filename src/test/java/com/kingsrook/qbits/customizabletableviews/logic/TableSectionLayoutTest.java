@@ -0,0 +1,101 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinOn;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinType;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.SectionFactory;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for TableSectionLayout
+ *******************************************************************************/
+class TableSectionLayoutTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void test()
+   {
+      QTableMetaData joinTable = new QTableMetaData()
+         .withName("layoutJoinTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING))
+         .withField(new QFieldMetaData("joinField", QFieldType.STRING));
+      QContext.getQInstance().addTable(joinTable);
+
+      QTableMetaData table = new QTableMetaData()
+         .withName("layoutTable")
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.STRING))
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withSection(SectionFactory.defaultT1("id").withName("s0"))
+         .withSection(SectionFactory.defaultT2("a", "notAField", "layoutJoinTable.joinField", "layoutJoinTable.notAField").withName("s1"))
+         .withSection(SectionFactory.defaultT2().withWidgetName("someWidget").withName("w0"));
+      QContext.getQInstance().addTable(table);
+      QContext.getQInstance().addJoin(new QJoinMetaData().withLeftTable("layoutTable").withRightTable("layoutJoinTable").withInferredName().withType(JoinType.ONE_TO_ONE).withJoinOn(new JoinOn("id", "id")));
+
+      TableSectionLayout layout = TableSectionLayout.forTable(table);
+      assertEquals(List.of(new TableSectionLayout.SectionField("id", null, "id")), layout.getSectionFields(0));
+
+      /////////////////////////////////////////////////////////////////////
+      // unknown fields are dropped - join fields resolve to their table //
+      /////////////////////////////////////////////////////////////////////
+      List<TableSectionLayout.SectionField> sectionFields = layout.getSectionFields(1);
+      assertEquals(2, sectionFields.size());
+      assertFalse(sectionFields.get(0).isFromJoinTable());
+      assertEquals("a", sectionFields.get(0).fieldName());
+      assertTrue(sectionFields.get(1).isFromJoinTable());
+      assertEquals(new TableSectionLayout.SectionField("layoutJoinTable.joinField", "layoutJoinTable", "joinField"), sectionFields.get(1));
+      assertTrue(layout.getHasJoinTableFields());
+
+      /////////////////////////////////////////////////////////////////////
+      // the layout is shared for the same table, and its clones - but a //
+      // changed version of the table gets its own layout                //
+      /////////////////////////////////////////////////////////////////////
+      assertSame(layout, TableSectionLayout.forTable(table));
+      assertTrue(layout.matchesSectionsOf(table.clone()));
+      assertSame(layout, TableSectionLayout.forTable(table.clone()));
+
+      QTableMetaData changedTable = table.clone();
+      changedTable.setSections(new ArrayList<>(List.of(SectionFactory.defaultT1("id", "a").withName("s0"))));
+      assertNotSame(layout, TableSectionLayout.forTable(changedTable));
+   }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for TableViewsCacheInvalidationCoalescer
+ *******************************************************************************/
+class TableViewsCacheInvalidationCoalescerTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testImmediateByDefault()
+   {
+      List<TableViewsCacheInvalidation>    applied   = new ArrayList<>();
+      TableViewsCacheInvalidationCoalescer coalescer = new TableViewsCacheInvalidationCoalescer(applied::add);
+
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(1));
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(2));
+      coalescer.submit(new TableViewsCacheInvalidation());
+
+      assertEquals(2, applied.size());
+      assertEquals(2, coalescer.getSubmittedCount());
+      assertEquals(0, coalescer.getCoalescedCount());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBatch()
+   {
+      List<TableViewsCacheInvalidation>    applied   = new ArrayList<>();
+      TableViewsCacheInvalidationCoalescer coalescer = new TableViewsCacheInvalidationCoalescer(applied::add);
+
+      try(TableViewsCacheInvalidationCoalescer.Batch outer = coalescer.openBatch())
+      {
+         coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(1));
+
+         try(TableViewsCacheInvalidationCoalescer.Batch inner = coalescer.openBatch())
+         {
+            coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(2));
+         }
+
+         ////////////////////////////////////////////////////////////////
+         // closing the inner batch doesn't apply anything - the outer //
+         // one is still open.                                         //
+         ////////////////////////////////////////////////////////////////
+         coalescer.submit(new TableViewsCacheInvalidation().addRoleId(3));
+         assertEquals(0, applied.size());
+      }
+
+      assertEquals(1, applied.size());
+      assertEquals(Set.of(1, 2), applied.get(0).getTableViewIds());
+      assertEquals(Set.of(3), applied.get(0).getRoleIds());
+      assertEquals(3, coalescer.getSubmittedCount());
+      assertEquals(2, coalescer.getCoalescedCount());
+      assertEquals(1, coalescer.getAppliedCount());
+
+      //////////////////////////////////////////////////////
+      // after the batch, invalidations are applied again //
+      //////////////////////////////////////////////////////
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(4));
+      assertEquals(2, applied.size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBatchCloseIsIdempotent()
+   {
+      List<TableViewsCacheInvalidation>    applied   = new ArrayList<>();
+      TableViewsCacheInvalidationCoalescer coalescer = new TableViewsCacheInvalidationCoalescer(applied::add);
+
+      TableViewsCacheInvalidationCoalescer.Batch outer = coalescer.openBatch();
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(1));
+
+      //////////////////////////////////////////////////////////////////////
+      // closing the inner batch twice mustn't count as closing the outer //
+      //////////////////////////////////////////////////////////////////////
+      TableViewsCacheInvalidationCoalescer.Batch inner = coalescer.openBatch();
+      inner.close();
+      inner.close();
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(2));
+      assertEquals(0, applied.size());
+
+      outer.close();
+      assertEquals(1, applied.size());
+      assertEquals(Set.of(1, 2), applied.get(0).getTableViewIds());
+
+      ///////////////////////////////////////////////////////////////////////
+      // closing the outer batch again doesn't re-apply its invalidations, //
+      // and later submits are applied immediately                         //
+      ///////////////////////////////////////////////////////////////////////
+      outer.close();
+      inner.close();
+      assertEquals(1, applied.size());
+
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(3));
+      assertEquals(2, applied.size());
+      assertEquals(Set.of(3), applied.get(1).getTableViewIds());
+
+      //////////////////////////////////////////////////////////
+      // and a new batch (after the stale closes) still works //
+      //////////////////////////////////////////////////////////
+      try(TableViewsCacheInvalidationCoalescer.Batch batch = coalescer.openBatch())
+      {
+         coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(4));
+         assertEquals(2, applied.size());
+      }
+      assertEquals(3, applied.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** a batch around a transaction that's rolled back is discarded - so nothing
+    ** in it is applied, while what's submitted after the discard still is.
+    *******************************************************************************/
+   @Test
+   void testBatchDiscard()
+   {
+      List<TableViewsCacheInvalidation>    applied   = new ArrayList<>();
+      TableViewsCacheInvalidationCoalescer coalescer = new TableViewsCacheInvalidationCoalescer(applied::add);
+
+      try(TableViewsCacheInvalidationCoalescer.Batch batch = coalescer.openBatch())
+      {
+         coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(1));
+         try(TableViewsCacheInvalidationCoalescer.Batch inner = coalescer.openBatch())
+         {
+            coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(2));
+            inner.discard();
+         }
+      }
+      assertEquals(0, applied.size());
+
+      try(TableViewsCacheInvalidationCoalescer.Batch batch = coalescer.openBatch())
+      {
+         coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(3));
+         batch.discard();
+         coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(4));
+      }
+      assertEquals(1, applied.size());
+      assertEquals(Set.of(4), applied.get(0).getTableViewIds());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWindow() throws InterruptedException
+   {
+      List<TableViewsCacheInvalidation>    applied   = new ArrayList<>();
+      TableViewsCacheInvalidationCoalescer coalescer = new TableViewsCacheInvalidationCoalescer(invalidation ->
+      {
+         synchronized(applied)
+         {
+            applied.add(invalidation);
+         }
+      });
+
+      ///////////////////////////////////////////////////////////////////
+      // a long window - so these are still pending until it's flushed //
+      ///////////////////////////////////////////////////////////////////
+      coalescer.setWindow(Duration.ofMinutes(5));
+      for(int i = 0; i < 10; i++)
+      {
+         coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(i));
+      }
+      assertEquals(0, applied.size());
+      assertEquals(9, coalescer.getCoalescedCount());
+
+      coalescer.flush();
+      assertEquals(1, applied.size());
+      assertEquals(10, applied.get(0).getTableViewIds().size());
+
+      ///////////////////////////////////////////////////////////
+      // a short window - which applies them once it has ended //
+      ///////////////////////////////////////////////////////////
+      coalescer.setWindow(Duration.ofMillis(50));
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(1));
+      coalescer.submit(TableViewsCacheInvalidation.ofEverything());
+
+      long start = System.currentTimeMillis();
+      while(coalescer.getAppliedCount() < 2 && System.currentTimeMillis() - start < 5000)
+      {
+         Thread.sleep(10);
+      }
+
+      synchronized(applied)
+      {
+         assertEquals(2, applied.size());
+         assertTrue(applied.get(1).getEverything());
+      }
+
+      //////////////////////////////////////////////////////////////
+      // turning the window off applies invalidations immediately //
+      //////////////////////////////////////////////////////////////
+      coalescer.setWindow(null);
+      coalescer.submit(new TableViewsCacheInvalidation().addTableViewId(1));
+      assertEquals(3, coalescer.getAppliedCount());
+   }
+
+}
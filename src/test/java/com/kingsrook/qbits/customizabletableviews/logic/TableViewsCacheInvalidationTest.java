@@ -0,0 +1,146 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewRoleInt;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewWidget;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for TableViewsCacheInvalidation
+ *******************************************************************************/
+class TableViewsCacheInvalidationTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testForRecords()
+   {
+      TableViewsCacheInvalidation invalidation = TableViewsCacheInvalidation.forRecords(TableViewField.TABLE_NAME, List.of(new QRecord().withValue("id", 1).withValue("tableViewId", 7)), Optional.empty());
+      assertEquals(Set.of(7), invalidation.getTableViewIds());
+      assertFalse(invalidation.getEverything());
+
+      invalidation = TableViewsCacheInvalidation.forRecords(TableViewWidget.TABLE_NAME, List.of(new QRecord().withValue("id", 1).withValue("tableViewId", 8)), Optional.empty());
+      assertEquals(Set.of(8), invalidation.getTableViewIds());
+
+      invalidation = TableViewsCacheInvalidation.forRecords(TableView.TABLE_NAME, List.of(new QRecord().withValue("id", 9)), Optional.empty());
+      assertEquals(Set.of(9), invalidation.getTableViewIds());
+
+      invalidation = TableViewsCacheInvalidation.forRecords(TableViewRoleInt.TABLE_NAME, List.of(new QRecord().withValue("id", 1).withValue("roleId", 3).withValue("tableViewId", 9)), Optional.empty());
+      assertEquals(Set.of(3), invalidation.getRoleIds());
+      assertEquals(Set.of(9), invalidation.getTableViewIds());
+
+      invalidation = TableViewsCacheInvalidation.forRecords(CustomizableTable.TABLE_NAME, List.of(new QRecord().withValue("id", 1).withValue("tableName", "order")), Optional.empty());
+      assertEquals(Set.of("order"), invalidation.getTableNames());
+      assertFalse(invalidation.getEverything());
+
+      /////////////////////////////////////////////////////////////////////////////////
+      // a partial record (e.g., from an update) gets its values from the old record //
+      /////////////////////////////////////////////////////////////////////////////////
+      invalidation = TableViewsCacheInvalidation.forRecords(TableViewField.TABLE_NAME,
+         List.of(new QRecord().withValue("id", 1).withValue("accessLevel", "READ_ONLY")),
+         Optional.of(List.of(new QRecord().withValue("id", 1).withValue("tableViewId", 7))));
+      assertEquals(Set.of(7), invalidation.getTableViewIds());
+      assertFalse(invalidation.getEverything());
+
+      ///////////////////////////////////////////////////////////////////////
+      // but if a value can't be found, or for an unknown table, clear all //
+      ///////////////////////////////////////////////////////////////////////
+      assertTrue(TableViewsCacheInvalidation.forRecords(TableViewField.TABLE_NAME, List.of(new QRecord().withValue("id", 1)), Optional.empty()).getEverything());
+      assertTrue(TableViewsCacheInvalidation.forRecords("someOtherTable", List.of(new QRecord().withValue("id", 1)), Optional.empty()).getEverything());
+      assertTrue(TableViewsCacheInvalidation.forRecords(null, List.of(), Optional.empty()).getEverything());
+
+      assertTrue(TableViewsCacheInvalidation.forRecords(TableViewField.TABLE_NAME, List.of(), Optional.empty()).isEmpty());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testTableViewMovedToOtherCustomizableTable()
+   {
+      ///////////////////////////////////////////////////////////////////////////
+      // an update that doesn't change customizableTableId is scoped by the id //
+      ///////////////////////////////////////////////////////////////////////////
+      TableViewsCacheInvalidation invalidation = TableViewsCacheInvalidation.forRecords(TableView.TABLE_NAME,
+         List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", 1).withValue("name", "New Name")),
+         Optional.of(List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", 1).withValue("name", "Old Name"))));
+      assertEquals(Set.of(9), invalidation.getTableViewIds());
+      assertFalse(invalidation.getEverything());
+
+      invalidation = TableViewsCacheInvalidation.forRecords(TableView.TABLE_NAME,
+         List.of(new QRecord().withValue("id", 9).withValue("name", "New Name")),
+         Optional.of(List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", 1))));
+      assertFalse(invalidation.getEverything());
+
+      /////////////////////////////////////////////////////////////
+      // but moving the view to another table invalidates it all //
+      /////////////////////////////////////////////////////////////
+      invalidation = TableViewsCacheInvalidation.forRecords(TableView.TABLE_NAME,
+         List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", 2)),
+         Optional.of(List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", 1))));
+      assertTrue(invalidation.getEverything());
+
+      invalidation = TableViewsCacheInvalidation.forRecords(TableView.TABLE_NAME,
+         List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", null)),
+         Optional.of(List.of(new QRecord().withValue("id", 9).withValue("customizableTableId", 1))));
+      assertTrue(invalidation.getEverything());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testMergeIn()
+   {
+      TableViewsCacheInvalidation invalidation = new TableViewsCacheInvalidation()
+         .addTableViewId(1)
+         .mergeIn(new TableViewsCacheInvalidation().addRoleId(2).addTableName("order"));
+
+      assertEquals(Set.of(1), invalidation.getTableViewIds());
+      assertEquals(Set.of(2), invalidation.getRoleIds());
+      assertEquals(Set.of("order"), invalidation.getTableNames());
+      assertFalse(invalidation.getEverything());
+
+      assertTrue(invalidation.mergeIn(TableViewsCacheInvalidation.ofEverything()).getEverything());
+   }
+
+}
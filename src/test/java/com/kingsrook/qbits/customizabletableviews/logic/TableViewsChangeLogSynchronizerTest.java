@@ -0,0 +1,239 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewsChangeLog;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for TableViewsChangeLogSynchronizer
+ *******************************************************************************/
+class TableViewsChangeLogSynchronizerTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** simulate two nodes, each with their own synchronizer, sharing the log.
+    *******************************************************************************/
+   @Test
+   void testTwoNodes()
+   {
+      List<TableViewsCacheInvalidation> appliedOnNodeA = new ArrayList<>();
+      List<TableViewsCacheInvalidation> appliedOnNodeB = new ArrayList<>();
+      TableViewsChangeLogSynchronizer   nodeA          = new TableViewsChangeLogSynchronizer(appliedOnNodeA::add);
+      TableViewsChangeLogSynchronizer   nodeB          = new TableViewsChangeLogSynchronizer(appliedOnNodeB::add);
+      nodeA.setPollInterval(Duration.ZERO);
+      nodeB.setPollInterval(Duration.ZERO);
+
+      ///////////////////////////////////////////////////////////
+      // first polls just note the latest generation (of none) //
+      ///////////////////////////////////////////////////////////
+      nodeA.pollIfDue();
+      nodeB.pollIfDue();
+      assertEquals(0, nodeB.getLastSeenGeneration());
+
+      ////////////////////////////////////////////////////////////////////////
+      // changes on node A are applied on node B - merged, in a single poll //
+      ////////////////////////////////////////////////////////////////////////
+      nodeA.append(new TableViewsCacheInvalidation().addTableViewId(1).addRoleId(2));
+      nodeA.append(new TableViewsCacheInvalidation().addTableName("order"));
+      nodeB.pollIfDue();
+
+      assertEquals(1, appliedOnNodeB.size());
+      assertEquals(Set.of(1), appliedOnNodeB.get(0).getTableViewIds());
+      assertEquals(Set.of(2), appliedOnNodeB.get(0).getRoleIds());
+      assertEquals(Set.of("order"), appliedOnNodeB.get(0).getTableNames());
+      assertEquals(2, nodeB.getLastSeenGeneration());
+
+      ///////////////////////////////////////////////////////////////
+      // node A doesn't re-apply its own changes; nor does node B, //
+      // polling again without any new changes.                    //
+      ///////////////////////////////////////////////////////////////
+      nodeA.pollIfDue();
+      nodeB.pollIfDue();
+      assertEquals(0, appliedOnNodeA.size());
+      assertEquals(1, appliedOnNodeB.size());
+
+      nodeB.append(TableViewsCacheInvalidation.ofEverything());
+      nodeA.pollIfDue();
+      assertEquals(1, appliedOnNodeA.size());
+      assertTrue(appliedOnNodeA.get(0).getEverything());
+   }
+
+
+
+   /*******************************************************************************
+    ** a row that commits after one with a greater id must still be applied.
+    *******************************************************************************/
+   @Test
+   void testOutOfOrderCommits() throws QException
+   {
+      List<TableViewsCacheInvalidation> applied = new ArrayList<>();
+      TableViewsChangeLogSynchronizer   nodeA   = new TableViewsChangeLogSynchronizer(i -> { });
+      TableViewsChangeLogSynchronizer   nodeB   = new TableViewsChangeLogSynchronizer(applied::add);
+      nodeA.setPollInterval(Duration.ZERO);
+      nodeB.setPollInterval(Duration.ZERO);
+      nodeB.poll();
+
+      /////////////////////////////////////////////////////////////////////
+      // rows 1 and 3 are visible, but 2 (an open transaction) isn't yet //
+      /////////////////////////////////////////////////////////////////////
+      insertChangeLog(nodeA, 1, new TableViewsCacheInvalidation().addTableViewId(1));
+      insertChangeLog(nodeA, 3, new TableViewsCacheInvalidation().addTableViewId(3));
+      nodeB.poll();
+      assertEquals(1, applied.size());
+      assertEquals(Set.of(1, 3), applied.get(0).getTableViewIds());
+      assertEquals(1, nodeB.getLastSeenGeneration());
+
+      ////////////////////////////////////////////////////////
+      // re-polling doesn't re-apply row 3 while 2 is a gap //
+      ////////////////////////////////////////////////////////
+      nodeB.poll();
+      assertEquals(1, applied.size());
+
+      /////////////////////////////////////////////////////////////
+      // once row 2 commits, it's applied, and the gap is closed //
+      /////////////////////////////////////////////////////////////
+      insertChangeLog(nodeA, 2, new TableViewsCacheInvalidation().addTableViewId(2));
+      nodeB.poll();
+      assertEquals(2, applied.size());
+      assertEquals(Set.of(2), applied.get(1).getTableViewIds());
+      assertEquals(3, nodeB.getLastSeenGeneration());
+
+      /////////////////////////////////////////////////////////////////////
+      // a gap that never fills (e.g., a rolled back insert) is given up //
+      // on after the gap timeout                                        //
+      /////////////////////////////////////////////////////////////////////
+      insertChangeLog(nodeA, 5, new TableViewsCacheInvalidation().addTableViewId(5));
+      nodeB.poll();
+      assertEquals(3, applied.size());
+      assertEquals(3, nodeB.getLastSeenGeneration());
+
+      nodeB.setGapTimeout(Duration.ZERO);
+      nodeB.poll();
+      assertEquals(3, applied.size());
+      assertEquals(5, nodeB.getLastSeenGeneration());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   private void insertChangeLog(TableViewsChangeLogSynchronizer node, Integer id, TableViewsCacheInvalidation invalidation) throws QException
+   {
+      new InsertAction().execute(new InsertInput(TableViewsChangeLog.TABLE_NAME).withRecordEntity(node.toChangeLog(invalidation).withId(id)));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPollInterval()
+   {
+      List<TableViewsCacheInvalidation> applied = new ArrayList<>();
+      TableViewsChangeLogSynchronizer   nodeA   = new TableViewsChangeLogSynchronizer(i -> { });
+      TableViewsChangeLogSynchronizer   nodeB   = new TableViewsChangeLogSynchronizer(applied::add);
+      nodeA.setPollInterval(Duration.ofMinutes(1));
+      nodeB.setPollInterval(Duration.ofMinutes(1));
+
+      nodeB.pollIfDue();
+      nodeA.append(new TableViewsCacheInvalidation().addTableViewId(1));
+
+      ///////////////////////////////////////////////////////////////////////
+      // node B isn't due to poll again for a minute - unless it's told to //
+      ///////////////////////////////////////////////////////////////////////
+      nodeB.pollIfDue();
+      assertEquals(0, applied.size());
+
+      nodeB.poll();
+      assertEquals(1, applied.size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDisabledByDefault() throws QException
+   {
+      List<TableViewsCacheInvalidation> applied = new ArrayList<>();
+      TableViewsChangeLogSynchronizer   node    = new TableViewsChangeLogSynchronizer(applied::add);
+
+      node.append(new TableViewsCacheInvalidation().addTableViewId(1));
+      node.pollIfDue();
+
+      assertEquals(0, node.getAppendedCount());
+      assertNull(node.getLastSeenGeneration());
+      assertEquals(0, new QueryAction().execute(new QueryInput(TableViewsChangeLog.TABLE_NAME)).getRecords().size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testScopeRoundTrip()
+   {
+      TableViewsChangeLogSynchronizer synchronizer = new TableViewsChangeLogSynchronizer(i -> { });
+
+      TableViewsChangeLog changeLog = synchronizer.toChangeLog(new TableViewsCacheInvalidation().addTableViewId(1).addTableViewId(2).addRoleId(3).addTableName("order"));
+      assertFalse(changeLog.getEverything());
+      assertEquals(synchronizer.getNodeId(), changeLog.getNodeId());
+
+      TableViewsCacheInvalidation invalidation = TableViewsChangeLogSynchronizer.toInvalidation(changeLog);
+      assertEquals(Set.of(1, 2), invalidation.getTableViewIds());
+      assertEquals(Set.of(3), invalidation.getRoleIds());
+      assertEquals(Set.of("order"), invalidation.getTableNames());
+
+      ////////////////////////////////////////////////////////
+      // a scope that's too big to store becomes everything //
+      ////////////////////////////////////////////////////////
+      TableViewsCacheInvalidation bigInvalidation = new TableViewsCacheInvalidation();
+      IntStream.range(0, 2000).forEach(bigInvalidation::addTableViewId);
+      changeLog = synchronizer.toChangeLog(bigInvalidation);
+      assertTrue(changeLog.getEverything());
+      assertNull(changeLog.getTableViewIds());
+      assertTrue(TableViewsChangeLogSynchronizer.toInvalidation(changeLog).getEverything());
+   }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.customizabletableviews.logic;
+
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import com.kingsrook.qbits.customizabletableviews.BaseTest;
+import com.kingsrook.qbits.customizabletableviews.model.CustomizableTable;
+import com.kingsrook.qbits.customizabletableviews.model.TableView;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewField;
+import com.kingsrook.qbits.customizabletableviews.model.TableViewRoleInt;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.session.QUser;
+import com.kingsrook.qqq.backend.core.modules.backend.implementations.memory.MemoryRecordStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.EDITABLE_OPTIONAL;
+import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.READ_ONLY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for TableViewsConfigurationSnapshot
+ *******************************************************************************/
+class TableViewsConfigurationSnapshotTest extends BaseTest
+{
+   private static final String TABLE_NAME = "tableForSnapshot";
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer.getQBitConfig().setUseConfigurationSnapshot(true);
+
+      QContext.getQInstance().addTable(new QTableMetaData()
+         .withName(TABLE_NAME)
+         .withField(new QFieldMetaData("a", QFieldType.STRING))
+         .withField(new QFieldMetaData("b", QFieldType.STRING))
+         .withField(new QFieldMetaData("c", QFieldType.STRING)));
+
+      insertConfiguration();
+   }
+
+
+
+   /***************************************************************************
+    *
+    ***************************************************************************/
+   private void insertConfiguration() throws QException
+   {
+      new InsertAction().execute(new InsertInput(CustomizableTable.TABLE_NAME).withRecordEntities(List.of(
+         new CustomizableTable().withId(1).withTableName(TABLE_NAME).withIsActive(true).withDefaultTableViewId(2),
+         new CustomizableTable().withId(2).withTableName("inactiveTable").withIsActive(false))));
+      new InsertAction().execute(new InsertInput(TableView.TABLE_NAME).withRecordEntities(List.of(
+         new TableView().withId(1).withCustomizableTableId(1).withName("a").withFields(List.of(new TableViewField().withFieldName(TABLE_NAME + ".a").withAccessLevel(EDITABLE_OPTIONAL))),
+         new TableView().withId(2).withCustomizableTableId(1).withName("b").withFields(List.of(new TableViewField().withFieldName(TABLE_NAME + ".b").withAccessLevel(EDITABLE_OPTIONAL))))));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntities(List.of(
+         new TableViewRoleInt().withRoleId(1).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(1),
+         new TableViewRoleInt().withRoleId(2).withTableViewId(2))));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testLoad() throws QException
+   {
+      TableViewsConfigurationSnapshot snapshot = TableViewsConfigurationSnapshot.load();
+
+      assertTrue(snapshot.isTableCustomizable(TABLE_NAME));
+      assertFalse(snapshot.isTableCustomizable("inactiveTable"));
+      assertFalse(snapshot.isTableCustomizable("someOtherTable"));
+
+      assertEquals(2, snapshot.getTableViewCount());
+      assertEquals(1, snapshot.getTableView(1).getFields().size());
+      assertEquals(2, snapshot.getCustomizableTable(TABLE_NAME).getDefaultTableViewId());
+
+      assertThat(snapshot.getTableViewsForRoles(TABLE_NAME, Set.of(1))).extracting("id").containsExactly(1);
+      assertThat(snapshot.getTableViewsForRoles(TABLE_NAME, Set.of(1, 2))).extracting("id").containsExactly(1, 2);
+      assertThat(snapshot.getTableViewsForRoles(TABLE_NAME, Set.of(3))).isEmpty();
+      assertThat(snapshot.getTableViewsForRoles("inactiveTable", Set.of(1))).isEmpty();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWithChanges() throws QException
+   {
+      TableViewsConfigurationSnapshot snapshot = TableViewsConfigurationSnapshot.load();
+
+      new InsertAction().execute(new InsertInput(TableViewField.TABLE_NAME).withRecordEntity(new TableViewField().withTableViewId(1).withFieldName(TABLE_NAME + ".c").withAccessLevel(READ_ONLY)));
+      new InsertAction().execute(new InsertInput(TableViewRoleInt.TABLE_NAME).withRecordEntity(new TableViewRoleInt().withRoleId(3).withTableViewId(2)));
+      new UpdateAction().execute(new UpdateInput(CustomizableTable.TABLE_NAME).withRecord(new QRecord().withValue("id", 2).withValue("isActive", true)));
+
+      //////////////////////////////////////////////////////////////////
+      // a snapshot never changes - only the new one has the changes, //
+      // and only for the records in the invalidation's scope.        //
+      //////////////////////////////////////////////////////////////////
+      TableViewsConfigurationSnapshot newSnapshot = snapshot.withChanges(new TableViewsCacheInvalidation().addTableViewId(1));
+      assertEquals(1, snapshot.getTableView(1).getFields().size());
+      assertEquals(2, newSnapshot.getTableView(1).getFields().size());
+      assertThat(newSnapshot.getTableViewsForRoles(TABLE_NAME, Set.of(3))).isEmpty();
+      assertFalse(newSnapshot.isTableCustomizable("inactiveTable"));
+
+      newSnapshot = newSnapshot.withChanges(new TableViewsCacheInvalidation().addRoleId(3).addTableName("inactiveTable"));
+      assertThat(newSnapshot.getTableViewsForRoles(TABLE_NAME, Set.of(3))).extracting("id").containsExactly(2);
+      assertTrue(newSnapshot.isTableCustomizable("inactiveTable"));
+
+      /////////////////////////////////////////////////////
+      // deleted views (and their role ints) are removed //
+      /////////////////////////////////////////////////////
+      new DeleteAction().execute(new DeleteInput(TableViewRoleInt.TABLE_NAME).withPrimaryKeys(List.of(1)));
+      new DeleteAction().execute(new DeleteInput(TableView.TABLE_NAME).withPrimaryKeys(List.of(1)));
+      newSnapshot = newSnapshot.withChanges(new TableViewsCacheInvalidation().addTableViewId(1));
+      assertNull(newSnapshot.getTableView(1));
+      assertThat(newSnapshot.getTableViewsForRoles(TABLE_NAME, Set.of(1, 2))).extracting("id").containsExactly(2);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testMaxAge() throws QException
+   {
+      TableViewsConfigurationSnapshot snapshot = TableViewsConfigurationSnapshot.load();
+      assertFalse(snapshot.isOlderThan(Duration.ofMinutes(5)));
+      assertFalse(snapshot.isOlderThan(null));
+
+      //////////////////////////////////////////////////////////////////////
+      // an incrementally built snapshot is as old as the one it's from - //
+      // so it still gets fully re-loaded once it's past the max age.     //
+      //////////////////////////////////////////////////////////////////////
+      TableViewsConfigurationSnapshot newSnapshot = snapshot.withChanges(new TableViewsCacheInvalidation().addTableViewId(1));
+      assertEquals(snapshot.getLoadedAt(), newSnapshot.getLoadedAt());
+      assertTrue(newSnapshot.isOlderThan(Duration.ofMillis(-1)));
+
+      assertTrue(snapshot.withChanges(TableViewsCacheInvalidation.ofEverything()).getLoadedAt().compareTo(snapshot.getLoadedAt()) >= 0);
+   }
+
+
+
+   /*******************************************************************************
+    ** a change made without an invalidation (e.g., directly in the database) is
+    ** picked up once the snapshot is older than the max age.
+    *******************************************************************************/
+   @Test
+   void testPersonalizerReloadsSnapshotPastMaxAge() throws QException, InterruptedException
+   {
+      TableViewsConfigurationSnapshot snapshot = CustomizableTableViewsTablePersonalizer.getConfigurationSnapshot();
+      assertEquals(2, snapshot.getTableViewCount());
+      assertEquals(Duration.ofMinutes(5), CustomizableTableViewsTablePersonalizer.getQBitConfig().getConfigurationSnapshotMaxAge());
+
+      MemoryRecordStore.getInstance().reset();
+      assertSame(snapshot, CustomizableTableViewsTablePersonalizer.getConfigurationSnapshot());
+
+      ///////////////////////////////////////////////////////////////////////////
+      // re-configured with a short max age, the next snapshot soon goes stale //
+      ///////////////////////////////////////////////////////////////////////////
+      CustomizableTableViewsTablePersonalizer.getQBitConfig().setConfigurationSnapshotMaxAge(Duration.ofMillis(1));
+      CustomizableTableViewsTablePersonalizer.clearMemoizations();
+      insertConfiguration();
+      snapshot = CustomizableTableViewsTablePersonalizer.getConfigurationSnapshot();
+      assertEquals(2, snapshot.getTableViewCount());
+
+      MemoryRecordStore.getInstance().reset();
+      Thread.sleep(5);
+      assertEquals(0, CustomizableTableViewsTablePersonalizer.getConfigurationSnapshot().getTableViewCount());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPersonalizerUsesSnapshot() throws QException
+   {
+      CustomizableTableViewsTablePersonalizer personalizer = new CustomizableTableViewsTablePersonalizer();
+
+      QContext.getQSession().setUser(new QUser().withIdReference(UUID.randomUUID().toString()));
+      QContext.getQSession().setValue("roleIds", "1");
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession(TABLE_NAME)).extracting("name").isEqualTo("a");
+
+      ////////////////////////////////////////////////////////////////////////////
+      // with the snapshot loaded, other role sets (and the default view for no //
+      // roles) are found without the backend - even if its records are gone.   //
+      ////////////////////////////////////////////////////////////////////////////
+      MemoryRecordStore.getInstance().reset();
+      assertTrue(personalizer.isTableCustomizable(TABLE_NAME));
+
+      QContext.getQSession().setValue("roleIds", "2");
+      assertEquals(2, personalizer.getEffectiveTableViewForCurrentSession(TABLE_NAME).getFields().size());
+
+      QContext.getQSession().setValue("roleIds", null);
+      assertThat(personalizer.getEffectiveTableViewForCurrentSession(TABLE_NAME)).extracting("name").isEqualTo("b");
+   }
+
+}
@@ -22,6 +22,7 @@
 package com.kingsrook.qbits.customizabletableviews.model;
 
 
+import java.util.List;
 import java.util.function.BiFunction;
 import com.kingsrook.qbits.customizabletableviews.BaseTest;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
@@ -33,8 +34,10 @@ import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.
 import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.EDITABLE_REQUIRED;
 import static com.kingsrook.qbits.customizabletableviews.model.FieldAccessLevel.READ_ONLY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /*******************************************************************************
@@ -128,6 +131,35 @@ class FieldAccessLevelTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    ** wouldChange must say a level changes a field exactly when apply does.
+    *******************************************************************************/
+   @Test
+   void testWouldChangeAgreesWithApply()
+   {
+      List<QFieldMetaData> fields = List.of(
+         new QFieldMetaData().withIsHidden(true),
+         new QFieldMetaData().withIsEditable(false),
+         new QFieldMetaData().withIsRequired(true),
+         new QFieldMetaData().withIsRequired(false));
+
+      for(FieldAccessLevel accessLevel : FieldAccessLevel.values())
+      {
+         for(QFieldMetaData field : fields)
+         {
+            QFieldMetaData clone = field.clone();
+            accessLevel.apply(clone);
+            boolean changed = clone.getIsHidden() != field.getIsHidden() || clone.getIsEditable() != field.getIsEditable() || clone.getIsRequired() != field.getIsRequired();
+            assertEquals(changed, accessLevel.wouldChange(field), accessLevel + " on " + field);
+         }
+      }
+
+      assertTrue(READ_ONLY.wouldChange(new QFieldMetaData().withIsRequired(false)));
+      assertFalse(EDITABLE_OPTIONAL.wouldChange(new QFieldMetaData().withIsRequired(false)));
+   }
+
+
+
    /*******************************************************************************
     **
     *******************************************************************************/